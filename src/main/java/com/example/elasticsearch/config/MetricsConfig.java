@@ -0,0 +1,191 @@
+package com.example.elasticsearch.config;
+
+import com.example.elasticsearch.service.BulkIndexer;
+import com.example.elasticsearch.service.DocumentValidator;
+import com.example.elasticsearch.service.ExportService;
+import com.example.elasticsearch.service.FunctionCallCache;
+import com.example.elasticsearch.service.IntentRouter;
+import com.example.elasticsearch.service.MsearchBatcher;
+import com.example.elasticsearch.service.OpenAiLlmClient;
+import com.example.elasticsearch.service.QueryResultCache;
+import com.example.elasticsearch.service.QueryTemplateService;
+import com.example.elasticsearch.service.ReindexService;
+import com.example.elasticsearch.service.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.elasticsearch.client.RestClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder templateMetrics(QueryTemplateService tpl) {
+        return registry -> {
+            FunctionCounter.builder("es.templates.cache.hits", tpl, QueryTemplateService::getCacheHits)
+                .description("Template renders served from the compiled template registry")
+                .register(registry);
+            FunctionCounter.builder("es.templates.compilations", tpl, QueryTemplateService::getCompilations)
+                .description("Mustache template compilations")
+                .register(registry);
+            Gauge.builder("es.templates.compiled", tpl, QueryTemplateService::getCompiledTemplateCount)
+                .description("Templates currently held in the compiled registry")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder bulkMetrics(BulkIndexer bulk) {
+        return registry -> {
+            Gauge.builder("es.bulk.queue.depth", bulk, BulkIndexer::getQueueDepth)
+                .description("Buffered or in-flight writes waiting for their bulk item result")
+                .register(registry);
+            FunctionTimer.builder("es.bulk.flush", bulk, BulkIndexer::getFlushCount, BulkIndexer::getFlushTimeMillis, TimeUnit.MILLISECONDS)
+                .description("Round-trip latency of _bulk requests sent by the bulk indexer")
+                .register(registry);
+            FunctionCounter.builder("es.bulk.retries", bulk, BulkIndexer::getRetryCount)
+                .description("Bulk items re-sent after a 429 or a failed bulk request")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder exportMetrics(ExportService export) {
+        return registry -> {
+            FunctionCounter.builder("es.export.documents", export, ExportService::getExportedDocumentCount)
+                .description("Documents written by NDJSON exports")
+                .register(registry);
+            FunctionCounter.builder("es.export.pages", export, ExportService::getPageCount)
+                .description("search_after pages read by NDJSON exports")
+                .register(registry);
+            Gauge.builder("es.export.open", export, ExportService::getOpenCount)
+                .description("Exports currently holding a point in time open")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder reindexMetrics(ReindexService reindex) {
+        return registry -> {
+            FunctionCounter.builder("es.reindex.documents", reindex, ReindexService::getCopiedCount)
+                .description("Documents written to destination indices by reindex jobs")
+                .register(registry);
+            Gauge.builder("es.reindex.running", reindex, ReindexService::getRunningCount)
+                .description("Reindex jobs currently copying")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder validationMetrics(DocumentValidator validator) {
+        return registry -> {
+            FunctionTimer.builder("es.validation.documents", validator, DocumentValidator::getValidatedCount,
+                    DocumentValidator::getValidationTimeMillis, TimeUnit.MILLISECONDS)
+                .description("Documents checked against their index schema before a write")
+                .register(registry);
+            FunctionCounter.builder("es.validation.rejected", validator, DocumentValidator::getRejectedCount)
+                .description("Documents rejected by schema validation")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder queryCacheMetrics(QueryResultCache cache) {
+        return registry -> {
+            // cache.gets{result=hit|miss}, cache.evictions, cache.size tagged cache=es.query.results
+            CaffeineCacheMetrics.monitor(registry, cache.getNativeCache(), "es.query.results");
+            FunctionCounter.builder("es.query.cache.invalidations", cache, QueryResultCache::getInvalidationCount)
+                .description("Index invalidations caused by writes through the service")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder singleFlightMetrics(SingleFlight flights) {
+        return registry -> {
+            FunctionCounter.builder("es.search.coalesced", flights, SingleFlight::getCoalescedCount)
+                .description("Reads that joined an identical in-flight ES request instead of sending their own")
+                .register(registry);
+            Gauge.builder("es.search.inflight", flights, SingleFlight::getInFlightCount)
+                .description("Distinct coalescable reads currently waiting on ES")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder msearchBatchMetrics(MsearchBatcher batcher) {
+        return registry -> {
+            FunctionTimer.builder("es.msearch.batch", batcher, MsearchBatcher::getBatchCount, MsearchBatcher::getBatchTimeMillis, TimeUnit.MILLISECONDS)
+                .description("Round-trip latency of _msearch requests sent by the search batcher")
+                .register(registry);
+            FunctionCounter.builder("es.msearch.batched", batcher, MsearchBatcher::getBatchedSearchCount)
+                .description("Single searches sent as part of a batched _msearch")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder functionCallMetrics(FunctionCallCache calls) {
+        return registry -> {
+            // cache.gets{result=hit|miss} tagged cache=mcp.function-calls gives the hit rate
+            CaffeineCacheMetrics.monitor(registry, calls.getNativeCache(), "mcp.function-calls");
+            FunctionTimer.builder("mcp.llm.calls", calls, FunctionCallCache::getLlmCallCount, FunctionCallCache::getLlmTimeMillis, TimeUnit.MILLISECONDS)
+                .description("LLM round trips made to resolve a function call")
+                .register(registry);
+            FunctionCounter.builder("mcp.llm.saved", calls, FunctionCallCache::getSavedLlmTimeMillis)
+                .baseUnit("milliseconds")
+                .description("Estimated LLM latency avoided by function-call cache hits")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder intentRouterMetrics(IntentRouter router) {
+        return registry -> {
+            FunctionCounter.builder("mcp.router.local", router, IntentRouter::getRoutedLocallyCount)
+                .description("Queries routed to a function by the local intent router without an LLM call")
+                .register(registry);
+            FunctionCounter.builder("mcp.router.fallthrough", router, IntentRouter::getFallThroughCount)
+                .description("Queries below the router confidence threshold, passed on to the LLM")
+                .register(registry);
+            Gauge.builder("mcp.router.confidence.threshold", router, IntentRouter::getConfidenceThreshold)
+                .description("Minimum confidence for a local route")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder llmMetrics(OpenAiLlmClient llm) {
+        return registry -> {
+            FunctionCounter.builder("mcp.llm.requests", llm, OpenAiLlmClient::getCallCount)
+                .description("HTTP calls to the LLM endpoint, including retries")
+                .register(registry);
+            FunctionCounter.builder("mcp.llm.failures", llm, OpenAiLlmClient::getFailureCount)
+                .description("LLM calls that failed after retries (timeouts, connection errors, 429/5xx)")
+                .register(registry);
+            FunctionCounter.builder("mcp.llm.rejected", llm, OpenAiLlmClient::getRejectedCount)
+                .description("LLM calls refused locally by the concurrency limit or open circuit")
+                .register(registry);
+            FunctionCounter.builder("mcp.llm.retries", llm, OpenAiLlmClient::getRetryCount)
+                .register(registry);
+            Gauge.builder("mcp.llm.inflight", llm, OpenAiLlmClient::getInFlight)
+                .register(registry);
+            Gauge.builder("mcp.llm.circuit.state", llm, client -> client.getCircuitState().ordinal())
+                .description("0 closed, 1 open, 2 half-open")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder clientMetrics(RestClient es) {
+        return registry -> Gauge.builder("es.client.nodes", es, client -> client.getNodes().size())
+            .description("Elasticsearch nodes the REST client currently balances requests over")
+            .register(registry);
+    }
+}
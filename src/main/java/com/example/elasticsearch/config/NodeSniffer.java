@@ -0,0 +1,113 @@
+package com.example.elasticsearch.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically replaces the client's node list with the HTTP-enabled nodes reported by
+ * {@code _nodes/http}, including their roles, so requests spread over every node in the
+ * cluster and {@code SKIP_DEDICATED_MASTERS} can filter on them.
+ */
+@Component
+@ConditionalOnProperty(name = "app.elasticsearch.sniff.enabled", havingValue = "true")
+public class NodeSniffer {
+    private static final Logger log = LoggerFactory.getLogger(NodeSniffer.class);
+
+    private final RestClient es;
+    private final Duration interval;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "es-node-sniffer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public NodeSniffer(RestClient es, @Value("${app.elasticsearch.sniff.interval:5m}") Duration interval) {
+        this.es = es;
+        this.interval = interval;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::sniffQuietly, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public List<Node> sniff() throws IOException {
+        String scheme = es.getNodes().get(0).getHost().getSchemeName();
+        Response response = es.performRequest(new Request("GET", "/_nodes/http"));
+        List<Node> nodes;
+        try (InputStream in = response.getEntity().getContent()) {
+            nodes = parse(mapper.readTree(in), scheme);
+        }
+        if (!nodes.isEmpty()) {
+            es.setNodes(nodes);
+        }
+        return nodes;
+    }
+
+    private void sniffQuietly() {
+        try {
+            log.debug("Sniffed {} Elasticsearch nodes", sniff().size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Node sniffing failed, keeping the current node list: {}", e.getMessage());
+        }
+    }
+
+    static List<Node> parse(JsonNode nodesResponse, String scheme) {
+        List<Node> nodes = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) () -> nodesResponse.path("nodes").fields()) {
+            JsonNode node = entry.getValue();
+            String address = node.path("http").path("publish_address").asText(null);
+            if (address == null) {
+                continue;  // HTTP disabled on this node
+            }
+            Set<String> roles = new HashSet<>();
+            node.path("roles").forEach(role -> roles.add(role.asText()));
+            nodes.add(new Node(host(address, scheme), null, node.path("name").asText(null),
+                node.path("version").asText(null), new Node.Roles(roles), null));
+        }
+        return nodes;
+    }
+
+    // publish_address is "ip:port", "hostname/ip:port" or "[ipv6]:port"
+    private static HttpHost host(String address, String scheme) {
+        int slash = address.indexOf('/');
+        String hostPort = slash >= 0 ? address.substring(slash + 1) : address;
+        int colon = hostPort.lastIndexOf(':');
+        String host = hostPort.substring(0, colon);
+        if (slash > 0) {
+            host = address.substring(0, slash);
+        }
+        return new HttpHost(host, Integer.parseInt(hostPort.substring(colon + 1)), scheme);
+    }
+}
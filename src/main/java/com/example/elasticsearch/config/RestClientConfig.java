@@ -1,18 +1,85 @@
 package com.example.elasticsearch.config;
 
+import org.elasticsearch.client.NodeSelector;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.beans.factory.annotation.Value;
 import org.apache.http.HttpHost;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+
+import java.time.Duration;
+import java.util.Arrays;
 
 @Configuration
 public class RestClientConfig {
+    private final int maxConnTotal;
+    private final int maxConnPerRoute;
+    private final int ioThreads;
+    private final Duration keepAlive;
+    private final Duration connectTimeout;
+    private final Duration socketTimeout;
+    private final boolean compression;
+    private final boolean skipDedicatedMasters;
+
+    public RestClientConfig(@Value("${app.elasticsearch.max-conn-total:100}") int maxConnTotal,
+                            @Value("${app.elasticsearch.max-conn-per-route:30}") int maxConnPerRoute,
+                            @Value("${app.elasticsearch.io-threads:0}") int ioThreads,
+                            @Value("${app.elasticsearch.keep-alive:60s}") Duration keepAlive,
+                            @Value("${app.elasticsearch.connect-timeout:1s}") Duration connectTimeout,
+                            @Value("${app.elasticsearch.socket-timeout:30s}") Duration socketTimeout,
+                            @Value("${app.elasticsearch.compression:false}") boolean compression,
+                            @Value("${app.elasticsearch.skip-dedicated-masters:true}") boolean skipDedicatedMasters) {
+        this.maxConnTotal = maxConnTotal;
+        this.maxConnPerRoute = maxConnPerRoute;
+        this.ioThreads = ioThreads;
+        this.keepAlive = keepAlive;
+        this.connectTimeout = connectTimeout;
+        this.socketTimeout = socketTimeout;
+        this.compression = compression;
+        this.skipDedicatedMasters = skipDedicatedMasters;
+    }
 
+    /**
+     * Builds the client from a comma-separated node list such as
+     * {@code https://es1:9200,https://es2:9200}. Nodes without a scheme default to http.
+     */
     @Bean
-    public RestClientBuilder builder(@Value("${spring.elasticsearch.rest.uris}") String uri) {
-        String[] parts = uri.replace("http://","").split(":");
-        return RestClient.builder(new HttpHost(parts[0], Integer.parseInt(parts[1]), "http"));
+    public RestClientBuilder builder(@Value("${spring.elasticsearch.rest.uris}") String uris) {
+        RestClientBuilder builder = RestClient.builder(hosts(uris))
+            .setCompressionEnabled(compression)
+            .setRequestConfigCallback(request -> request
+                .setConnectTimeout((int) connectTimeout.toMillis())
+                .setSocketTimeout((int) socketTimeout.toMillis()))
+            .setHttpClientConfigCallback(http -> {
+                IOReactorConfig.Builder reactor = IOReactorConfig.custom().setSoKeepAlive(true);
+                if (ioThreads > 0) {
+                    reactor.setIoThreadCount(ioThreads);
+                }
+                return http
+                    .setMaxConnTotal(maxConnTotal)
+                    .setMaxConnPerRoute(maxConnPerRoute)
+                    .setDefaultIOReactorConfig(reactor.build())
+                    // drop idle connections before a load balancer or the node silently does
+                    .setKeepAliveStrategy((response, context) -> keepAlive.toMillis());
+            });
+        if (skipDedicatedMasters) {
+            // only takes effect once node roles are known, i.e. when sniffing is enabled
+            builder.setNodeSelector(NodeSelector.SKIP_DEDICATED_MASTERS);
+        }
+        return builder;
+    }
+
+    static HttpHost[] hosts(String uris) {
+        HttpHost[] hosts = Arrays.stream(uris.split(","))
+            .map(String::trim)
+            .filter(uri -> !uri.isEmpty())
+            .map(HttpHost::create)
+            .toArray(HttpHost[]::new);
+        if (hosts.length == 0) {
+            throw new IllegalArgumentException("No Elasticsearch nodes configured");
+        }
+        return hosts;
     }
 }
@@ -2,6 +2,7 @@ package com.example.elasticsearch.config;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.networknt.schema.JsonSchema;
 import com.networknt.schema.JsonSchemaFactory;
 import com.networknt.schema.SpecVersion;
@@ -12,12 +13,15 @@ import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 @Component
 public class SchemaRegistry {
     private final Map<String, JsonSchema> schemas = new HashMap<>();
+    private final Map<String, JsonSchema> partials = new HashMap<>();
+    private final Map<String, JsonNode> definitions = new HashMap<>();
     private final ObjectMapper mapper = new ObjectMapper();
 
     @PostConstruct
@@ -27,14 +31,73 @@ public class SchemaRegistry {
         for (Resource r : resolver.getResources("classpath:schemas/*-schema.json")) {
             String name = r.getFilename().replace("-schema.json", "");
             JsonNode node = mapper.readTree(r.getInputStream());
-            schemas.put(name, factory.getSchema(node));
+            schemas.put(name, compile(factory, node));
+            // partial updates only carry the fields they change, so the top-level required list does not apply
+            ObjectNode partial = node.deepCopy();
+            partial.remove("required");
+            partials.put(name, compile(factory, partial));
+            definitions.put(name, node);
         }
     }
 
+    // Resolves every keyword validator up front, so validation never compiles lazily and is safe across threads
+    private static JsonSchema compile(JsonSchemaFactory factory, JsonNode node) {
+        JsonSchema schema = factory.getSchema(node);
+        schema.initializeValidators();
+        return schema;
+    }
+
     public void validate(String schemaName, JsonNode instance) {
-        Set<ValidationMessage> errors = schemas.get(schemaName).validate(instance);
+        Set<ValidationMessage> errors = errors(schemaName, instance);
         if (!errors.isEmpty()) {
             throw new RuntimeException("Schema validation failed: " + errors);
         }
     }
+
+    /** Violations of the named schema by instance; empty when it is valid. */
+    public Set<ValidationMessage> errors(String schemaName, JsonNode instance) {
+        return schemas.get(schemaName).validate(instance);
+    }
+
+    /** Like errors(), but for a partial document: fields present must be valid, none are required. */
+    public Set<ValidationMessage> partialErrors(String schemaName, JsonNode instance) {
+        return partials.get(schemaName).validate(instance);
+    }
+
+    public Set<String> names() {
+        return Set.copyOf(definitions.keySet());
+    }
+
+    /** The raw JSON schema document, or null when no schema of that name is loaded. */
+    public JsonNode definition(String schemaName) {
+        return definitions.get(schemaName);
+    }
+
+    /**
+     * Returns the definition of the first property with the given name, searching
+     * the schema depth-first (so nested fields such as grades[].course are found),
+     * or null when the schema or property is unknown.
+     */
+    public JsonNode property(String schemaName, String propertyName) {
+        JsonNode definition = definitions.get(schemaName);
+        return definition == null ? null : findProperty(definition, propertyName);
+    }
+
+    private static JsonNode findProperty(JsonNode node, String propertyName) {
+        JsonNode properties = node.path("properties");
+        if (properties.has(propertyName)) {
+            return properties.get(propertyName);
+        }
+        Iterator<JsonNode> children = node.elements();
+        while (children.hasNext()) {
+            JsonNode child = children.next();
+            if (child.isContainerNode()) {
+                JsonNode found = findProperty(child, propertyName);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
 }
@@ -2,100 +2,164 @@ package com.example.elasticsearch.controller;
 
 import com.example.elasticsearch.query.QueryParams;
 import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.ExportService;
+import com.example.elasticsearch.service.StreamingBulkService;
 import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/elasticsearch")
 public class ElasticsearchController {
     private final ElasticsearchService elasticsearchService;
+    private final StreamingBulkService streamingBulkService;
+    private final ExportService exportService;
 
-    public ElasticsearchController(ElasticsearchService elasticsearchService) {
+    public ElasticsearchController(ElasticsearchService elasticsearchService, StreamingBulkService streamingBulkService,
+                                   ExportService exportService) {
         this.elasticsearchService = elasticsearchService;
+        this.streamingBulkService = streamingBulkService;
+        this.exportService = exportService;
     }
 
     // CRUD Operations
     @PostMapping(value = "/{indexName}/document", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode createDocument(@PathVariable String indexName, @RequestBody String document) throws IOException {
-        return elasticsearchService.create(indexName, document);
+    public CompletableFuture<JsonNode> createDocument(@PathVariable String indexName, @RequestBody String document) {
+        return elasticsearchService.createAsync(indexName, document);
     }
 
     @PostMapping(value = "/{indexName}/document/{documentId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode createDocumentWithId(@PathVariable String indexName, @PathVariable String documentId, @RequestBody String document) throws IOException {
-        return elasticsearchService.create(indexName, documentId, document);
+    public CompletableFuture<JsonNode> createDocumentWithId(@PathVariable String indexName, @PathVariable String documentId, @RequestBody String document) {
+        return elasticsearchService.createAsync(indexName, documentId, document);
     }
 
     @GetMapping(value = "/{indexName}/document/{documentId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode getDocument(@PathVariable String indexName, @PathVariable String documentId) throws IOException {
-        return elasticsearchService.read(indexName, documentId);
+    public CompletableFuture<JsonNode> getDocument(@PathVariable String indexName, @PathVariable String documentId) {
+        return elasticsearchService.readAsync(indexName, documentId);
     }
 
     @PutMapping(value = "/{indexName}/document/{documentId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode updateDocument(@PathVariable String indexName, @PathVariable String documentId, @RequestBody String document) throws IOException {
-        return elasticsearchService.update(indexName, documentId, document);
+    public CompletableFuture<JsonNode> updateDocument(@PathVariable String indexName, @PathVariable String documentId, @RequestBody String document) {
+        return elasticsearchService.updateAsync(indexName, documentId, document);
     }
 
     @PatchMapping(value = "/{indexName}/document/{documentId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode partialUpdateDocument(@PathVariable String indexName, @PathVariable String documentId, @RequestBody String partialDocument) throws IOException {
-        return elasticsearchService.partialUpdate(indexName, documentId, partialDocument);
+    public CompletableFuture<JsonNode> partialUpdateDocument(@PathVariable String indexName, @PathVariable String documentId, @RequestBody String partialDocument) {
+        return elasticsearchService.partialUpdateAsync(indexName, documentId, partialDocument);
     }
 
     @DeleteMapping(value = "/{indexName}/document/{documentId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode deleteDocument(@PathVariable String indexName, @PathVariable String documentId) throws IOException {
-        return elasticsearchService.delete(indexName, documentId);
+    public CompletableFuture<JsonNode> deleteDocument(@PathVariable String indexName, @PathVariable String documentId) {
+        return elasticsearchService.deleteAsync(indexName, documentId);
     }
 
     // Search Operations
     @PostMapping(value = "/{indexName}/search", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode search(@PathVariable String indexName, @RequestBody String query) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, "GET", "/_search", query);
+    public CompletableFuture<JsonNode> search(@PathVariable String indexName, @RequestBody String query) {
+        return elasticsearchService.executeRawQueryAsync(indexName, "GET", "/_search", query);
     }
 
     @PostMapping(value = "/{indexName}/msearch", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode multiSearch(@PathVariable String indexName, @RequestBody String queries) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, "POST", "/_msearch", queries);
+    public CompletableFuture<JsonNode> multiSearch(@PathVariable String indexName, @RequestBody String queries) {
+        return elasticsearchService.executeRawQueryAsync(indexName, "POST", "/_msearch", queries);
     }
 
     @PostMapping(value = "/{indexName}/aggregate", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode aggregate(@PathVariable String indexName, @RequestBody String aggregationQuery) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, "GET", "/_search", aggregationQuery);
+    public CompletableFuture<JsonNode> aggregate(@PathVariable String indexName, @RequestBody String aggregationQuery) {
+        return elasticsearchService.executeRawQueryAsync(indexName, "GET", "/_search", aggregationQuery);
+    }
+
+    // Passthrough search operations: ?passthrough=true relays the ES response bytes as-is
+    @PostMapping(value = "/{indexName}/search", params = "passthrough=true")
+    public ResponseEntity<StreamingResponseBody> searchPassthrough(@PathVariable String indexName, @RequestBody String query) throws IOException {
+        return Passthrough.of(elasticsearchService.executeRawResponse(indexName, "GET", "/_search", query));
+    }
+
+    @PostMapping(value = "/{indexName}/msearch", params = "passthrough=true")
+    public ResponseEntity<StreamingResponseBody> multiSearchPassthrough(@PathVariable String indexName, @RequestBody String queries) throws IOException {
+        return Passthrough.of(elasticsearchService.executeRawResponse(indexName, "POST", "/_msearch", queries));
+    }
+
+    @PostMapping(value = "/{indexName}/aggregate", params = "passthrough=true")
+    public ResponseEntity<StreamingResponseBody> aggregatePassthrough(@PathVariable String indexName, @RequestBody String aggregationQuery) throws IOException {
+        return Passthrough.of(elasticsearchService.executeRawResponse(indexName, "GET", "/_search", aggregationQuery));
+    }
+
+    // Export: every matching document as NDJSON, paged through a point in time. Written on the
+    // request thread rather than as a StreamingResponseBody, which the async request timeout would cut off
+    @PostMapping(value = "/{indexName}/export", produces = "application/x-ndjson")
+    public void export(@PathVariable String indexName, @RequestBody(required = false) String query,
+                       HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        exportService.export(indexName, query, response.getOutputStream());
     }
 
     // Template-based operations
     @PostMapping(value = "/template/{operationType}/{templateName}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode executeTemplate(@PathVariable String operationType, @PathVariable String templateName, @RequestBody QueryParams params) throws IOException {
-        return elasticsearchService.executeTemplate(operationType, templateName, params);
+    public CompletableFuture<JsonNode> executeTemplate(@PathVariable String operationType, @PathVariable String templateName, @RequestBody QueryParams params) {
+        return elasticsearchService.executeTemplateAsync(operationType, templateName, params);
     }
 
     // Raw query execution
     @PostMapping(value = "/{indexName}/raw", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode executeRawQuery(@PathVariable String indexName, @RequestParam String method, @RequestParam String endpoint, @RequestBody(required = false) String body) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, method, endpoint, body);
+    public CompletableFuture<JsonNode> executeRawQuery(@PathVariable String indexName, @RequestParam String method, @RequestParam String endpoint, @RequestBody(required = false) String body) {
+        return elasticsearchService.executeRawQueryAsync(indexName, method, endpoint, body);
+    }
+
+    @PostMapping(value = "/{indexName}/raw", params = "passthrough=true")
+    public ResponseEntity<StreamingResponseBody> executeRawQueryPassthrough(@PathVariable String indexName, @RequestParam String method, @RequestParam String endpoint, @RequestBody(required = false) String body) throws IOException {
+        return Passthrough.of(elasticsearchService.executeRawResponse(indexName, method, endpoint, body));
     }
 
     // Bulk operations
     @PostMapping(value = "/{indexName}/bulk", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode bulkOperation(@PathVariable String indexName, @RequestBody String bulkData) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, "POST", "/_bulk", bulkData);
+    public CompletableFuture<JsonNode> bulkOperation(@PathVariable String indexName, @RequestBody String bulkData) {
+        return elasticsearchService.bulkAsync(indexName, bulkData);
+    }
+
+    // Streaming bulk: the NDJSON body is read incrementally and sent in size-bounded chunks,
+    // with one summary line per chunk streamed back. Written on the request thread like export,
+    // so a large upload is not cut off by the async request timeout
+    @PostMapping(value = "/{indexName}/bulk/stream", produces = "application/x-ndjson")
+    public void bulkStream(@PathVariable String indexName, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        streamingBulkService.stream(indexName, request.getInputStream(), response.getOutputStream());
+    }
+
+    // Sets derived fields (app.documents.count-fields) on documents written before they were configured;
+    // runs as an Elasticsearch task
+    @PostMapping(value = "/{indexName}/derived-fields/backfill", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> backfillDerivedFields(@PathVariable String indexName) throws IOException {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(elasticsearchService.backfillDerivedFields(indexName));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     // Index management
     @PutMapping(value = "/{indexName}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode createIndex(@PathVariable String indexName, @RequestBody(required = false) String settings) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, "PUT", "", settings);
+    public CompletableFuture<JsonNode> createIndex(@PathVariable String indexName, @RequestBody(required = false) String settings) {
+        return elasticsearchService.executeRawQueryAsync(indexName, "PUT", "", settings);
     }
 
     @DeleteMapping(value = "/{indexName}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode deleteIndex(@PathVariable String indexName) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, "DELETE", "", null);
+    public CompletableFuture<JsonNode> deleteIndex(@PathVariable String indexName) {
+        return elasticsearchService.executeRawQueryAsync(indexName, "DELETE", "", null);
     }
 
     @GetMapping(value = "/{indexName}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode getIndexInfo(@PathVariable String indexName) throws IOException {
-        return elasticsearchService.executeRawQuery(indexName, "GET", "", null);
+    public CompletableFuture<JsonNode> getIndexInfo(@PathVariable String indexName) {
+        return elasticsearchService.executeRawQueryAsync(indexName, "GET", "", null);
     }
 }
@@ -1,5 +1,10 @@
 package com.example.elasticsearch.controller;
 
+import com.example.elasticsearch.service.BulkItemException;
+import com.example.elasticsearch.service.DocumentValidationException;
+import com.example.elasticsearch.service.LlmUnavailableException;
+import org.elasticsearch.client.ResponseException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -9,6 +14,7 @@ import org.springframework.web.method.annotation.MethodArgumentTypeMismatchExcep
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -27,6 +33,46 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(error);
     }
 
+    @ExceptionHandler(LlmUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleLlmUnavailable(LlmUnavailableException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+            .body(error);
+    }
+
+    // The bulk indexer's queue stayed full for app.bulk.max-wait
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> handleRejected(RejectedExecutionException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+    }
+
+    @ExceptionHandler(DocumentValidationException.class)
+    public ResponseEntity<Map<String, Object>> handleDocumentValidation(DocumentValidationException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        error.put("documents", ex.getRejections());
+        return ResponseEntity.badRequest().body(error);
+    }
+
+    // A create whose _id already exists (op_type=create) is a conflict; other Elasticsearch errors stay 500s
+    @ExceptionHandler({ResponseException.class, BulkItemException.class})
+    public ResponseEntity<Map<String, String>> handleElasticsearchError(Exception ex) {
+        int status = ex instanceof ResponseException re
+            ? re.getResponse().getStatusLine().getStatusCode()
+            : ((BulkItemException) ex).getStatus();
+        if (status == HttpStatus.CONFLICT.value()) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+        return handleGenericException(ex);
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException ex) {
         Map<String, String> error = new HashMap<>();
@@ -1,102 +1,348 @@
 package com.example.elasticsearch.controller;
 
-import com.example.elasticsearch.query.*;
+import com.example.elasticsearch.query.QueryParams;
 import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.FunctionCallCache;
+import com.example.elasticsearch.service.FunctionCallCache.ResolvedCall;
+import com.example.elasticsearch.service.IntentRouter;
+import com.example.elasticsearch.service.LlmClient;
+import com.example.elasticsearch.service.SearchHitReader;
+import com.example.elasticsearch.service.ToolCatalog;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.theokanning.openai.service.OpenAiService;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.theokanning.openai.completion.chat.ChatCompletionChoice;
-import com.theokanning.openai.completion.chat.ChatCompletionRequest;
 import com.theokanning.openai.completion.chat.ChatCompletionResult;
 import com.theokanning.openai.completion.chat.ChatMessage;
-import com.theokanning.openai.completion.chat.ChatFunctionCall;
-import com.theokanning.openai.completion.chat.ChatFunction;
+import com.theokanning.openai.completion.chat.ChatFunctionDynamic;
+import com.theokanning.openai.completion.chat.ChatFunctionProperty;
 
+import org.apache.http.HttpResponse;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 @RestController
 @RequestMapping("/mcp")
 public class McpController {
-  private final OpenAiService openAi;
+  private static final String MULTI_TOOL = "runTools";
+  private static final ChatFunctionDynamic MULTI_TOOL_FUNCTION = ChatFunctionDynamic.builder()
+    .name(MULTI_TOOL)
+    .description("Answer a compound question by running several of the other functions at once")
+    .addProperty(ChatFunctionProperty.builder()
+      .name("calls")
+      .type("array")
+      .description("One entry per function to run, each an object with the function 'name' and its 'arguments'")
+      .items(ChatFunctionProperty.builder().name("call").type("object").build())
+      .required(true)
+      .build())
+    .build();
+
+  private final LlmClient llm;
   private final ElasticsearchService es;
+  private final FunctionCallCache calls;
+  private final IntentRouter router;
+  private final ToolCatalog tools;
+  // Built once: the catalog's functions plus runTools, and the fingerprint that scopes cached resolutions
+  private final List<ChatFunctionDynamic> functions;
+  private final String functionsFingerprint;
+  private final int maxCalls;
+  private final int maxParallel;
+  private final Duration callTimeout;
+  private final int hitChunkSize;
   private final ObjectMapper mapper = new ObjectMapper();
 
-  public McpController(@Value("${OPENAI_API_KEY}") String key,
-                       ElasticsearchService es) {
-    this.openAi = new OpenAiService(key, Duration.ofSeconds(30));
-    this.es     = es;
+  public McpController(LlmClient llm,
+                       ElasticsearchService es,
+                       ToolCatalog tools,
+                       FunctionCallCache calls,
+                       IntentRouter router,
+                       @Value("${app.mcp.multi-tool.max-calls:8}") int maxCalls,
+                       @Value("${app.mcp.multi-tool.max-parallel:4}") int maxParallel,
+                       @Value("${app.mcp.multi-tool.call-timeout:5s}") Duration callTimeout,
+                       @Value("${app.mcp.stream.hit-chunk-size:50}") int hitChunkSize) {
+    this.llm         = llm;
+    this.es          = es;
+    this.calls       = calls;
+    this.router      = router;
+    this.tools       = tools;
+    List<ChatFunctionDynamic> offered = new ArrayList<>(tools.functions());
+    offered.add(MULTI_TOOL_FUNCTION);
+    this.functions   = List.copyOf(offered);
+    this.functionsFingerprint = tools.fingerprint() + '|' + MULTI_TOOL;
+    this.maxCalls    = maxCalls;
+    this.maxParallel = Math.max(1, maxParallel);
+    this.callTimeout = callTimeout;
+    this.hitChunkSize = hitChunkSize;
   }
 
+  // Compound questions complete once every sub-call has settled, without holding the request thread
   @PostMapping("/query")
-  public JsonNode handle(@RequestBody Map<String,Object> payload) throws Exception {
+  public CompletableFuture<JsonNode> handle(@RequestBody Map<String,Object> payload) throws Exception {
+    String userQuery = (String) payload.get("query");
+    List<String> fields = fields(payload);
+
+    Resolution resolved = resolveQuery(userQuery);
+    if (resolved == null) {
+      return CompletableFuture.completedFuture(mapper.createObjectNode().put("error","Could not interpret query"));
+    }
+    ResolvedCall call = resolved.call();
+    if (MULTI_TOOL.equals(call.name())) {
+      return executeAll(call.arguments().path("calls"), fields, (slot, result) -> {});
+    }
+    return executeAsync(call.name(), call.arguments(), fields).handle((result, error) -> {
+      if (error == null) {
+        return result;
+      }
+      Throwable cause = cause(error);
+      if (cause instanceof IllegalArgumentException || cause instanceof TimeoutException) {
+        // missing arguments, unknown tools, fields outside the projection allow list, or a slow search
+        return mapper.createObjectNode().put("error", errorMessage(cause));
+      }
+      throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+    });
+  }
+
+  /**
+   * Server-Sent Events variant of {@link #handle}: emits {@code intent} once the
+   * function call is resolved, {@code dispatched} when the search is sent, then
+   * {@code hits} chunks as they are parsed off the ES response and a final
+   * {@code done} summary (took, hits.total, aggregations). Compound questions emit
+   * one {@code result} per sub-call as it settles. Failures end the stream with
+   * an {@code error} event.
+   */
+  @PostMapping(value = "/query/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<StreamingResponseBody> stream(@RequestBody Map<String,Object> payload) {
     String userQuery = (String) payload.get("query");
+    List<String> fields = fields(payload);
+    StreamingResponseBody body = out -> {
+      SseEvents events = new SseEvents(out, mapper);
+      try {
+        streamQuery(userQuery, fields, events);
+      } catch (UncheckedIOException e) {
+        // the client went away; nothing left to tell it
+        throw e.getCause();
+      } catch (Exception e) {
+        events.send("error", mapper.createObjectNode().put("error", String.valueOf(e.getMessage())));
+      }
+    };
+    return ResponseEntity.ok()
+      .contentType(MediaType.TEXT_EVENT_STREAM)
+      .cacheControl(CacheControl.noCache())
+      .header("X-Accel-Buffering", "no")
+      .body(body);
+  }
+
+  private void streamQuery(String userQuery, List<String> fields, SseEvents events) throws Exception {
+    Resolution resolved = resolveQuery(userQuery);
+    if (resolved == null) {
+      events.send("error", mapper.createObjectNode().put("error", "Could not interpret query"));
+      return;
+    }
+    ResolvedCall call = resolved.call();
+    ObjectNode intent = mapper.createObjectNode().put("function", call.name()).put("source", resolved.source());
+    intent.set("arguments", call.arguments());
+    events.send("intent", intent);
+
+    if (MULTI_TOOL.equals(call.name())) {
+      JsonNode response = executeAll(call.arguments().path("calls"), fields,
+          (slot, result) -> events.send("result", result.deepCopy().put("slot", slot))).join();
+      events.send(response.has("error") ? "error" : "done",
+          response.has("error") ? response : mapper.createObjectNode().put("results", response.path("results").size()));
+      return;
+    }
 
-    List<ChatFunction> functions = List.of(
-      ChatFunction.builder()
-        .name("showUsersInCourse")
-        .description("List all users enrolled in a given course. Requires a 'course' parameter with the course name.")
-        .build(),
-      ChatFunction.builder()
-        .name("showUsersInMultipleCourses")
-        .description("List all users registered for more than one course")
-        .build(),
-      ChatFunction.builder()
-        .name("getClassAverageScore")
-        .description("Compute the average score across all students and courses")
-        .build(),
-      ChatFunction.builder()
-        .name("getCourseMaxScore")
-        .description("Compute the maximum score for a given course. Requires a 'course' parameter with the course name.")
-        .build()
-    );
-
-    ChatCompletionRequest req = ChatCompletionRequest.builder()
-      .model("gpt-4o-mini")
-      .messages(List.of(new ChatMessage("user", userQuery)))
-      .functions(functions)
-      .build();
-
-    ChatCompletionResult res = openAi.createChatCompletion(req);
+    Operation op;
+    try {
+      op = operation(call.name(), call.arguments(), fields);
+    } catch (IllegalArgumentException e) {
+      events.send("error", mapper.createObjectNode().put("error", e.getMessage()));
+      return;
+    }
+    events.send("dispatched", mapper.createObjectNode().put("index", op.schema()).put("template", op.template()));
+    HttpResponse response = op.aggregation()
+        ? es.aggregateStream(op.schema(), op.template(), op.params())
+        : es.searchStream(op.schema(), op.template(), op.params(), op.fields());
+    try (InputStream in = response.getEntity().getContent()) {
+      int status = response.getStatusLine().getStatusCode();
+      if (status >= 300) {
+        ObjectNode error = mapper.createObjectNode().put("error", "Elasticsearch returned status " + status);
+        error.set("response", mapper.readTree(in));
+        events.send("error", error);
+        return;
+      }
+      ObjectNode summary = SearchHitReader.read(mapper, in, hitChunkSize, chunk -> {
+        ObjectNode hits = mapper.createObjectNode();
+        hits.set("hits", chunk);
+        events.send("hits", hits);
+      });
+      events.send("done", summary);
+    }
+  }
+
+  private Resolution resolveQuery(String userQuery) throws Exception {
+    // Confidently classified and repeated questions skip the LLM round trip
+    ResolvedCall call = router == null ? null : router.route(userQuery);
+    if (call != null) {
+      return new Resolution(call, "router");
+    }
+    call = calls == null ? null : calls.get(functionsFingerprint, userQuery);
+    if (call != null) {
+      return new Resolution(call, "cache");
+    }
+    call = resolve(userQuery);
+    return call == null ? null : new Resolution(call, "llm");
+  }
+
+  private ResolvedCall resolve(String userQuery) throws Exception {
+    long start = System.nanoTime();
+    ChatCompletionResult res = llm.complete(List.of(new ChatMessage("user", userQuery)), functions);
     ChatCompletionChoice choice = res.getChoices().get(0);
     ChatMessage msg = choice.getMessage();
 
-    if (msg.getFunctionCall() != null) {
-      String fname = msg.getFunctionCall().getName();
-      JsonNode args = mapper.readTree(msg.getFunctionCall().getArguments().toString());
-
-      return switch (fname) {
-        case "showUsersInCourse" -> {
-          JsonNode courseNode = args.get("course");
-          if (courseNode == null || courseNode.isNull()) {
-            yield mapper.createObjectNode().put("error", "Missing required parameter: course");
-          }
-          yield es.search("user", "users-in-course.json",
-               new UserCourseParams(courseNode.asText()));
-        }
-        case "showUsersInMultipleCourses" ->
-          es.search("user", "users-multiple-courses.json",
-               new UserMultipleCoursesParams());
-        case "getClassAverageScore" ->
-          es.aggregate("user", "class-average.json",
-               new ClassAverageParams());
-        case "getCourseMaxScore" -> {
-          JsonNode courseNode = args.get("course");
-          if (courseNode == null || courseNode.isNull()) {
-            yield mapper.createObjectNode().put("error", "Missing required parameter: course");
-          }
-          yield es.aggregate("user", "course-max.json",
-               new CourseMaxParams(courseNode.asText()));
-        }
-        default ->
-          throw new IllegalStateException("Unknown function: " + fname);
-      };
-    }
-
-    return mapper.createObjectNode().put("error","Could not interpret query");
+    if (msg.getFunctionCall() == null) {
+      return null;
+    }
+    ResolvedCall call = new ResolvedCall(msg.getFunctionCall().getName(),
+        mapper.readTree(msg.getFunctionCall().getArguments().toString()));
+    if (calls != null) {
+      calls.recordLlmCall(System.nanoTime() - start);
+      if (MULTI_TOOL.equals(call.name()) || tools.tool(call.name()) != null) {
+        calls.put(functionsFingerprint, userQuery, call);
+      }
+    }
+    return call;
   }
+
+  /**
+   * Runs the sub-calls of a compound question concurrently. At most maxParallel
+   * searches are in flight: sub-call i starts once sub-call i - maxParallel has
+   * settled. Each sub-call has its own timeout and a failed or slow one only
+   * turns its own slot into an error, so the response takes about as long as
+   * the slowest sub-query. onSettled sees each slot's result as soon as it is in.
+   * The returned future completes with all slots once the last one has settled.
+   */
+  private CompletableFuture<JsonNode> executeAll(JsonNode requested, List<String> fields,
+                                                 BiConsumer<Integer, ObjectNode> onSettled) {
+    if (!requested.isArray() || requested.isEmpty()) {
+      return CompletableFuture.completedFuture(mapper.createObjectNode().put("error", "Missing required parameter: calls"));
+    }
+    if (requested.size() > maxCalls) {
+      return CompletableFuture.completedFuture(
+          mapper.createObjectNode().put("error", "Too many tool calls: " + requested.size() + " (max " + maxCalls + ")"));
+    }
+    List<JsonNode> subCalls = new ArrayList<>();
+    requested.forEach(subCalls::add);
+
+    JsonNode[] results = new JsonNode[subCalls.size()];
+    List<CompletableFuture<Void>> settled = new ArrayList<>();
+    for (int i = 0; i < subCalls.size(); i++) {
+      int slot = i;
+      JsonNode subCall = subCalls.get(i);
+      CompletableFuture<Void> lane = i < maxParallel
+          ? CompletableFuture.completedFuture(null)
+          : settled.get(i - maxParallel);
+      settled.add(lane
+          .thenCompose(ignored -> executeAsync(subCall.path("name").asText(), subCall.path("arguments"), fields))
+          .handle((result, error) -> {
+            ObjectNode settledResult = toolResult(subCall, result, error);
+            results[slot] = settledResult;
+            onSettled.accept(slot, settledResult);
+            return null;
+          }));
+    }
+    return CompletableFuture.allOf(settled.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+      ObjectNode response = mapper.createObjectNode();
+      ArrayNode array = response.putArray("results");
+      for (JsonNode result : results) {
+        array.add(result);
+      }
+      return response;
+    });
+  }
+
+  /**
+   * Sends one tool call with the call timeout. The timeout applies to a copy: the search
+   * future may be shared with coalesced callers, and still completes (and fills the
+   * cache) for them.
+   */
+  private CompletableFuture<JsonNode> executeAsync(String fname, JsonNode args, List<String> fields) {
+    CompletableFuture<JsonNode> search;
+    try {
+      Operation op = operation(fname, args, fields);
+      search = op.aggregation()
+          ? es.aggregateAsync(op.schema(), op.template(), op.params())
+          : es.searchAsync(op.schema(), op.template(), op.params(), op.fields());
+    } catch (IllegalArgumentException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return search.copy().orTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private ObjectNode toolResult(JsonNode subCall, JsonNode result, Throwable error) {
+    ObjectNode node = mapper.createObjectNode();
+    node.put("function", subCall.path("name").asText());
+    node.set("arguments", subCall.path("arguments").isMissingNode()
+        ? mapper.createObjectNode() : subCall.get("arguments"));
+    if (error == null) {
+      node.set("result", result);
+      return node;
+    }
+    node.put("error", errorMessage(cause(error)));
+    return node;
+  }
+
+  private String errorMessage(Throwable cause) {
+    return cause instanceof TimeoutException
+        ? "Timed out after " + callTimeout.toMillis() + "ms"
+        : String.valueOf(cause.getMessage());
+  }
+
+  private static Throwable cause(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+  }
+
+  private Operation operation(String fname, JsonNode args, List<String> fields) {
+    ToolCatalog.Tool tool = tools.tool(fname);
+    if (tool == null) {
+      throw new IllegalArgumentException("Unknown function: " + fname);
+    }
+    return new Operation(tool.schema(), tool.template(), tool.bind(args, mapper), tool.aggregation(),
+        tool.aggregation() ? null : fields);
+  }
+
+  // Optional "fields": a list (or comma-separated string) narrowing the hits' _source
+  private static List<String> fields(Map<String, Object> payload) {
+    Object value = payload.get("fields");
+    if (value instanceof Collection<?> list) {
+      return list.stream().map(String::valueOf).toList();
+    }
+    if (value instanceof String text && !text.isBlank()) {
+      return Arrays.stream(text.split(",")).map(String::trim).filter(field -> !field.isEmpty()).toList();
+    }
+    return null;
+  }
+
+  private record Resolution(ResolvedCall call, String source) {}
+
+  private record Operation(String schema, String template, QueryParams params, boolean aggregation,
+                           List<String> fields) {}
 }
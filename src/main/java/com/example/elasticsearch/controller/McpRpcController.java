@@ -0,0 +1,57 @@
+package com.example.elasticsearch.controller;
+
+import com.example.elasticsearch.service.McpServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MCP streamable HTTP transport: each POST carries one JSON-RPC message or batch
+ * and is answered with application/json once every call in it has completed.
+ * Messages made only of notifications get 202 Accepted. The servlet thread is
+ * released while the ES calls run, so concurrent calls do not tie up threads.
+ * Sessions are stateless: initialize hands out an Mcp-Session-Id that is accepted
+ * but not required afterwards.
+ */
+@RestController
+@RequestMapping("/mcp")
+public class McpRpcController {
+    static final String SESSION_HEADER = "Mcp-Session-Id";
+
+    private final McpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public McpRpcController(McpServer server) {
+        this.server = server;
+    }
+
+    @PostMapping(value = "/rpc", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<JsonNode>> rpc(@RequestBody String body) {
+        JsonNode message;
+        try {
+            message = mapper.readTree(body);
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(server.parseError(e.getMessage())));
+        }
+        boolean initialize = server.isInitialize(message);
+        return server.handle(message).thenApply(response -> {
+            if (response == null) {
+                return ResponseEntity.accepted().build();
+            }
+            ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+            if (initialize) {
+                ok.header(SESSION_HEADER, UUID.randomUUID().toString());
+            }
+            return ok.body(response);
+        });
+    }
+}
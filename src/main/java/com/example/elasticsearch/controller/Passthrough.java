@@ -0,0 +1,43 @@
+package com.example.elasticsearch.controller;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Relays an Elasticsearch response to the client without building a JSON tree:
+ * the status and headers are copied and the entity bytes are written straight to
+ * the servlet output stream as they arrive from Elasticsearch.
+ */
+final class Passthrough {
+    // Framing headers are recomputed by the servlet container for the relayed body
+    private static final Set<String> SKIPPED_HEADERS =
+        Set.of("content-length", "transfer-encoding", "connection", "content-encoding");
+
+    private Passthrough() {
+    }
+
+    static ResponseEntity<StreamingResponseBody> of(HttpResponse response) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : response.getAllHeaders()) {
+            if (!SKIPPED_HEADERS.contains(header.getName().toLowerCase())) {
+                headers.add(header.getName(), header.getValue());
+            }
+        }
+        HttpEntity entity = response.getEntity();
+        StreamingResponseBody body = out -> {
+            if (entity != null) {
+                try (InputStream in = entity.getContent()) {
+                    in.transferTo(out);
+                }
+            }
+        };
+        return ResponseEntity.status(response.getStatusLine().getStatusCode()).headers(headers).body(body);
+    }
+}
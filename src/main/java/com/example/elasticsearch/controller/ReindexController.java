@@ -0,0 +1,66 @@
+package com.example.elasticsearch.controller;
+
+import com.example.elasticsearch.service.ReindexJob;
+import com.example.elasticsearch.service.ReindexService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.List;
+
+// Background index-to-index copies; jobs answer with their status, which GET /{jobId} keeps reporting
+@RestController
+@RequestMapping(value = "/api/reindex", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReindexController {
+    private final ReindexService reindex;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public ReindexController(ReindexService reindex) {
+        this.reindex = reindex;
+    }
+
+    @PostMapping
+    public ResponseEntity<JsonNode> start(@RequestBody ReindexJob.Spec spec) throws IOException {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(reindex.start(spec).status());
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    @GetMapping
+    public List<JsonNode> jobs() {
+        return reindex.jobs().stream().map(ReindexJob::status).toList();
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<JsonNode> job(@PathVariable String jobId) {
+        return status(reindex.job(jobId));
+    }
+
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<JsonNode> cancel(@PathVariable String jobId) {
+        return status(reindex.cancel(jobId));
+    }
+
+    @PostMapping("/{jobId}/resume")
+    public ResponseEntity<JsonNode> resume(@PathVariable String jobId) throws IOException {
+        try {
+            return status(reindex.resume(jobId));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(mapper.createObjectNode().put("error", e.getMessage()));
+        }
+    }
+
+    private static ResponseEntity<JsonNode> status(ReindexJob job) {
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.status());
+    }
+
+    private ResponseEntity<JsonNode> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(mapper.createObjectNode().put("error", e.getMessage()));
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.elasticsearch.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes Server-Sent Events frames ({@code event:} + single-line JSON {@code data:})
+ * to a response stream and flushes each one, so the client sees every event as
+ * soon as it is produced. Safe to call from the ES client's callback threads.
+ */
+final class SseEvents {
+    private final OutputStream out;
+    private final ObjectMapper mapper;
+
+    SseEvents(OutputStream out, ObjectMapper mapper) {
+        this.out = out;
+        this.mapper = mapper;
+    }
+
+    synchronized void send(String event, JsonNode data) {
+        try {
+            out.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            // compact JSON never contains a raw newline, so one data line per event suffices
+            out.write(mapper.writeValueAsBytes(data));
+            out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
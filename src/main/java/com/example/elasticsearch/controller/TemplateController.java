@@ -0,0 +1,22 @@
+package com.example.elasticsearch.controller;
+
+import com.example.elasticsearch.service.QueryTemplateService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/templates")
+public class TemplateController {
+    private final QueryTemplateService tpl;
+
+    public TemplateController(QueryTemplateService tpl) {
+        this.tpl = tpl;
+    }
+
+    @PostMapping(value = "/reload", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> reload() {
+        return Map.of("templates", tpl.reload());
+    }
+}
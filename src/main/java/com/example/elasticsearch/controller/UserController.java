@@ -4,32 +4,63 @@ import com.example.elasticsearch.query.UserAggParams;
 import com.example.elasticsearch.query.UserMultiSearchParams;
 import com.example.elasticsearch.query.UserSearchParams;
 import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.UserLookupService;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
     private final ElasticsearchService es;
+    private final UserLookupService users;
 
-    public UserController(ElasticsearchService es) {
+    public UserController(ElasticsearchService es, UserLookupService users) {
         this.es = es;
+        this.users = users;
     }
 
+    // Realtime single-shard fetch by _id (= userId), returned in the _search response shape
     @GetMapping(value = "/by-id/{userId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode byId(@PathVariable Long userId) throws IOException {
-        return es.search("user", "simple-search.json", new UserSearchParams(userId));
+    public CompletableFuture<JsonNode> byId(@PathVariable Long userId) {
+        return users.byId(userId);
+    }
+
+    // Many users in one _mget; ids not found are listed under "missing"
+    @PostMapping(value = "/by-ids", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<JsonNode> byIds(@RequestBody List<Long> userIds) {
+        return users.byIds(userIds);
     }
 
     @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode byName(@RequestParam String userName) throws IOException {
-        return es.msearch("user", "multi-search.msearch", new UserMultiSearchParams(userName));
+    public CompletableFuture<JsonNode> byName(@RequestParam String userName) {
+        return es.msearchAsync("user", "multi-search.msearch", new UserMultiSearchParams(userName));
     }
 
     @GetMapping(value = "/stats/{userId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public JsonNode stats(@PathVariable Long userId) throws IOException {
-        return es.aggregate("user", "agg-count-sum.json", new UserAggParams(userId));
+    public CompletableFuture<JsonNode> stats(@PathVariable Long userId) {
+        return es.aggregateAsync("user", "agg-count-sum.json", new UserAggParams(userId));
+    }
+
+    // Passthrough variants (?passthrough=true): ES response bytes are streamed to the client unparsed
+    @GetMapping(value = "/by-id/{userId}", params = "passthrough=true")
+    public ResponseEntity<StreamingResponseBody> byIdPassthrough(@PathVariable Long userId) throws IOException {
+        return Passthrough.of(es.searchResponse("user", "simple-search.json", new UserSearchParams(userId),
+            UserLookupService.USER_FIELDS));
+    }
+
+    @GetMapping(value = "/search", params = "passthrough=true")
+    public ResponseEntity<StreamingResponseBody> byNamePassthrough(@RequestParam String userName) throws IOException {
+        return Passthrough.of(es.msearchResponse("user", "multi-search.msearch", new UserMultiSearchParams(userName)));
+    }
+
+    @GetMapping(value = "/stats/{userId}", params = "passthrough=true")
+    public ResponseEntity<StreamingResponseBody> statsPassthrough(@PathVariable Long userId) throws IOException {
+        return Passthrough.of(es.aggregateResponse("user", "agg-count-sum.json", new UserAggParams(userId)));
     }
 }
@@ -0,0 +1,57 @@
+package com.example.elasticsearch.model;
+
+import java.util.List;
+
+public class ProjectionManifest {
+    private List<Projection> projections;
+
+    public static class Projection {
+        private String template;
+        // Default _source includes
+        private List<String> source;
+        // Fields a caller may request instead; defaults to source
+        private List<String> allow;
+        // filter_path entries; defaults to the hit fields callers read when source is set
+        private List<String> filterPath;
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public void setTemplate(String template) {
+            this.template = template;
+        }
+
+        public List<String> getSource() {
+            return source;
+        }
+
+        public void setSource(List<String> source) {
+            this.source = source;
+        }
+
+        public List<String> getAllow() {
+            return allow;
+        }
+
+        public void setAllow(List<String> allow) {
+            this.allow = allow;
+        }
+
+        public List<String> getFilterPath() {
+            return filterPath;
+        }
+
+        public void setFilterPath(List<String> filterPath) {
+            this.filterPath = filterPath;
+        }
+    }
+
+    public List<Projection> getProjections() {
+        return projections;
+    }
+
+    public void setProjections(List<Projection> projections) {
+        this.projections = projections;
+    }
+}
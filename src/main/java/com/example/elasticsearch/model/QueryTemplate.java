@@ -1,7 +1,6 @@
 package com.example.elasticsearch.model;
 
 import java.util.List;
-import java.util.Map;
 
 public class QueryTemplate {
     private String operationType;
@@ -11,7 +10,8 @@ public class QueryTemplate {
     public static class Template {
         private String name;
         private String queryType;
-        private Map<String, Object> baseQuery;
+        // Either a structured query (search/agg) or a raw NDJSON string (msearch)
+        private Object baseQuery;
 
         public String getName() {
             return name;
@@ -29,11 +29,11 @@ public class QueryTemplate {
             this.queryType = queryType;
         }
 
-        public Map<String, Object> getBaseQuery() {
+        public Object getBaseQuery() {
             return baseQuery;
         }
 
-        public void setBaseQuery(Map<String, Object> baseQuery) {
+        public void setBaseQuery(Object baseQuery) {
             this.baseQuery = baseQuery;
         }
     }
@@ -0,0 +1,83 @@
+package com.example.elasticsearch.model;
+
+import java.util.List;
+
+public class ToolManifest {
+    private String schema;
+    private List<Tool> tools;
+
+    public static class Tool {
+        private String name;
+        private String description;
+        private String template;
+        private String queryType;
+        // Simple name of a QueryParams record in com.example.elasticsearch.query
+        private String params;
+        // Parameter names for templates without a dedicated params record
+        private List<String> parameters;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public void setTemplate(String template) {
+            this.template = template;
+        }
+
+        public String getQueryType() {
+            return queryType;
+        }
+
+        public void setQueryType(String queryType) {
+            this.queryType = queryType;
+        }
+
+        public String getParams() {
+            return params;
+        }
+
+        public void setParams(String params) {
+            this.params = params;
+        }
+
+        public List<String> getParameters() {
+            return parameters;
+        }
+
+        public void setParameters(List<String> parameters) {
+            this.parameters = parameters;
+        }
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+
+    public List<Tool> getTools() {
+        return tools;
+    }
+
+    public void setTools(List<Tool> tools) {
+        this.tools = tools;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.elasticsearch.query;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+
+import java.util.Map;
+
+/**
+ * Parameters for templates registered without a dedicated params record: each
+ * entry is exposed to the template as a top-level Mustache variable.
+ */
+public final class TemplateArguments implements QueryParams {
+    private final Map<String, Object> values;
+
+    public TemplateArguments(Map<String, Object> values) {
+        this.values = Map.copyOf(values);
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> values() {
+        return values;
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects individual document writes into _bulk requests. A batch is flushed when it
+ * reaches the configured number of actions or bytes, or when the flush interval elapses,
+ * with at most {@code max-concurrent} bulk requests in flight; further batches wait in
+ * a queue and are sent as requests complete, so no thread blocks on a flush. Once as
+ * many batches are waiting as may be in flight, writers wait up to {@code max-wait} for
+ * room before their write is rejected. Items rejected with 429 (or a bulk request that
+ * is rejected outright) are retried with exponential backoff, as are the writes with
+ * an explicit _id when the request fails on the connection; an auto-id write could
+ * already have been applied and is failed instead. Each caller gets a future for its
+ * own item.
+ */
+@Component
+public class BulkIndexer {
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final RestClient es;
+    private final boolean enabled;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler;
+
+    // A ReentrantLock rather than a monitor: writers wait for room while holding it, and a
+    // monitor wait would pin a virtual thread to its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition room = lock.newCondition();
+    private List<Operation> buffer = new ArrayList<>();
+    private long bufferedBytes;
+    private final Queue<List<Operation>> waiting = new ArrayDeque<>();
+    private int inFlight;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    public BulkIndexer(RestClient es,
+                       @Value("${app.bulk.enabled:false}") boolean enabled,
+                       @Value("${app.bulk.max-actions:1000}") int maxActions,
+                       @Value("${app.bulk.max-bytes:5242880}") long maxBytes,
+                       @Value("${app.bulk.flush-interval:200ms}") Duration flushInterval,
+                       @Value("${app.bulk.max-concurrent:2}") int maxConcurrent,
+                       @Value("${app.bulk.max-retries:3}") int maxRetries,
+                       @Value("${app.bulk.initial-backoff:100ms}") Duration initialBackoff,
+                       @Value("${app.bulk.max-wait:5s}") Duration maxWait) {
+        this.es = es;
+        this.enabled = enabled;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = maxWait;
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "bulk-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<JsonNode> index(String indexName, String documentId, String document) {
+        return add(new Operation("index", indexName, documentId, document));
+    }
+
+    /** Like index, but fails with a 409 item instead of replacing an existing document. */
+    public CompletableFuture<JsonNode> create(String indexName, String documentId, String document) {
+        return add(new Operation("create", indexName, documentId, document));
+    }
+
+    public CompletableFuture<JsonNode> update(String indexName, String documentId, String partialDocument) {
+        return add(new Operation("update", indexName, documentId, "{\"doc\":" + partialDocument + "}"));
+    }
+
+    public CompletableFuture<JsonNode> delete(String indexName, String documentId) {
+        return add(new Operation("delete", indexName, documentId, null));
+    }
+
+    /** Sends whatever is currently buffered. */
+    public void flush() {
+        List<Operation> batch;
+        lock.lock();
+        try {
+            batch = drain();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public double getFlushTimeMillis() {
+        return flushNanos.sum() / 1_000_000.0;
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /** Flushes and waits up to max-wait for the queued batches to be sent. */
+    @PreDestroy
+    public void close() {
+        flush();
+        lock.lock();
+        try {
+            awaitWaiting(0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        scheduler.shutdown();
+    }
+
+    private CompletableFuture<JsonNode> add(Operation op) {
+        List<Operation> batch = null;
+        lock.lock();
+        try {
+            if (!awaitWaiting(maxConcurrent - 1)) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Bulk queue full: " + waiting.size() + " batches waiting for Elasticsearch after " + maxWait));
+            }
+            queued.incrementAndGet();
+            buffer.add(op);
+            bufferedBytes += op.size();
+            if (buffer.size() >= maxActions || bufferedBytes >= maxBytes) {
+                batch = drain();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+        return op.result;
+    }
+
+    private List<Operation> drain() {
+        List<Operation> batch = buffer;
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+        return batch;
+    }
+
+    // Waits, holding lock, until at most maxWaiting batches are queued; false once max-wait has passed
+    private boolean awaitWaiting(int maxWaiting) throws InterruptedException {
+        long remaining = maxWait.toNanos();
+        while (waiting.size() > maxWaiting) {
+            if (remaining <= 0) {
+                return false;
+            }
+            remaining = room.awaitNanos(remaining);
+        }
+        return true;
+    }
+
+    // Never blocks: past max-concurrent the batch is queued and sent when a request completes
+    private void dispatch(List<Operation> batch) {
+        lock.lock();
+        try {
+            if (inFlight >= maxConcurrent) {
+                waiting.add(batch);
+                return;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+    }
+
+    // Hands the finished request's slot to the next queued batch, if any
+    private void release() {
+        List<Operation> next;
+        lock.lock();
+        try {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+            } else {
+                room.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    private void send(List<Operation> batch) {
+        long start = System.nanoTime();
+        Request req = new Request("POST", "/_bulk");
+        req.setEntity(new StringEntity(toNdjson(batch), ContentType.create("application/x-ndjson", StandardCharsets.UTF_8)));
+        es.performRequestAsync(req, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                recordFlush(start);
+                try {
+                    complete(batch, response);
+                } catch (IOException | RuntimeException e) {
+                    fail(batch, e);
+                }
+                release();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                recordFlush(start);
+                if (exception instanceof ResponseException re
+                        && re.getResponse().getStatusLine().getStatusCode() == TOO_MANY_REQUESTS) {
+                    retry(batch, exception);
+                } else if (exception instanceof IOException && !(exception instanceof ResponseException)) {
+                    retryWithIds(batch, exception);
+                } else {
+                    fail(batch, exception);
+                }
+                release();
+            }
+        });
+    }
+
+    private void complete(List<Operation> batch, Response response) throws IOException {
+        JsonNode items;
+        try (InputStream in = response.getEntity().getContent()) {
+            items = mapper.readTree(in).path("items");
+        }
+        List<Operation> rejected = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Operation op = batch.get(i);
+            // each item is wrapped in its action name, e.g. {"index": {...}}
+            JsonNode item = items.path(i).path(op.action);
+            int status = item.path("status").asInt();
+            if (status == TOO_MANY_REQUESTS && op.attempts < maxRetries) {
+                rejected.add(op);
+            } else if (item.has("error") || status >= 300) {
+                queued.decrementAndGet();
+                op.result.completeExceptionally(new BulkItemException(status, item));
+            } else {
+                queued.decrementAndGet();
+                op.result.complete(item);
+            }
+        }
+        if (!rejected.isEmpty()) {
+            retry(rejected, null);
+        }
+    }
+
+    private void retry(List<Operation> ops, Exception cause) {
+        List<Operation> again = new ArrayList<>();
+        for (Operation op : ops) {
+            if (op.attempts >= maxRetries) {
+                queued.decrementAndGet();
+                op.result.completeExceptionally(cause != null ? cause : new IOException("Bulk item rejected after " + op.attempts + " retries"));
+            } else {
+                op.attempts++;
+                again.add(op);
+            }
+        }
+        if (again.isEmpty()) {
+            return;
+        }
+        retries.add(again.size());
+        long delay = initialBackoff.toMillis() << (again.get(0).attempts - 1);
+        scheduler.schedule(() -> dispatch(again), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // The request may have reached Elasticsearch before the connection failed: a write with
+    // an explicit _id can be re-sent, an auto-id index or create would be applied twice
+    private void retryWithIds(List<Operation> batch, Exception cause) {
+        List<Operation> withIds = new ArrayList<>();
+        for (Operation op : batch) {
+            if (op.id != null) {
+                withIds.add(op);
+            } else {
+                queued.decrementAndGet();
+                op.result.completeExceptionally(cause);
+            }
+        }
+        if (!withIds.isEmpty()) {
+            retry(withIds, cause);
+        }
+    }
+
+    private void fail(List<Operation> batch, Exception cause) {
+        for (Operation op : batch) {
+            queued.decrementAndGet();
+            op.result.completeExceptionally(cause);
+        }
+    }
+
+    private void recordFlush(long startNanos) {
+        flushes.increment();
+        flushNanos.add(System.nanoTime() - startNanos);
+    }
+
+    private String toNdjson(List<Operation> batch) {
+        StringBuilder body = new StringBuilder();
+        for (Operation op : batch) {
+            ObjectNode meta = mapper.createObjectNode();
+            ObjectNode target = meta.putObject(op.action).put("_index", op.index);
+            if (op.id != null) {
+                target.put("_id", op.id);
+            }
+            body.append(meta).append('\n');
+            if (op.source != null) {
+                body.append(op.source.replace('\n', ' ')).append('\n');
+            }
+        }
+        return body.toString();
+    }
+
+    private static final class Operation {
+        final String action;
+        final String index;
+        final String id;
+        final String source;
+        final CompletableFuture<JsonNode> result = new CompletableFuture<>();
+        int attempts;
+
+        Operation(String action, String index, String id, String source) {
+            this.action = action;
+            this.index = index;
+            this.id = id;
+            this.source = source;
+        }
+
+        long size() {
+            return index.length() + (id == null ? 0 : id.length()) + (source == null ? 0 : source.length()) + 48;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * A single document in a _bulk request was rejected by Elasticsearch.
+ */
+public class BulkItemException extends IOException {
+    private final int status;
+    private final JsonNode item;
+
+    public BulkItemException(int status, JsonNode item) {
+        super("Bulk item failed with status " + status + ": " + item.path("error"));
+        this.status = status;
+        this.item = item;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public JsonNode getItem() {
+        return item;
+    }
+}
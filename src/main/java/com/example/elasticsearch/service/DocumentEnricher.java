@@ -0,0 +1,163 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains numeric fields derived from array fields at write time, configured per index as
+ * {@code index=array:count} (e.g. {@code user=courses:courseCount}). Distinct non-null values
+ * are counted, as keyword doc values are de-duplicated. Queries on the count are plain range
+ * filters that use the index and the query cache, where the equivalent script query runs
+ * Painless against every document. Documents written before the field
+ * was configured are filled in by {@link #backfillRequest(String)}.
+ */
+@Component
+public class DocumentEnricher {
+    private static final String BACKFILL_SCRIPT =
+        "def v = ctx._source[params.source]; int n = v == null ? 0 : 1; "
+        + "if (v instanceof List) { Set s = new HashSet(); for (def c : v) { if (c != null) { s.add(c.toString()) } } n = s.size() } "
+        + "ctx._source[params.target] = n";
+
+    private record CountField(String source, String target) {}
+
+    private final Map<String, CountField> countFields;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public DocumentEnricher(@Value("${app.documents.count-fields:}") String countFields) {
+        Map<String, CountField> fields = new HashMap<>();
+        for (String pair : countFields.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            String[] parts = pair.split("=", 2);
+            String[] names = parts.length == 2 ? parts[1].split(":", 2) : new String[0];
+            if (names.length != 2 || names[0].isBlank() || names[1].isBlank()) {
+                throw new IllegalArgumentException("Expected index=array:count in app.documents.count-fields: " + pair);
+            }
+            fields.put(parts[0].trim(), new CountField(names[0].trim(), names[1].trim()));
+        }
+        this.countFields = Map.copyOf(fields);
+    }
+
+    public boolean appliesTo(String indexName) {
+        return countFields.containsKey(indexName);
+    }
+
+    /** The full document with its count field set; unchanged when the index has none or it is not a JSON object. */
+    public String enrich(String indexName, String document) {
+        CountField field = countFields.get(indexName);
+        if (field == null) {
+            return document;
+        }
+        JsonNode node = read(document);
+        return node instanceof ObjectNode object ? enrich(field, object).toString() : document;
+    }
+
+    /** Sets the count field on a full document in place. */
+    public ObjectNode enrich(String indexName, ObjectNode document) {
+        CountField field = countFields.get(indexName);
+        return field == null ? document : enrich(field, document);
+    }
+
+    /** A partial update that changes the array field also changes its count; other partial updates are unchanged. */
+    public String enrichPartial(String indexName, String partialDocument) {
+        CountField field = countFields.get(indexName);
+        if (field == null) {
+            return partialDocument;
+        }
+        JsonNode node = read(partialDocument);
+        return node instanceof ObjectNode object && object.has(field.source())
+            ? enrich(field, object).toString()
+            : partialDocument;
+    }
+
+    /**
+     * An NDJSON _bulk body whose actions default to indexName, with count fields set on the
+     * sources of index and create actions and on update docs that change the array field.
+     */
+    public String enrichBulk(String indexName, String ndjson) {
+        if (countFields.isEmpty()) {
+            return ndjson;
+        }
+        StringBuilder out = new StringBuilder(ndjson.length() + 64);
+        String[] lines = ndjson.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            out.append(lines[i]).append('\n');
+            JsonNode action = lines[i].isBlank() ? null : read(lines[i]);
+            if (action == null || !action.isObject() || action.size() != 1 || action.has("delete") || i + 1 >= lines.length) {
+                continue;
+            }
+            String name = action.fieldNames().next();
+            String source = enrichBulkSource(name, action.get(name).path("_index").asText(indexName), lines[++i]);
+            out.append(source).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * The source line of a bulk action on indexName: index and create sources get their count
+     * fields, update docs that change the array field get the new count, anything else is unchanged.
+     */
+    public String enrichBulkSource(String action, String indexName, String source) {
+        CountField field = countFields.get(indexName);
+        JsonNode node = field == null ? null : read(source);
+        if (node instanceof ObjectNode object && ("index".equals(action) || "create".equals(action))) {
+            return enrich(field, object).toString();
+        }
+        if (node != null && "update".equals(action) && node.path("doc") instanceof ObjectNode doc && doc.has(field.source())) {
+            enrich(field, doc);
+            return node.toString();
+        }
+        return source;
+    }
+
+    /**
+     * An _update_by_query body that sets the count field on every document missing it, or
+     * null when the index has no count field.
+     */
+    public ObjectNode backfillRequest(String indexName) {
+        CountField field = countFields.get(indexName);
+        if (field == null) {
+            return null;
+        }
+        ObjectNode body = mapper.createObjectNode();
+        body.putObject("query").putObject("bool").putArray("must_not")
+            .addObject().putObject("exists").put("field", field.target());
+        ObjectNode script = body.putObject("script").put("lang", "painless").put("source", BACKFILL_SCRIPT);
+        script.putObject("params").put("source", field.source()).put("target", field.target());
+        return body;
+    }
+
+    private static ObjectNode enrich(CountField field, ObjectNode document) {
+        JsonNode value = document.get(field.source());
+        int count = value == null || value.isNull() ? 0 : 1;
+        if (value != null && value.isArray()) {
+            Set<String> distinct = new HashSet<>();
+            for (JsonNode element : value) {
+                if (!element.isNull()) {
+                    distinct.add(element.asText());
+                }
+            }
+            count = distinct.size();
+        }
+        return document.put(field.target(), count);
+    }
+
+    // Malformed JSON is passed through for Elasticsearch to reject
+    private JsonNode read(String document) {
+        try {
+            return mapper.readTree(document);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Derives the {@code _id} of documents created without one from a business key, configured
+ * per index as {@code index=field} (e.g. {@code user=userId}). With the key as _id, default
+ * routing puts each document on the shard that a realtime GET or _mget by that key reads,
+ * so lookups by key are a single-shard fetch instead of a search over every shard.
+ */
+@Component
+public class DocumentIdStrategy {
+    private final Map<String, String> idFields;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public DocumentIdStrategy(@Value("${app.documents.id-fields:}") String idFields) {
+        Map<String, String> fields = new HashMap<>();
+        for (String pair : idFields.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            String[] parts = pair.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected index=field in app.documents.id-fields: " + pair);
+            }
+            fields.put(parts[0].trim(), parts[1].trim());
+        }
+        this.idFields = Map.copyOf(fields);
+    }
+
+    /** Returns the field whose value is the _id of the index's documents, or null when ids are generated. */
+    public String keyField(String indexName) {
+        return idFields.get(indexName);
+    }
+
+    /** Returns the id for a new document, or null when the index has no key field or the document lacks it. */
+    public String idFor(String indexName, String document) throws IOException {
+        return idFields.containsKey(indexName) ? idFor(indexName, mapper.readTree(document)) : null;
+    }
+
+    /** As {@link #idFor(String, String)}, for a document that is already parsed. */
+    public String idFor(String indexName, JsonNode document) {
+        String field = idFields.get(indexName);
+        if (field == null || document == null) {
+            return null;
+        }
+        JsonNode value = document.get(field);
+        return value == null || value.isNull() || value.isContainerNode() ? null : value.asText();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One or more documents did not match their index's JSON schema and were not sent to
+ * Elasticsearch. Each rejection names the document (bulk line number, index, _id where
+ * known) and lists every schema violation with its JSON path.
+ */
+public class DocumentValidationException extends RuntimeException {
+
+    public record Violation(String path, String keyword, String message) {}
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Rejection(Integer line, String index, String id, List<Violation> violations) {}
+
+    private final List<Rejection> rejections;
+
+    public DocumentValidationException(List<Rejection> rejections) {
+        super(rejections.size() == 1
+            ? "Document failed schema validation: " + rejections.get(0).violations().get(0).message()
+            : rejections.size() + " documents failed schema validation");
+        this.rejections = List.copyOf(rejections);
+    }
+
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.service.DocumentValidationException.Rejection;
+import com.example.elasticsearch.service.DocumentValidationException.Violation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.ValidationMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Checks documents against their index's JSON schema before they are written, so a bad
+ * document is rejected without an Elasticsearch round trip or a dynamic-mapping change.
+ * Indices are mapped to schemas with {@code app.validation.schemas} ({@code index=schema});
+ * writes to other indices are not checked. Schemas are compiled once by the registry.
+ * Bulk payloads are checked document by document; from {@code parallel-threshold}
+ * documents on, they are spread over a dedicated pool of {@code parallelism} threads, which
+ * is only started when validation is enabled.
+ */
+@Component
+public class DocumentValidator {
+    private static final Set<String> SOURCE_ACTIONS = Set.of("index", "create");
+
+    /** A bulk document: its action (index, create, update or delete), target and source line. */
+    public record BulkDocument(int line, String action, String index, String id, String source) {}
+
+    private final SchemaRegistry schemas;
+    private final boolean enabled;
+    private final Map<String, String> indexSchemas;
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    public DocumentValidator(SchemaRegistry schemas,
+                             @Value("${app.validation.enabled:false}") boolean enabled,
+                             @Value("${app.validation.schemas:}") String indexSchemas,
+                             @Value("${app.validation.parallel-threshold:256}") int parallelThreshold,
+                             @Value("${app.validation.parallelism:0}") int parallelism) {
+        this.schemas = schemas;
+        this.enabled = enabled;
+        Map<String, String> mapping = new HashMap<>();
+        for (String pair : indexSchemas.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            String[] parts = pair.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected index=schema in app.validation.schemas: " + pair);
+            }
+            if (enabled && schemas.definition(parts[1].trim()) == null) {
+                throw new IllegalArgumentException("Unknown schema in app.validation.schemas: " + parts[1].trim()
+                    + " (available: " + schemas.names() + ")");
+            }
+            mapping.put(parts[0].trim(), parts[1].trim());
+        }
+        this.indexSchemas = Map.copyOf(mapping);
+        this.parallelThreshold = parallelThreshold;
+        this.pool = isEnabled()
+            ? new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors())
+            : null;
+    }
+
+    /** Whether writes to the index are validated. */
+    public boolean appliesTo(String indexName) {
+        return enabled && indexSchemas.containsKey(indexName);
+    }
+
+    public boolean isEnabled() {
+        return enabled && !indexSchemas.isEmpty();
+    }
+
+    /** Throws DocumentValidationException when a full document does not match the index's schema. */
+    public void validate(String indexName, String documentId, String document) {
+        throwIfRejected(check(new BulkDocument(0, "index", indexName, documentId, document)));
+    }
+
+    /** As {@link #validate(String, String, String)}, for a document that is already parsed. */
+    public void validate(String indexName, String documentId, JsonNode document) {
+        throwIfRejected(check(new BulkDocument(0, "index", indexName, documentId, null), document, System.nanoTime()));
+    }
+
+    /** Throws DocumentValidationException when the fields of a partial update do not match the index's schema. */
+    public void validatePartial(String indexName, String documentId, String partialDocument) {
+        throwIfRejected(check(new BulkDocument(0, "update", indexName, documentId, "{\"doc\":" + partialDocument + "}")));
+    }
+
+    /** Rejections for the given bulk documents, in order; empty when all of them are valid. */
+    public List<Rejection> validateAll(Collection<BulkDocument> bulk) {
+        if (pool == null || bulk.size() < parallelThreshold || pool.getParallelism() == 1) {
+            return rejections(bulk.stream());
+        }
+        // a parallel stream started inside a pool runs on that pool instead of the common one
+        try {
+            return pool.submit(() -> rejections(bulk.parallelStream())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted validating a bulk request", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Rejections for an NDJSON _bulk body whose actions default to indexName; empty when it is
+     * valid. Malformed action lines are left for Elasticsearch to report.
+     */
+    public List<Rejection> validateBulk(String indexName, String ndjson) throws IOException {
+        List<BulkDocument> bulk = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(ndjson));
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            BulkDocument document;
+            try {
+                document = parseAction(lineNumber, indexName, line);
+            } catch (JsonProcessingException e) {
+                // the pairing of the remaining lines is unknown; Elasticsearch rejects the request
+                return validateAll(bulk);
+            }
+            if (document == null || "delete".equals(document.action())) {
+                continue;
+            }
+            String source = reader.readLine();
+            lineNumber++;
+            if (source != null) {
+                bulk.add(new BulkDocument(lineNumber, document.action(), document.index(), document.id(), source));
+            }
+        }
+        return validateAll(bulk);
+    }
+
+    /**
+     * The action, index and _id of a bulk action line (without its source), or null when the
+     * line is not a single-action object.
+     */
+    public BulkDocument parseAction(int line, String indexName, String actionLine) throws JsonProcessingException {
+        JsonNode action = mapper.readTree(actionLine);
+        if (action == null || !action.isObject() || action.size() != 1) {
+            return null;
+        }
+        String name = action.fieldNames().next();
+        JsonNode meta = action.get(name);
+        return new BulkDocument(line, name, meta.path("_index").asText(indexName), meta.path("_id").asText(null), null);
+    }
+
+    public long getValidatedCount() {
+        return documents.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public double getValidationTimeMillis() {
+        return nanos.sum() / 1_000_000.0;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private List<Rejection> rejections(Stream<BulkDocument> bulk) {
+        return bulk.map(this::check).filter(Objects::nonNull).toList();
+    }
+
+    // null when the document is valid or its index is not validated
+    private Rejection check(BulkDocument document) {
+        if (!appliesTo(document.index()) || document.source() == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        JsonNode source;
+        try {
+            source = mapper.readTree(document.source());
+        } catch (JsonProcessingException e) {
+            documents.increment();
+            nanos.add(System.nanoTime() - start);
+            return reject(document, List.of(new Violation("$", "json", e.getOriginalMessage())));
+        }
+        return check(document, source, start);
+    }
+
+    // the time spent since start, including parsing the source, is recorded as validation time
+    private Rejection check(BulkDocument document, JsonNode source, long start) {
+        String schema = indexSchemas.get(document.index());
+        if (!enabled || schema == null) {
+            return null;
+        }
+        try {
+            Set<ValidationMessage> errors;
+            if (SOURCE_ACTIONS.contains(document.action())) {
+                errors = schemas.errors(schema, source);
+            } else if ("update".equals(document.action()) && source.path("doc").isObject()) {
+                errors = schemas.partialErrors(schema, source.get("doc"));
+            } else {
+                // scripted updates and upserts are evaluated by Elasticsearch
+                return null;
+            }
+            if (errors.isEmpty()) {
+                return null;
+            }
+            List<Violation> violations = errors.stream()
+                .map(e -> new Violation(e.getPath(), e.getType(), e.getMessage()))
+                .toList();
+            return reject(document, violations);
+        } finally {
+            documents.increment();
+            nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private Rejection reject(BulkDocument document, List<Violation> violations) {
+        rejected.increment();
+        return new Rejection(document.line() > 0 ? document.line() : null, document.index(), document.id(), violations);
+    }
+
+    private static void throwIfRejected(Rejection rejection) {
+        if (rejection != null) {
+            throw new DocumentValidationException(List.of(rejection));
+        }
+    }
+}
@@ -1,82 +1,159 @@
 package com.example.elasticsearch.service;
 
 import com.example.elasticsearch.query.QueryParams;
+import com.example.elasticsearch.schema.UserSchema;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpResponse;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestClientBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 
 @Service
 public class ElasticsearchService {
+    private static final int STREAM_BUFFER_BYTES = 256 * 1024;
+
     private final RestClient es;
     private final QueryTemplateService tpl;
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public ElasticsearchService(RestClientBuilder builder, QueryTemplateService tpl) {
-        this.es = builder.build();
+    private final BulkIndexer bulk;
+    private final QueryResultCache cache;
+    private final SingleFlight flights;
+    private final MsearchBatcher batcher;
+    private final DocumentIdStrategy ids;
+    private final DocumentValidator validator;
+    private final DocumentEnricher enricher;
+    private final boolean virtualThreads;
+
+    public ElasticsearchService(RestClient es, QueryTemplateService tpl, BulkIndexer bulk, QueryResultCache cache, SingleFlight flights,
+                                MsearchBatcher batcher, DocumentIdStrategy ids, DocumentValidator validator, DocumentEnricher enricher,
+                                @Value("${app.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.es = es;
         this.tpl = tpl;
+        this.bulk = bulk;
+        this.cache = cache;
+        this.flights = flights;
+        this.batcher = batcher;
+        this.ids = ids;
+        this.validator = validator;
+        this.enricher = enricher;
+        this.virtualThreads = virtualThreads;
     }
 
-    // CRUD Operations
+    // CRUD Operations (routed through the bulk indexer when app.bulk.enabled=true).
+    // Every write invalidates the cached search results of its index. Derived fields (app.documents.count-fields)
+    // are set first; with app.validation.enabled, documents are then checked against their index's schema
+    // (DocumentValidationException).
     public JsonNode create(String indexName, String documentId, String document) throws IOException {
-        Request req = new Request("POST", "/" + indexName + "/_doc/" + documentId);
-        req.setJsonEntity(document);
-        return parse(es.performRequest(req));
+        return create(indexName, documentId, prepare(indexName, documentId, document, false).document(), false);
     }
 
     public JsonNode create(String indexName, String document) throws IOException {
+        Prepared prepared = prepare(indexName, null, document, true);
+        if (prepared.id() != null) {
+            return create(indexName, prepared.id(), prepared.document(), true);
+        }
+        document = prepared.document();
+        if (buffered()) {
+            return await(written(indexName, bulk.index(indexName, null, document)));
+        }
         Request req = new Request("POST", "/" + indexName + "/_doc");
         req.setJsonEntity(document);
-        return parse(es.performRequest(req));
+        return write(indexName, req);
+    }
+
+    // A derived id must not replace an existing document, so it is written with op_type=create
+    // and a duplicate fails with 409 instead of overwriting
+    private JsonNode create(String indexName, String documentId, String document, boolean exclusive) throws IOException {
+        if (buffered()) {
+            return await(written(indexName, exclusive
+                ? bulk.create(indexName, documentId, document)
+                : bulk.index(indexName, documentId, document)));
+        }
+        Request req = exclusive
+            ? new Request("PUT", "/" + indexName + "/_create/" + documentId)
+            : new Request("POST", "/" + indexName + "/_doc/" + documentId);
+        req.setJsonEntity(document);
+        return write(indexName, req);
     }
 
     public JsonNode read(String indexName, String documentId) throws IOException {
         Request req = new Request("GET", "/" + indexName + "/_doc/" + documentId);
-        return parse(es.performRequest(req));
+        return parse(perform(req));
+    }
+
+    // Realtime multi-get: each id is fetched from its own shard, including writes not yet refreshed
+    public JsonNode mget(String indexName, List<String> documentIds) throws IOException {
+        return parse(perform(mgetRequest(indexName, documentIds)));
     }
 
     public JsonNode update(String indexName, String documentId, String document) throws IOException {
+        document = prepare(indexName, documentId, document, false).document();
+        if (buffered()) {
+            return await(written(indexName, bulk.index(indexName, documentId, document)));
+        }
         Request req = new Request("PUT", "/" + indexName + "/_doc/" + documentId);
         req.setJsonEntity(document);
-        return parse(es.performRequest(req));
+        return write(indexName, req);
     }
 
     public JsonNode partialUpdate(String indexName, String documentId, String partialDocument) throws IOException {
+        partialDocument = enricher == null ? partialDocument : enricher.enrichPartial(indexName, partialDocument);
+        if (validates(indexName)) {
+            validator.validatePartial(indexName, documentId, partialDocument);
+        }
+        if (buffered()) {
+            return await(written(indexName, bulk.update(indexName, documentId, partialDocument)));
+        }
         Request req = new Request("POST", "/" + indexName + "/_update/" + documentId);
         req.setJsonEntity("{\"doc\":" + partialDocument + "}");
-        return parse(es.performRequest(req));
+        return write(indexName, req);
     }
 
     public JsonNode delete(String indexName, String documentId) throws IOException {
+        if (buffered()) {
+            return await(written(indexName, bulk.delete(indexName, documentId)));
+        }
         Request req = new Request("DELETE", "/" + indexName + "/_doc/" + documentId);
-        return parse(es.performRequest(req));
+        return write(indexName, req);
     }
 
-    // Search Operations
+    // Search Operations (served from the result cache when app.cache.enabled=true). Template
+    // searches are shaped by the template's response projection; fields narrows its _source
     public JsonNode search(String schemaName, String templateName, QueryParams params) throws IOException {
-        String body = tpl.render(schemaName, templateName, params);
-        Request req = new Request("GET", "/" + schemaName + "/_search");
-        req.setJsonEntity(body);
-        return parse(es.performRequest(req));
+        return search(schemaName, templateName, params, null);
+    }
+
+    public JsonNode search(String schemaName, String templateName, QueryParams params,
+                           Collection<String> fields) throws IOException {
+        ResponseProjection projection = projection(schemaName, templateName, fields);
+        return read(schemaName, templateName, "GET", projection.endpoint("/_search"),
+            projection.body(tpl.render(schemaName, templateName, params)));
     }
 
     public JsonNode msearch(String schemaName, String templateName, QueryParams params) throws IOException {
-        String body = tpl.render(schemaName, templateName, params);
-        Request req = new Request("POST", "/" + schemaName + "/_msearch");
-        req.setJsonEntity(body);
-        return parse(es.performRequest(req));
+        return read(schemaName, templateName, "POST", "/_msearch", tpl.render(schemaName, templateName, params));
     }
 
     public JsonNode aggregate(String schemaName, String templateName, QueryParams params) throws IOException {
-        String body = tpl.render(schemaName, templateName, params);
-        Request req = new Request("GET", "/" + schemaName + "/_search");
-        req.setJsonEntity(body);
-        return parse(es.performRequest(req));
+        return search(schemaName, templateName, params, null);
     }
 
     // Template-based operations using YAML configuration
@@ -86,11 +163,464 @@ public class ElasticsearchService {
 
     // Raw query execution
     public JsonNode executeRawQuery(String indexName, String method, String endpoint, String body) throws IOException {
-        Request req = new Request(method, "/" + indexName + endpoint);
+        Request req = rawRequest(indexName, method, endpoint, body);
+        return isRead(method, endpoint) ? parse(perform(req)) : write(indexName, req);
+    }
+
+    // Passthrough variants: the ES response is returned unparsed, including error
+    // responses, so callers can relay status, headers and body bytes as they are. Like the
+    // streaming variants, it is returned once its headers arrive and the body is piped
+    // through as the caller reads it
+    public HttpResponse searchResponse(String schemaName, String templateName, QueryParams params) throws IOException {
+        return searchResponse(schemaName, templateName, params, null);
+    }
+
+    public HttpResponse searchResponse(String schemaName, String templateName, QueryParams params,
+                                       Collection<String> fields) throws IOException {
+        return passthrough(searchRequest(schemaName, templateName, params, fields));
+    }
+
+    // Streaming variants: the response is returned once its headers arrive and the body is read
+    // from the entity as Elasticsearch sends it, with at most STREAM_BUFFER_BYTES held unread
+    public HttpResponse searchStream(String schemaName, String templateName, QueryParams params,
+                                     Collection<String> fields) throws IOException {
+        return await(StreamingResponseConsumer.send(es, searchRequest(schemaName, templateName, params, fields), STREAM_BUFFER_BYTES));
+    }
+
+    public HttpResponse aggregateStream(String schemaName, String templateName, QueryParams params) throws IOException {
+        return await(StreamingResponseConsumer.send(es, searchRequest(schemaName, templateName, params, null), STREAM_BUFFER_BYTES));
+    }
+
+    public HttpResponse msearchResponse(String schemaName, String templateName, QueryParams params) throws IOException {
+        return passthrough(msearchRequest(schemaName, templateName, params));
+    }
+
+    public HttpResponse aggregateResponse(String schemaName, String templateName, QueryParams params) throws IOException {
+        return passthrough(searchRequest(schemaName, templateName, params, null));
+    }
+
+    public HttpResponse executeRawResponse(String indexName, String method, String endpoint, String body) throws IOException {
+        try {
+            return passthrough(rawRequest(indexName, method, endpoint, body));
+        } finally {
+            if (!isRead(method, endpoint)) {
+                invalidate(indexName);
+            }
+        }
+    }
+
+    // Typed variants: hits.hits[]._source is decoded into the given type as the caller
+    // iterates, with a streaming parser and no JsonNode tree; results are not cached
+    public <T> TypedHitIterator<T> searchHits(String schemaName, String templateName, QueryParams params,
+                                              Class<T> type) throws IOException {
+        return hits(perform(searchRequest(schemaName, templateName, params, null)), type);
+    }
+
+    public Stream<UserSchema> searchUsers(String templateName, QueryParams params) throws IOException {
+        return searchHits("user", templateName, params, UserSchema.class).stream();
+    }
+
+    public <T> CompletableFuture<TypedHitIterator<T>> searchHitsAsync(String schemaName, String templateName,
+                                                                      QueryParams params, Class<T> type) {
+        return sendAsync(searchRequest(schemaName, templateName, params, null)).thenApply(response -> {
+            try {
+                return hits(response, type);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Non-blocking variants: the request is handed to the HTTP client's I/O reactor and
+    // the calling thread is released immediately
+    public CompletableFuture<JsonNode> createAsync(String indexName, String documentId, String document) {
+        try {
+            document = prepare(indexName, documentId, document, false).document();
+        } catch (IOException | DocumentValidationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return createAsync(indexName, documentId, document, false);
+    }
+
+    public CompletableFuture<JsonNode> createAsync(String indexName, String document) {
+        Prepared prepared;
+        try {
+            prepared = prepare(indexName, null, document, true);
+        } catch (IOException | DocumentValidationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (prepared.id() != null) {
+            return createAsync(indexName, prepared.id(), prepared.document(), true);
+        }
+        document = prepared.document();
+        if (buffered()) {
+            return written(indexName, bulk.index(indexName, null, document));
+        }
+        return written(indexName, performAsync(documentRequest("POST", "/" + indexName + "/_doc", document)));
+    }
+
+    private CompletableFuture<JsonNode> createAsync(String indexName, String documentId, String document, boolean exclusive) {
+        if (buffered()) {
+            return written(indexName, exclusive
+                ? bulk.create(indexName, documentId, document)
+                : bulk.index(indexName, documentId, document));
+        }
+        return written(indexName, performAsync(exclusive
+            ? documentRequest("PUT", "/" + indexName + "/_create/" + documentId, document)
+            : documentRequest("POST", "/" + indexName + "/_doc/" + documentId, document)));
+    }
+
+    public CompletableFuture<JsonNode> readAsync(String indexName, String documentId) {
+        return performAsync(new Request("GET", "/" + indexName + "/_doc/" + documentId));
+    }
+
+    public CompletableFuture<JsonNode> mgetAsync(String indexName, List<String> documentIds) {
+        return performAsync(mgetRequest(indexName, documentIds));
+    }
+
+    public CompletableFuture<JsonNode> updateAsync(String indexName, String documentId, String document) {
+        try {
+            document = prepare(indexName, documentId, document, false).document();
+        } catch (IOException | DocumentValidationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (buffered()) {
+            return written(indexName, bulk.index(indexName, documentId, document));
+        }
+        return written(indexName, performAsync(documentRequest("PUT", "/" + indexName + "/_doc/" + documentId, document)));
+    }
+
+    public CompletableFuture<JsonNode> partialUpdateAsync(String indexName, String documentId, String partialDocument) {
+        partialDocument = enricher == null ? partialDocument : enricher.enrichPartial(indexName, partialDocument);
+        try {
+            if (validates(indexName)) {
+                validator.validatePartial(indexName, documentId, partialDocument);
+            }
+        } catch (DocumentValidationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (buffered()) {
+            return written(indexName, bulk.update(indexName, documentId, partialDocument));
+        }
+        return written(indexName, performAsync(documentRequest("POST", "/" + indexName + "/_update/" + documentId, "{\"doc\":" + partialDocument + "}")));
+    }
+
+    public CompletableFuture<JsonNode> deleteAsync(String indexName, String documentId) {
+        if (buffered()) {
+            return written(indexName, bulk.delete(indexName, documentId));
+        }
+        return written(indexName, performAsync(new Request("DELETE", "/" + indexName + "/_doc/" + documentId)));
+    }
+
+    public CompletableFuture<JsonNode> searchAsync(String schemaName, String templateName, QueryParams params) {
+        return searchAsync(schemaName, templateName, params, null);
+    }
+
+    public CompletableFuture<JsonNode> searchAsync(String schemaName, String templateName, QueryParams params,
+                                                   Collection<String> fields) {
+        ResponseProjection projection = projection(schemaName, templateName, fields);
+        return readAsync(schemaName, templateName, "GET", projection.endpoint("/_search"),
+            projection.body(tpl.render(schemaName, templateName, params)));
+    }
+
+    public CompletableFuture<JsonNode> msearchAsync(String schemaName, String templateName, QueryParams params) {
+        return readAsync(schemaName, templateName, "POST", "/_msearch", tpl.render(schemaName, templateName, params));
+    }
+
+    public CompletableFuture<JsonNode> aggregateAsync(String schemaName, String templateName, QueryParams params) {
+        return searchAsync(schemaName, templateName, params, null);
+    }
+
+    public CompletableFuture<JsonNode> executeTemplateAsync(String operationType, String templateName, QueryParams params) {
+        OperationPlan plan = tpl.getPlan(operationType, templateName);
+        return readAsync(plan.index(), plan.name(), plan.method(), plan.endpoint(), tpl.render(plan, params));
+    }
+
+    /**
+     * A raw _bulk request with derived fields set; with validation on, any invalid document
+     * fails it before it is sent.
+     */
+    public CompletableFuture<JsonNode> bulkAsync(String indexName, String ndjson) {
+        ndjson = enricher == null ? ndjson : enricher.enrichBulk(indexName, ndjson);
+        if (validator != null && validator.isEnabled()) {
+            try {
+                List<DocumentValidationException.Rejection> rejections = validator.validateBulk(indexName, ndjson);
+                if (!rejections.isEmpty()) {
+                    return CompletableFuture.failedFuture(new DocumentValidationException(rejections));
+                }
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return executeRawQueryAsync(indexName, "POST", "/_bulk", ndjson);
+    }
+
+    public CompletableFuture<JsonNode> executeRawQueryAsync(String indexName, String method, String endpoint, String body) {
+        CompletableFuture<JsonNode> result = performAsync(rawRequest(indexName, method, endpoint, body));
+        return isRead(method, endpoint) ? result : written(indexName, result);
+    }
+
+    /** Template executions are reads; results are cached per plan name. */
+    JsonNode executePlan(OperationPlan plan, String body) throws IOException {
+        return read(plan.index(), plan.name(), plan.method(), plan.endpoint(), body);
+    }
+
+    /**
+     * Starts an _update_by_query that sets the derived fields of documents written before they
+     * were configured; returns the task to follow with GET _tasks/{task}.
+     */
+    public JsonNode backfillDerivedFields(String indexName) throws IOException {
+        JsonNode body = enricher == null ? null : enricher.backfillRequest(indexName);
+        if (body == null) {
+            throw new IllegalArgumentException("No derived fields configured for index: " + indexName);
+        }
+        Request req = new Request("POST", "/" + indexName + "/_update_by_query");
+        req.addParameter("conflicts", "proceed");
+        req.addParameter("slices", "auto");
+        req.addParameter("wait_for_completion", "false");
+        req.setJsonEntity(body.toString());
+        return write(indexName, req);
+    }
+
+    private record Prepared(String id, String document) {}
+
+    /**
+     * Derives the id of a new document (with deriveId), sets its derived fields and validates it,
+     * parsing it once for all three; a document none of them applies to is not parsed at all.
+     * Malformed JSON fails id derivation with the parse error and validation with a rejection;
+     * otherwise it is left for Elasticsearch to report.
+     */
+    private Prepared prepare(String indexName, String documentId, String document, boolean deriveId) throws IOException {
+        boolean derives = deriveId && ids != null && ids.keyField(indexName) != null;
+        boolean enriches = enricher != null && enricher.appliesTo(indexName);
+        boolean validates = validates(indexName);
+        if (!derives && !enriches && !validates) {
+            return new Prepared(documentId, document);
+        }
+        JsonNode node;
+        try {
+            node = mapper.readTree(document);
+        } catch (JsonProcessingException e) {
+            if (derives) {
+                throw e;
+            }
+            if (validates) {
+                validator.validate(indexName, documentId, document);
+            }
+            return new Prepared(documentId, document);
+        }
+        String id = derives ? ids.idFor(indexName, node) : documentId;
+        if (enriches && node instanceof ObjectNode object) {
+            document = enricher.enrich(indexName, object).toString();
+        }
+        if (validates) {
+            validator.validate(indexName, id, node);
+        }
+        return new Prepared(id, document);
+    }
+
+    private boolean validates(String indexName) {
+        return validator != null && validator.appliesTo(indexName);
+    }
+
+    private Request documentRequest(String method, String endpoint, String document) {
+        Request req = new Request(method, endpoint);
+        req.setJsonEntity(document);
+        return req;
+    }
+
+    private Request mgetRequest(String indexName, List<String> documentIds) {
+        Request req = new Request("POST", "/" + indexName + "/_mget");
+        req.addParameter("realtime", "true");
+        ObjectNode body = mapper.createObjectNode();
+        documentIds.forEach(body.putArray("ids")::add);
+        req.setJsonEntity(body.toString());
+        return req;
+    }
+
+    private Request searchRequest(String schemaName, String templateName, QueryParams params, Collection<String> fields) {
+        ResponseProjection projection = projection(schemaName, templateName, fields);
+        Request req = new Request("GET", "/" + schemaName + "/_search");
+        if (projection.filterPath() != null) {
+            req.addParameter("filter_path", projection.filterPath());
+        }
+        req.setJsonEntity(projection.body(tpl.render(schemaName, templateName, params)));
+        return req;
+    }
+
+    private ResponseProjection projection(String schemaName, String templateName, Collection<String> fields) {
+        ResponseProjection declared = tpl.projection(schemaName, templateName);
+        return (declared == null ? ResponseProjection.NONE : declared).withFields(fields);
+    }
+
+    private Request msearchRequest(String schemaName, String templateName, QueryParams params) {
+        Request req = new Request("POST", "/" + schemaName + "/_msearch");
+        req.setJsonEntity(tpl.render(schemaName, templateName, params));
+        return req;
+    }
+
+    private Request rawRequest(String indexName, String method, String endpoint, String body) {
+        int query = endpoint.indexOf('?');
+        Request req = new Request(method, "/" + indexName + (query < 0 ? endpoint : endpoint.substring(0, query)));
+        if (query >= 0) {
+            for (String param : endpoint.substring(query + 1).split("&")) {
+                int eq = param.indexOf('=');
+                req.addParameter(decode(eq < 0 ? param : param.substring(0, eq)), eq < 0 ? "" : decode(param.substring(eq + 1)));
+            }
+        }
         if (body != null && !body.isEmpty()) {
             req.setJsonEntity(body);
         }
-        return parse(es.performRequest(req));
+        return req;
+    }
+
+    private static String decode(String component) {
+        return URLDecoder.decode(component, StandardCharsets.UTF_8);
+    }
+
+    private JsonNode read(String indexName, String templateName, String method, String endpoint, String body) throws IOException {
+        QueryResultCache.Lookup lookup = cache == null ? null : cache.lookup(indexName, templateName, method, endpoint, body);
+        JsonNode cached = lookup == null ? null : cache.get(lookup);
+        if (cached != null) {
+            return cached;
+        }
+        JsonNode result = flights == null && !batched(endpoint)
+            ? parse(perform(rawRequest(indexName, method, endpoint, body)))
+            : await(fetch(indexName, method, endpoint, body));
+        if (lookup != null) {
+            cache.put(lookup, result);
+        }
+        return result;
+    }
+
+    private CompletableFuture<JsonNode> readAsync(String indexName, String templateName, String method, String endpoint, String body) {
+        QueryResultCache.Lookup lookup = cache == null ? null : cache.lookup(indexName, templateName, method, endpoint, body);
+        JsonNode cached = lookup == null ? null : cache.get(lookup);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<JsonNode> result = fetch(indexName, method, endpoint, body);
+        if (lookup != null) {
+            result.thenAccept(json -> cache.put(lookup, json));
+        }
+        return result;
+    }
+
+    // Identical reads already in flight share one ES round trip
+    private CompletableFuture<JsonNode> fetch(String indexName, String method, String endpoint, String body) {
+        if (flights == null) {
+            return send(indexName, method, endpoint, body);
+        }
+        return flights.execute(method, indexName, endpoint, body, () -> send(indexName, method, endpoint, body));
+    }
+
+    // Single searches are micro-batched into _msearch when app.msearch-batch.enabled=true
+    private CompletableFuture<JsonNode> send(String indexName, String method, String endpoint, String body) {
+        if (batched(endpoint)) {
+            return batcher.search(indexName, body);
+        }
+        return performAsync(rawRequest(indexName, method, endpoint, body));
+    }
+
+    // filter_path is per request and cannot be applied inside an _msearch; batched searches
+    // still get their _source includes, which are in the body
+    private boolean batched(String endpoint) {
+        return batcher != null && batcher.isEnabled() && ("/_search".equals(endpoint) || endpoint.startsWith("/_search?"));
+    }
+
+    private JsonNode write(String indexName, Request req) throws IOException {
+        try {
+            return parse(perform(req));
+        } finally {
+            invalidate(indexName);
+        }
+    }
+
+    private <T> CompletableFuture<T> written(String indexName, CompletableFuture<T> write) {
+        if (cache == null && flights == null) {
+            return write;
+        }
+        // invalidate once the write is acknowledged; failed writes may still have been partially applied
+        return write.whenComplete((result, error) -> invalidate(indexName));
+    }
+
+    private void invalidate(String indexName) {
+        if (cache != null) {
+            cache.invalidate(indexName);
+        }
+        if (flights != null) {
+            flights.invalidate(indexName);
+        }
+    }
+
+    private static boolean isRead(String method, String endpoint) {
+        return "GET".equalsIgnoreCase(method) || endpoint.startsWith("/_search") || endpoint.startsWith("/_msearch")
+            || endpoint.startsWith("/_count");
+    }
+
+    private HttpResponse passthrough(Request req) throws IOException {
+        return await(StreamingResponseConsumer.send(es, req, STREAM_BUFFER_BYTES));
+    }
+
+    private Response perform(Request req) throws IOException {
+        if (!virtualThreads) {
+            return es.performRequest(req);
+        }
+        // RestClient.performRequest waits in a synchronized Future.get(), which pins a virtual
+        // thread to its carrier for the whole round trip; a CompletableFuture wait parks it instead
+        return await(sendAsync(req));
+    }
+
+    private boolean buffered() {
+        return bulk != null && bulk.isEnabled();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for Elasticsearch");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private CompletableFuture<JsonNode> performAsync(Request req) {
+        return sendAsync(req).thenApply(response -> {
+            try {
+                return parse(response);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private CompletableFuture<Response> sendAsync(Request req) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        es.performRequestAsync(req, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                result.completeExceptionally(exception);
+            }
+        });
+        return result;
+    }
+
+    private <T> TypedHitIterator<T> hits(Response resp, Class<T> type) throws IOException {
+        return new TypedHitIterator<>(mapper, resp.getEntity().getContent(), type);
     }
 
     private JsonNode parse(Response resp) throws IOException {
@@ -0,0 +1,257 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exports every document of an index matching a query as NDJSON, one
+ * {"_id":...,"_source":...} line per hit. The export pages through a point in time
+ * with search_after in _shard_doc order, so it sees one consistent snapshot and
+ * never deep-pages. The next page is requested as soon as the current one has been
+ * read and is in flight while the current one is written, so heap use stays at
+ * about two pages whatever the size of the export. The point in time is closed when
+ * the export ends, fails or the client goes away; keep-alive bounds its lifetime
+ * if the close itself cannot reach the cluster.
+ */
+@Service
+public class ExportService {
+    private static final Logger log = LoggerFactory.getLogger(ExportService.class);
+    private static final Set<String> OPTIONS = Set.of("query", "_source");
+    private static final String FILTER_PATH = "pit_id,hits.hits._id,hits.hits._source,hits.hits.sort";
+
+    private final RestClient es;
+    private final int pageSize;
+    private final String keepAlive;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final AtomicInteger open = new AtomicInteger();
+
+    public ExportService(RestClient es,
+                         @Value("${app.export.page-size:1000}") int pageSize,
+                         @Value("${app.export.keep-alive:1m}") Duration keepAlive) {
+        this.es = es;
+        this.pageSize = pageSize;
+        this.keepAlive = keepAlive.toMillis() + "ms";
+    }
+
+    /**
+     * Writes the matching documents to out and returns how many were exported. query is an
+     * optional JSON object with "query" and/or "_source"; without it the whole index is exported.
+     */
+    public long export(String indexName, String query, OutputStream out) throws IOException {
+        ObjectNode search = searchBody(query);
+        String pitId = openPit(indexName);
+        open.incrementAndGet();
+        PendingPage next = null;
+        long exported = 0;
+        try {
+            next = fetch(search, pitId, null);
+            while (next != null) {
+                Page page = parse(next.await());
+                next = null;
+                pitId = page.pitId() != null ? page.pitId() : pitId;
+                if (page.hits() == pageSize) {
+                    // prefetch: the next page is on its way while this one goes to the client
+                    next = fetch(search, pitId, page.lastSort());
+                }
+                if (page.hits() > 0) {
+                    out.write(page.lines());
+                    out.flush();
+                    exported += page.hits();
+                    documents.add(page.hits());
+                }
+                pages.increment();
+            }
+            return exported;
+        } finally {
+            if (next != null) {
+                next.cancel();
+            }
+            closePit(pitId);
+            open.decrementAndGet();
+        }
+    }
+
+    private ObjectNode searchBody(String query) throws IOException {
+        ObjectNode search = mapper.createObjectNode();
+        if (query == null || query.isBlank()) {
+            return search;
+        }
+        JsonNode options = mapper.readTree(query);
+        if (!options.isObject()) {
+            throw new IllegalArgumentException("Export body must be a JSON object");
+        }
+        for (Iterator<String> names = options.fieldNames(); names.hasNext(); ) {
+            String name = names.next();
+            if (!OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("Unsupported export option: " + name + " (supported: query, _source)");
+            }
+        }
+        return search.setAll((ObjectNode) options);
+    }
+
+    private String openPit(String indexName) throws IOException {
+        Request req = new Request("POST", "/" + indexName + "/_pit");
+        req.addParameter("keep_alive", keepAlive);
+        try (InputStream in = es.performRequest(req).getEntity().getContent()) {
+            return mapper.readTree(in).path("id").asText();
+        }
+    }
+
+    private void closePit(String pitId) {
+        Request req = new Request("DELETE", "/_pit");
+        req.setJsonEntity(mapper.createObjectNode().put("id", pitId).toString());
+        try {
+            es.performRequest(req);
+        } catch (IOException | RuntimeException e) {
+            // the point in time still expires after keep-alive; never mask the export's own outcome
+            log.warn("Could not close point in time after export", e);
+        }
+    }
+
+    private PendingPage fetch(ObjectNode search, String pitId, JsonNode searchAfter) {
+        ObjectNode body = search.deepCopy()
+            .put("size", pageSize)
+            .put("track_total_hits", false);
+        body.putObject("pit").put("id", pitId).put("keep_alive", keepAlive);
+        body.putArray("sort").addObject().put("_shard_doc", "asc");
+        if (searchAfter != null) {
+            body.set("search_after", searchAfter);
+        }
+        Request req = new Request("POST", "/_search");
+        req.addParameter("filter_path", FILTER_PATH);
+        req.setJsonEntity(body.toString());
+
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        Cancellable request = es.performRequestAsync(req, new ResponseListener() {
+            @Override
+            public void onSuccess(Response r) {
+                response.complete(r);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                response.completeExceptionally(exception);
+            }
+        });
+        return new PendingPage(response, request);
+    }
+
+    // Re-encodes the hits as NDJSON lines straight off the parser; only each hit's sort values become a tree
+    private Page parse(Response response) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        String pitId = null;
+        JsonNode lastSort = null;
+        int hits = 0;
+        try (InputStream in = response.getEntity().getContent();
+             JsonParser parser = mapper.getFactory().createParser(in);
+             JsonGenerator generator = mapper.getFactory().createGenerator(lines)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a search response object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("pit_id".equals(field)) {
+                    pitId = parser.getText();
+                } else if ("hits".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        if (parser.nextToken() == JsonToken.START_ARRAY && "hits".equals(name)) {
+                            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                lastSort = writeHit(parser, generator);
+                                hits++;
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Page(lines.toByteArray(), hits, pitId, lastSort);
+    }
+
+    private JsonNode writeHit(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonNode sort = null;
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if ("sort".equals(name)) {
+                sort = mapper.readTree(parser);
+            } else if ("_id".equals(name) || "_source".equals(name)) {
+                generator.writeFieldName(name);
+                generator.copyCurrentStructure(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        return sort;
+    }
+
+    public long getExportedDocumentCount() {
+        return documents.sum();
+    }
+
+    public long getPageCount() {
+        return pages.sum();
+    }
+
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    private record Page(byte[] lines, int hits, String pitId, JsonNode lastSort) {}
+
+    private record PendingPage(CompletableFuture<Response> response, Cancellable request) {
+        Response await() throws IOException {
+            try {
+                return response.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for an export page");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IllegalStateException("Export page failed", e.getCause());
+            }
+        }
+
+        void cancel() {
+            request.cancel();
+        }
+    }
+}
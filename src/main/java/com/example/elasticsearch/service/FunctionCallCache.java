@@ -0,0 +1,111 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the function call the LLM resolved for a query, keyed by the normalized query text
+ * and a fingerprint of the function set offered to the model. A different fingerprint (a
+ * function added, renamed or re-described) clears the cache, since earlier resolutions were
+ * made against a different set of choices.
+ */
+@Component
+public class FunctionCallCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s?!.]+$");
+
+    public record ResolvedCall(String name, JsonNode arguments) { }
+
+    private final boolean enabled;
+    private final Cache<String, ResolvedCall> cache;
+    private volatile String fingerprint;
+
+    private final LongAdder llmCalls = new LongAdder();
+    private final LongAdder llmNanos = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    public FunctionCallCache(@Value("${app.mcp.function-cache.enabled:true}") boolean enabled,
+                             @Value("${app.mcp.function-cache.max-entries:10000}") long maxEntries,
+                             @Value("${app.mcp.function-cache.ttl:1h}") Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+    }
+
+    public ResolvedCall get(String functionSetFingerprint, String query) {
+        if (!enabled || query == null) {
+            return null;
+        }
+        checkFingerprint(functionSetFingerprint);
+        ResolvedCall call = cache.getIfPresent(key(functionSetFingerprint, query));
+        if (call != null && llmCalls.sum() > 0) {
+            // credit the average observed LLM round trip as saved
+            savedNanos.add(llmNanos.sum() / llmCalls.sum());
+        }
+        return call;
+    }
+
+    public void put(String functionSetFingerprint, String query, ResolvedCall call) {
+        if (enabled && query != null) {
+            checkFingerprint(functionSetFingerprint);
+            cache.put(key(functionSetFingerprint, query), call);
+        }
+    }
+
+    /** Records the latency of an LLM round trip that resolved a function call. */
+    public void recordLlmCall(long nanos) {
+        llmCalls.increment();
+        llmNanos.add(nanos);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Cache<?, ?> getNativeCache() {
+        return cache;
+    }
+
+    public long getLlmCallCount() {
+        return llmCalls.sum();
+    }
+
+    public double getLlmTimeMillis() {
+        return llmNanos.sum() / 1_000_000.0;
+    }
+
+    public double getSavedLlmTimeMillis() {
+        return savedNanos.sum() / 1_000_000.0;
+    }
+
+    static String normalize(String query) {
+        String lower = WHITESPACE.matcher(query.toLowerCase(Locale.ROOT).trim()).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(lower).replaceAll("");
+    }
+
+    private void checkFingerprint(String current) {
+        if (!current.equals(fingerprint)) {
+            synchronized (this) {
+                if (!current.equals(fingerprint)) {
+                    cache.invalidateAll();
+                    fingerprint = current;
+                }
+            }
+        }
+    }
+
+    private static String key(String fingerprint, String query) {
+        return fingerprint + '\u0000' + normalize(query);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.service.FunctionCallCache.ResolvedCall;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule-based intent classifier that runs before the LLM. Each intent lists cue patterns
+ * that must all occur in the query; the confidence is lowered when a required course
+ * cannot be extracted, when a course is mentioned for an intent that takes none, or when
+ * more than one intent matches. Only routes at or above the threshold skip the LLM.
+ */
+@Component
+public class IntentRouter {
+    private static final Pattern COURSE = Pattern.compile(
+        "\\b(?:in|for|of|take|takes|taking|enrolled in|registered for|studying)\\s+(?:the\\s+)?([A-Za-z][\\w&+-]*(?:\\s+[A-Za-z][\\w&+-]*)??)"
+            + "(?:\\s+(?:course|class|classes))?\\s*[?.!]*\\s*$");
+    // words that end up after "in"/"for" without naming a course ("in multiple courses", "for all students")
+    private static final Pattern NON_COURSE = Pattern.compile(
+        "\\b(?:all|every|each|any|total|overall|general|students?|users?|people|courses|classes|subjects?"
+            + "|multiple|several|many|more|one|two|it|this|that|them)\\b");
+
+    /** A generic intent only applies when no specific intent matched. */
+    private record Intent(String function, boolean needsCourse, boolean generic, List<Pattern> cues) { }
+
+    public record Route(ResolvedCall call, double confidence) { }
+
+    private static final List<Intent> INTENTS = List.of(
+        new Intent("getCourseMaxScore", true, false, List.of(
+            cue("\\b(max|maximum|highest|top|best|peak)\\b"),
+            cue("\\b(scores?|grades?|marks?|results?)\\b"))),
+        new Intent("getClassAverageScore", false, false, List.of(
+            cue("\\b(average|avg|mean)\\b"))),
+        new Intent("showUsersInMultipleCourses", false, false, List.of(
+            cue("\\b(multiple|several|many|more than one|two or more|2\\+|at least two)\\b"),
+            cue("\\b(courses|classes|subjects)\\b"))),
+        new Intent("showUsersInCourse", true, true, List.of(
+            cue("\\b(users?|students?|who|people|list|show|enrolled|taking)\\b"),
+            cue("\\b(in|take|takes|taking|enrolled in|registered for|studying)\\b")))
+    );
+
+    private final boolean enabled;
+    private final double threshold;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LongAdder routedLocally = new LongAdder();
+    private final LongAdder fellThrough = new LongAdder();
+
+    public IntentRouter(@Value("${app.mcp.router.enabled:true}") boolean enabled,
+                        @Value("${app.mcp.router.confidence-threshold:0.8}") double threshold) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+    }
+
+    /** Returns the local route when it is confident enough, or null to fall through to the LLM. */
+    public ResolvedCall route(String query) {
+        if (!enabled || query == null) {
+            return null;
+        }
+        Route route = classify(query);
+        if (route != null && route.confidence() >= threshold) {
+            routedLocally.increment();
+            return route.call();
+        }
+        fellThrough.increment();
+        return null;
+    }
+
+    /** Best matching intent and its confidence, regardless of the threshold. */
+    public Route classify(String query) {
+        String lower = query.toLowerCase(Locale.ROOT);
+        String course = extractCourse(query);
+        List<Intent> matched = new ArrayList<>();
+        for (Intent intent : INTENTS) {
+            if (intent.cues().stream().allMatch(cue -> cue.matcher(lower).find())) {
+                matched.add(intent);
+            }
+        }
+        if (matched.isEmpty()) {
+            return null;
+        }
+        // "who has the highest score in physics" also reads as a course listing; the specific intent wins
+        if (matched.stream().anyMatch(i -> !i.generic())) {
+            matched.removeIf(Intent::generic);
+        }
+        Intent best = matched.get(0);
+        double confidence = 1.0;
+        if (matched.size() > 1) {
+            confidence = 0.5;  // compound or ambiguous question
+        }
+        if (best.needsCourse() && course == null) {
+            confidence = Math.min(confidence, 0.6);
+        }
+        if (!best.needsCourse() && course != null) {
+            confidence = Math.min(confidence, 0.5);  // e.g. "average in physics" has no matching function
+        }
+        ObjectNode args = mapper.createObjectNode();
+        if (best.needsCourse() && course != null) {
+            args.put("course", course);
+        }
+        return new Route(new ResolvedCall(best.function(), args), confidence);
+    }
+
+    public double getConfidenceThreshold() {
+        return threshold;
+    }
+
+    public long getRoutedLocallyCount() {
+        return routedLocally.sum();
+    }
+
+    public long getFallThroughCount() {
+        return fellThrough.sum();
+    }
+
+    private static String extractCourse(String query) {
+        Matcher m = COURSE.matcher(query.trim());
+        if (!m.find()) {
+            return null;
+        }
+        String course = m.group(1).trim();
+        return NON_COURSE.matcher(course.toLowerCase(Locale.ROOT)).find() ? null : course;
+    }
+
+    private static Pattern cue(String regex) {
+        return Pattern.compile(regex);
+    }
+}
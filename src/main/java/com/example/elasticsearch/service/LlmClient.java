@@ -0,0 +1,20 @@
+package com.example.elasticsearch.service;
+
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+import java.util.List;
+
+/**
+ * Chat-completion access for the MCP query path. Implementations own the model,
+ * endpoint, timeouts and overload protection; callers only supply the conversation
+ * and the functions on offer.
+ */
+public interface LlmClient {
+
+    /**
+     * Runs one chat completion. Throws LlmUnavailableException without contacting the
+     * endpoint when the client is shedding load.
+     */
+    ChatCompletionResult complete(List<ChatMessage> messages, List<?> functions);
+}
@@ -0,0 +1,20 @@
+package com.example.elasticsearch.service;
+
+import java.time.Duration;
+
+/**
+ * The LLM call was refused locally, because the circuit breaker is open or the
+ * concurrency limit is reached, rather than attempted and failed.
+ */
+public class LlmUnavailableException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public LlmUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * Model Context Protocol server core: JSON-RPC 2.0 dispatch for initialize, ping,
+ * tools/list, tools/call, resources/list and resources/read, independent of the
+ * transport (see McpRpcController for streamable HTTP and McpStdioServer for stdio).
+ *
+ * Tools are the ToolCatalog templates plus document CRUD on ElasticsearchService;
+ * resources are the SchemaRegistry schemas. Every call is dispatched through the
+ * async ES client, so any number of pipelined calls are in flight without holding
+ * a thread each. Notifications complete with null: there is nothing to send back.
+ */
+@Service
+public class McpServer {
+    public static final String PROTOCOL_VERSION = "2025-03-26";
+    private static final List<String> SUPPORTED_VERSIONS = List.of(PROTOCOL_VERSION, "2024-11-05");
+    private static final String SCHEMA_URI_PREFIX = "schema://";
+
+    // JSON-RPC 2.0 error codes
+    static final int PARSE_ERROR = -32700;
+    static final int INVALID_REQUEST = -32600;
+    static final int METHOD_NOT_FOUND = -32601;
+    static final int INVALID_PARAMS = -32602;
+    static final int INTERNAL_ERROR = -32603;
+    static final int RESOURCE_NOT_FOUND = -32002;
+
+    private final ElasticsearchService es;
+    private final ToolCatalog tools;
+    private final SchemaRegistry schemas;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, DocumentTool> documentTools;
+    private final ArrayNode toolList;
+
+    /** A CRUD tool: its input schema and the async ES operation it runs. */
+    private record DocumentTool(String description, JsonNode inputSchema,
+                                BiFunction<ElasticsearchService, JsonNode, CompletableFuture<JsonNode>> call) {
+    }
+
+    public McpServer(ElasticsearchService es, ToolCatalog tools, SchemaRegistry schemas) {
+        this.es = es;
+        this.tools = tools;
+        this.schemas = schemas;
+        this.documentTools = Map.of(
+            "getDocument", new DocumentTool("Fetch a document by id",
+                inputSchema("index", "id"),
+                (client, args) -> client.readAsync(text(args, "index"), text(args, "id"))),
+            "createDocument", new DocumentTool("Index a new document; the id is derived from the document when the index has an id field",
+                inputSchema("index", "document"),
+                (client, args) -> client.createAsync(text(args, "index"), json(args, "document"))),
+            "updateDocument", new DocumentTool("Replace the document with the given id",
+                inputSchema("index", "id", "document"),
+                (client, args) -> client.updateAsync(text(args, "index"), text(args, "id"), json(args, "document"))),
+            "deleteDocument", new DocumentTool("Delete the document with the given id",
+                inputSchema("index", "id"),
+                (client, args) -> client.deleteAsync(text(args, "index"), text(args, "id"))));
+        this.toolList = buildToolList();
+    }
+
+    /**
+     * Handles one JSON-RPC message or batch. The future completes with the response,
+     * or with null for notifications and batches made only of notifications.
+     */
+    public CompletableFuture<JsonNode> handle(JsonNode message) {
+        if (message == null || !(message.isObject() || message.isArray())) {
+            return CompletableFuture.completedFuture(error(null, INVALID_REQUEST, "Invalid Request"));
+        }
+        if (message.isObject()) {
+            return handleOne(message);
+        }
+        if (message.isEmpty()) {
+            return CompletableFuture.completedFuture(error(null, INVALID_REQUEST, "Empty batch"));
+        }
+        List<CompletableFuture<JsonNode>> responses = new ArrayList<>();
+        message.forEach(entry -> responses.add(handleOne(entry)));
+        return CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            ArrayNode batch = mapper.createArrayNode();
+            responses.stream().map(CompletableFuture::join).filter(r -> r != null).forEach(batch::add);
+            return batch.isEmpty() ? null : batch;
+        });
+    }
+
+    public ObjectNode parseError(String detail) {
+        return error(null, PARSE_ERROR, "Parse error: " + detail);
+    }
+
+    public boolean isInitialize(JsonNode message) {
+        return message != null && message.isObject() && "initialize".equals(message.path("method").asText());
+    }
+
+    private CompletableFuture<JsonNode> handleOne(JsonNode request) {
+        JsonNode id = request.get("id");
+        if (!request.isObject() || !"2.0".equals(request.path("jsonrpc").asText()) || !request.path("method").isTextual()) {
+            return CompletableFuture.completedFuture(error(id, INVALID_REQUEST, "Invalid Request"));
+        }
+        boolean notification = id == null;
+        CompletableFuture<JsonNode> result;
+        try {
+            result = dispatch(request.get("method").asText(), request.path("params"));
+        } catch (RpcException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.handle((value, failure) -> {
+            if (notification) {
+                return null;
+            }
+            if (failure == null) {
+                ObjectNode response = mapper.createObjectNode().put("jsonrpc", "2.0");
+                response.set("id", id);
+                response.set("result", value);
+                return response;
+            }
+            Throwable cause = unwrap(failure);
+            return cause instanceof RpcException rpc
+                ? error(id, rpc.code, rpc.getMessage())
+                : error(id, INTERNAL_ERROR, "Internal error: " + cause.getMessage());
+        });
+    }
+
+    private CompletableFuture<JsonNode> dispatch(String method, JsonNode params) {
+        return switch (method) {
+            case "initialize" -> CompletableFuture.completedFuture(initialize(params));
+            case "ping" -> CompletableFuture.completedFuture(mapper.createObjectNode());
+            case "notifications/initialized", "notifications/cancelled" -> CompletableFuture.completedFuture(null);
+            case "tools/list" -> CompletableFuture.completedFuture(mapper.createObjectNode().set("tools", toolList));
+            case "tools/call" -> callTool(params);
+            case "resources/list" -> CompletableFuture.completedFuture(listResources());
+            case "resources/read" -> CompletableFuture.completedFuture(readResource(params));
+            default -> throw new RpcException(METHOD_NOT_FOUND, "Method not found: " + method);
+        };
+    }
+
+    private JsonNode initialize(JsonNode params) {
+        String requested = params.path("protocolVersion").asText(PROTOCOL_VERSION);
+        ObjectNode result = mapper.createObjectNode()
+            .put("protocolVersion", SUPPORTED_VERSIONS.contains(requested) ? requested : PROTOCOL_VERSION);
+        ObjectNode capabilities = result.putObject("capabilities");
+        capabilities.putObject("tools").put("listChanged", false);
+        capabilities.putObject("resources").put("listChanged", false).put("subscribe", false);
+        result.putObject("serverInfo").put("name", "elasticsearch-mcp-demo").put("version", "1.0.0");
+        return result;
+    }
+
+    private CompletableFuture<JsonNode> callTool(JsonNode params) {
+        String name = params.path("name").asText(null);
+        JsonNode args = params.path("arguments").isObject() ? params.get("arguments") : mapper.createObjectNode();
+        ToolCatalog.Tool template = name == null ? null : tools.tool(name);
+        DocumentTool document = name == null ? null : documentTools.get(name);
+        if (template == null && document == null) {
+            throw new RpcException(INVALID_PARAMS, "Unknown tool: " + name);
+        }
+        CompletableFuture<JsonNode> call;
+        try {
+            call = template != null ? runTemplate(template, args) : document.call().apply(es, args);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        // tool failures are reported in the result so the agent can see and correct them
+        return call.handle((value, failure) -> failure == null ? toolResult(value, false)
+            : toolResult(mapper.createObjectNode().put("error", String.valueOf(unwrap(failure).getMessage())), true));
+    }
+
+    private CompletableFuture<JsonNode> runTemplate(ToolCatalog.Tool tool, JsonNode args) {
+        return tool.aggregation()
+            ? es.aggregateAsync(tool.schema(), tool.template(), tool.bind(args, mapper))
+            : es.searchAsync(tool.schema(), tool.template(), tool.bind(args, mapper));
+    }
+
+    private JsonNode toolResult(JsonNode value, boolean isError) {
+        ObjectNode result = mapper.createObjectNode();
+        result.putArray("content").addObject().put("type", "text").put("text", value.toString());
+        if (value.isObject()) {
+            result.set("structuredContent", value);
+        }
+        return result.put("isError", isError);
+    }
+
+    private JsonNode listResources() {
+        ObjectNode result = mapper.createObjectNode();
+        ArrayNode resources = result.putArray("resources");
+        for (String name : new TreeSet<>(schemas.names())) {
+            resources.addObject()
+                .put("uri", SCHEMA_URI_PREFIX + name)
+                .put("name", name + "-schema.json")
+                .put("description", "JSON schema of documents in the " + name + " index")
+                .put("mimeType", "application/schema+json");
+        }
+        return result;
+    }
+
+    private JsonNode readResource(JsonNode params) {
+        String uri = params.path("uri").asText("");
+        JsonNode definition = uri.startsWith(SCHEMA_URI_PREFIX)
+            ? schemas.definition(uri.substring(SCHEMA_URI_PREFIX.length())) : null;
+        if (definition == null) {
+            throw new RpcException(RESOURCE_NOT_FOUND, "Resource not found: " + uri);
+        }
+        ObjectNode result = mapper.createObjectNode();
+        result.putArray("contents").addObject()
+            .put("uri", uri)
+            .put("mimeType", "application/schema+json")
+            .put("text", definition.toString());
+        return result;
+    }
+
+    private ArrayNode buildToolList() {
+        ArrayNode list = mapper.createArrayNode();
+        for (ToolCatalog.Tool tool : tools.tools()) {
+            ObjectNode entry = list.addObject().put("name", tool.name()).put("description", tool.description());
+            entry.set("inputSchema", tool.inputSchema());
+        }
+        documentTools.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e -> {
+            ObjectNode entry = list.addObject().put("name", e.getKey()).put("description", e.getValue().description());
+            entry.set("inputSchema", e.getValue().inputSchema());
+        });
+        return list;
+    }
+
+    private ObjectNode inputSchema(String... required) {
+        ObjectNode schema = mapper.createObjectNode().put("type", "object");
+        ObjectNode properties = schema.putObject("properties");
+        for (String name : required) {
+            properties.putObject(name).put("type", "document".equals(name) ? "object" : "string");
+            schema.withArray("required").add(name);
+        }
+        return schema;
+    }
+
+    private ObjectNode error(JsonNode id, int code, String message) {
+        ObjectNode response = mapper.createObjectNode().put("jsonrpc", "2.0");
+        response.set("id", id);
+        response.putObject("error").put("code", code).put("message", message);
+        return response;
+    }
+
+    private static String text(JsonNode args, String name) {
+        JsonNode value = args.get(name);
+        if (value == null || value.isNull() || value.asText().isEmpty()) {
+            throw new IllegalArgumentException("Missing required parameter: " + name);
+        }
+        return value.asText();
+    }
+
+    private String json(JsonNode args, String name) {
+        JsonNode value = args.get(name);
+        if (value == null || !value.isObject()) {
+            throw new IllegalArgumentException("Missing required parameter: " + name + " (a JSON object)");
+        }
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e.getOriginalMessage(), e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    private static final class RpcException extends RuntimeException {
+        private final int code;
+
+        RpcException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MCP stdio transport (app.mcp.stdio.enabled=true): newline-delimited JSON-RPC
+ * messages on stdin, responses on stdout. Requests are pipelined: each line is
+ * dispatched as soon as it is read and its response is written whenever it
+ * completes, so responses may come back out of order (clients match them by id).
+ * Once stdin closes, in-flight calls are allowed to finish and the application
+ * shuts down, as the client owns the server process. stdout is reserved for
+ * protocol messages; later writes to System.out (e.g. console logging) are
+ * redirected to stderr.
+ */
+@Component
+@ConditionalOnProperty(name = "app.mcp.stdio.enabled", havingValue = "true")
+public class McpStdioServer implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(McpStdioServer.class);
+
+    private final McpServer server;
+    private final ApplicationContext context;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public McpStdioServer(McpServer server, ApplicationContext context) {
+        this.server = server;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        serve(System.in, stdout);
+        System.exit(SpringApplication.exit(context));
+    }
+
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode message;
+                try {
+                    message = mapper.readTree(line);
+                } catch (IOException e) {
+                    write(out, server.parseError(e.getMessage()));
+                    continue;
+                }
+                CompletableFuture<Void> call = server.handle(message).thenAccept(response -> {
+                    if (response != null) {
+                        write(out, response);
+                    }
+                });
+                inFlight.add(call);
+                call.whenComplete((ignored, error) -> {
+                    inFlight.remove(call);
+                    if (error != null) {
+                        log.warn("MCP stdio response could not be written", error);
+                    }
+                });
+            }
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+    }
+
+    private void write(OutputStream out, JsonNode response) {
+        try {
+            byte[] bytes = mapper.writeValueAsBytes(response);
+            synchronized (out) {
+                out.write(bytes);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds concurrent single _search requests for up to {@code window} (or until
+ * {@code max-batch} are waiting) and sends them as one _msearch. Each caller gets a
+ * future for its own response; a failed item fails only that caller's future with
+ * {@link MsearchItemException}.
+ */
+@Component
+public class MsearchBatcher {
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+
+    private final RestClient es;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private List<Search> buffer = new ArrayList<>();
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedSearches = new LongAdder();
+    private final LongAdder batchNanos = new LongAdder();
+
+    public MsearchBatcher(RestClient es,
+                          @Value("${app.msearch-batch.enabled:false}") boolean enabled,
+                          @Value("${app.msearch-batch.window:2ms}") Duration window,
+                          @Value("${app.msearch-batch.max-batch:64}") int maxBatch) {
+        this.es = es;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatch = maxBatch;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "msearch-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<JsonNode> search(String indexName, String body) {
+        Search search = new Search(indexName, body);
+        List<Search> batch = null;
+        boolean first;
+        synchronized (lock) {
+            first = buffer.isEmpty();
+            buffer.add(search);
+            if (buffer.size() >= maxBatch) {
+                batch = drain();
+            }
+        }
+        if (batch != null) {
+            dispatch(batch);
+        } else if (first) {
+            // the window starts with the first search of a batch
+            scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+        return search.result;
+    }
+
+    /** Sends whatever is currently buffered. */
+    public void flush() {
+        List<Search> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getBatchedSearchCount() {
+        return batchedSearches.sum();
+    }
+
+    public double getBatchTimeMillis() {
+        return batchNanos.sum() / 1_000_000.0;
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    private List<Search> drain() {
+        List<Search> batch = buffer;
+        buffer = new ArrayList<>();
+        return batch;
+    }
+
+    private void dispatch(List<Search> batch) {
+        long start = System.nanoTime();
+        Request req = new Request("POST", "/_msearch");
+        req.setEntity(new StringEntity(toNdjson(batch), NDJSON));
+        es.performRequestAsync(req, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                record(batch, start);
+                try {
+                    complete(batch, response);
+                } catch (IOException | RuntimeException e) {
+                    fail(batch, e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                record(batch, start);
+                fail(batch, exception);
+            }
+        });
+    }
+
+    private void complete(List<Search> batch, Response response) throws IOException {
+        JsonNode responses;
+        try (InputStream in = response.getEntity().getContent()) {
+            responses = mapper.readTree(in).path("responses");
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            JsonNode item = responses.path(i);
+            int status = item.path("status").asInt(200);
+            if (item.isMissingNode()) {
+                batch.get(i).result.completeExceptionally(new IOException("No _msearch response for item " + i));
+            } else if (item.has("error") || status >= 300) {
+                batch.get(i).result.completeExceptionally(new MsearchItemException(status, item));
+            } else {
+                // _msearch adds a per-item status that a plain _search response does not have
+                ((ObjectNode) item).remove("status");
+                batch.get(i).result.complete(item);
+            }
+        }
+    }
+
+    private void fail(List<Search> batch, Exception cause) {
+        for (Search search : batch) {
+            search.result.completeExceptionally(cause);
+        }
+    }
+
+    private void record(List<Search> batch, long startNanos) {
+        batches.increment();
+        batchedSearches.add(batch.size());
+        batchNanos.add(System.nanoTime() - startNanos);
+    }
+
+    private String toNdjson(List<Search> batch) {
+        StringBuilder body = new StringBuilder();
+        for (Search search : batch) {
+            body.append(mapper.createObjectNode().put("index", search.index)).append('\n');
+            // rendered templates are pretty-printed; JSON strings cannot contain raw newlines
+            body.append(search.body.isEmpty() ? "{}" : search.body.replace('\n', ' ').replace('\r', ' ')).append('\n');
+        }
+        return body.toString();
+    }
+
+    private static final class Search {
+        final String index;
+        final String body;
+        final CompletableFuture<JsonNode> result = new CompletableFuture<>();
+
+        Search(String index, String body) {
+            this.index = index;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * A single search in a batched _msearch request was rejected by Elasticsearch.
+ */
+public class MsearchItemException extends IOException {
+    private final int status;
+    private final JsonNode item;
+
+    public MsearchItemException(int status, JsonNode item) {
+        super("Search failed with status " + status + ": " + item.path("error"));
+        this.status = status;
+        this.item = item;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public JsonNode getItem() {
+        return item;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.elasticsearch.service;
+
+import com.theokanning.openai.OpenAiHttpException;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.service.OpenAiService;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OpenAI-compatible chat-completion client with bounded cost per call. Configured
+ * through app.mcp.llm:
+ * - base-url: any OpenAI-compatible endpoint, including the local test stub.
+ * - Connect timeout and overall call timeout.
+ * - A tuned connection pool.
+ *
+ * The client sheds load instead of queueing behind a slow endpoint:
+ * - At most max-concurrent calls are in flight; excess callers are refused
+ *   after acquire-timeout.
+ * - After a run of failures the circuit breaker refuses calls outright until
+ *   the endpoint has had time to recover.
+ * - Connection failures and 429/5xx answers are retried; timeouts are not,
+ *   since they have already spent the caller's budget.
+ */
+@Component
+public class OpenAiLlmClient implements LlmClient {
+    private final OkHttpClient http;
+    private final OpenAiService service;
+    private final String model;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final Duration acquireTimeout;
+    private final int retries;
+    private final Duration retryBackoff;
+    private final CircuitBreaker breaker;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+
+    public OpenAiLlmClient(@Value("${OPENAI_API_KEY}") String apiKey,
+                           @Value("${app.mcp.llm.base-url:https://api.openai.com/}") String baseUrl,
+                           @Value("${app.mcp.llm.model:gpt-4o-mini}") String model,
+                           @Value("${app.mcp.llm.connect-timeout:2s}") Duration connectTimeout,
+                           @Value("${app.mcp.llm.timeout:10s}") Duration timeout,
+                           @Value("${app.mcp.llm.pool.max-idle:16}") int maxIdle,
+                           @Value("${app.mcp.llm.pool.keep-alive:5m}") Duration keepAlive,
+                           @Value("${app.mcp.llm.max-concurrent:16}") int maxConcurrent,
+                           @Value("${app.mcp.llm.acquire-timeout:100ms}") Duration acquireTimeout,
+                           @Value("${app.mcp.llm.retries:1}") int retries,
+                           @Value("${app.mcp.llm.retry-backoff:200ms}") Duration retryBackoff,
+                           @Value("${app.mcp.llm.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                           @Value("${app.mcp.llm.circuit-breaker.open-duration:30s}") Duration openDuration) {
+        this.http = OpenAiService.defaultClient(apiKey, timeout).newBuilder()
+            .connectTimeout(connectTimeout)
+            .readTimeout(timeout)
+            .callTimeout(timeout)
+            .connectionPool(new ConnectionPool(maxIdle, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+            .build();
+        this.http.dispatcher().setMaxRequests(maxConcurrent);
+        this.http.dispatcher().setMaxRequestsPerHost(maxConcurrent);
+        OpenAiApi api = OpenAiService.defaultRetrofit(http, OpenAiService.defaultObjectMapper()).newBuilder()
+            .baseUrl(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/")
+            .build()
+            .create(OpenAiApi.class);
+        this.service = new OpenAiService(api, http.dispatcher().executorService());
+        this.model = model;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+        this.acquireTimeout = acquireTimeout;
+        this.retries = retries;
+        this.retryBackoff = retryBackoff;
+        this.breaker = new CircuitBreaker(failureThreshold, openDuration);
+    }
+
+    @Override
+    public ChatCompletionResult complete(List<ChatMessage> messages, List<?> functions) {
+        if (!acquirePermit()) {
+            rejected.increment();
+            throw new LlmUnavailableException("LLM concurrency limit of " + maxConcurrent + " reached", Duration.ofSeconds(1));
+        }
+        try {
+            if (!breaker.tryAcquire()) {
+                rejected.increment();
+                throw new LlmUnavailableException("LLM circuit breaker is open", breaker.getRetryAfter());
+            }
+            ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model(model)
+                .messages(messages)
+                .functions(functions)
+                .build();
+            return call(request);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private ChatCompletionResult call(ChatCompletionRequest request) {
+        for (int attempt = 0; ; attempt++) {
+            calls.increment();
+            try {
+                ChatCompletionResult result = service.createChatCompletion(request);
+                breaker.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                if (!isEndpointFailure(e)) {
+                    // a rejected request (bad input, auth) says nothing about the endpoint's health
+                    breaker.onSuccess();
+                    throw e;
+                }
+                if (attempt < retries && isRetryable(e) && backOff()) {
+                    retried.increment();
+                    continue;
+                }
+                failures.increment();
+                breaker.onFailure();
+                throw e;
+            }
+        }
+    }
+
+    private boolean acquirePermit() {
+        try {
+            return permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean backOff() {
+        try {
+            Thread.sleep(retryBackoff.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean isEndpointFailure(RuntimeException e) {
+        if (e instanceof OpenAiHttpException http) {
+            return http.statusCode >= 500 || http.statusCode == 408 || http.statusCode == 429;
+        }
+        return true;
+    }
+
+    private static boolean isRetryable(RuntimeException e) {
+        if (e instanceof OpenAiHttpException http) {
+            return http.statusCode != 408;
+        }
+        // timeouts have already used up the call budget; only retry failures to connect or reset connections
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getRetryCount() {
+        return retried.sum();
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    @PreDestroy
+    public void close() {
+        http.dispatcher().executorService().shutdown();
+        http.connectionPool().evictAll();
+    }
+}
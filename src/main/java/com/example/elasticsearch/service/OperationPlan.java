@@ -0,0 +1,23 @@
+package com.example.elasticsearch.service;
+
+import com.github.mustachejava.Mustache;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * A YAML operation resolved once at load time: the target index, HTTP method and
+ * endpoint are fixed and the query body is already compiled, so executing it is a
+ * single render followed by a single HTTP call.
+ */
+public record OperationPlan(String operationType,
+                            String name,
+                            String index,
+                            String method,
+                            String endpoint,
+                            Mustache body) {
+
+    public String render(Map<String, Object> params) {
+        return body.execute(new StringWriter(), params).toString();
+    }
+}
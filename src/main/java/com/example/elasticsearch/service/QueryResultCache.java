@@ -0,0 +1,173 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of parsed search results keyed by index, endpoint and rendered body.
+ *
+ * <p>Each index has a generation that is part of the key. A write through the service bumps it,
+ * so earlier entries for that index are never read again and age out of the LRU. Results
+ * are also not stored for {@code refresh-interval} after a write, because until the next
+ * refresh a search can still return pre-write data.
+ *
+ * <p>Index states are held in a second bounded cache, as any index name a client reads through
+ * creates one. A state idle for longer than the longest TTL (or refresh interval) has no live
+ * entries and expires. Generations come from one counter shared by all indices, so a state
+ * created again after eviction can never match an older entry. Evicting one that was written
+ * within the refresh interval holds every new state to that write's refresh window.
+ */
+@Component
+public class QueryResultCache {
+    private final boolean enabled;
+    private final Duration defaultTtl;
+    private final Map<String, Duration> ttls;
+    private final long refreshNanos;
+    private final Cache<Key, Entry> cache;
+    private final Cache<String, IndexState> indices;
+    private final AtomicLong generations = new AtomicLong();
+    // the latest write among evicted index states; new states are not cached before its refresh
+    private final AtomicLong evictedWrittenAt = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryResultCache(@Value("${app.cache.enabled:false}") boolean enabled,
+                            @Value("${app.cache.max-entries:10000}") long maxEntries,
+                            @Value("${app.cache.default-ttl:30s}") Duration defaultTtl,
+                            @Value("${app.cache.ttl:}") String ttls,
+                            @Value("${app.cache.refresh-interval:1s}") Duration refreshInterval) {
+        this.enabled = enabled;
+        this.defaultTtl = defaultTtl;
+        this.ttls = parseTtls(ttls);
+        this.refreshNanos = refreshInterval.toNanos();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfter(new Expiry<Key, Entry>() {
+                @Override
+                public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+                    return entry.ttlNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+                    return entry.ttlNanos();
+                }
+
+                @Override
+                public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+        Duration longestTtl = this.ttls.values().stream().reduce(defaultTtl, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+        this.indices = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterAccess(longestTtl.compareTo(refreshInterval) >= 0 ? longestTtl : refreshInterval)
+            .<String, IndexState>evictionListener((index, state, cause) ->
+                evictedWrittenAt.accumulateAndGet(state.writtenAt, Math::max))
+            .build();
+    }
+
+    /**
+     * Returns the cache slot for a read, or null when the read must not be cached
+     * (cache disabled, zero TTL, or a multi-index/wildcard target that writes cannot invalidate).
+     */
+    public Lookup lookup(String index, String template, String method, String endpoint, String body) {
+        if (!enabled || index.indexOf(',') >= 0 || index.indexOf('*') >= 0 || index.startsWith("_")) {
+            return null;
+        }
+        Duration ttl = ttls.getOrDefault(template, defaultTtl);
+        if (ttl.isZero() || ttl.isNegative()) {
+            return null;
+        }
+        IndexState state = state(index);
+        return new Lookup(new Key(index, method, endpoint, body, state.generation), ttl.toNanos(), state);
+    }
+
+    public JsonNode get(Lookup lookup) {
+        Entry entry = cache.getIfPresent(lookup.key());
+        return entry == null ? null : entry.value();
+    }
+
+    public void put(Lookup lookup, JsonNode value) {
+        IndexState state = lookup.state();
+        // skip results that a write has already made stale, or that may predate the next refresh
+        if (state.generation == lookup.key().generation() && System.nanoTime() - state.writtenAt >= refreshNanos) {
+            cache.put(lookup.key(), new Entry(value, lookup.ttlNanos()));
+        }
+    }
+
+    public void invalidate(String index) {
+        if (!enabled) {
+            return;
+        }
+        IndexState state = state(index);
+        synchronized (state) {
+            state.writtenAt = System.nanoTime();
+            state.generation = generations.incrementAndGet();
+        }
+        invalidations.increment();
+    }
+
+    public Cache<?, ?> getNativeCache() {
+        return cache;
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    private IndexState state(String index) {
+        return indices.get(index, i -> {
+            long writtenAt = Math.max(System.nanoTime() - refreshNanos, evictedWrittenAt.get());
+            return new IndexState(generations.incrementAndGet(), writtenAt);
+        });
+    }
+
+    long getIndexCount() {
+        indices.cleanUp();
+        return indices.estimatedSize();
+    }
+
+    private static Map<String, Duration> parseTtls(String spec) {
+        Map<String, Duration> ttls = new HashMap<>();
+        for (String pair : spec.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            String[] parts = pair.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected template=duration in app.cache.ttl: " + pair);
+            }
+            ttls.put(parts[0].trim(), DurationStyle.detectAndParse(parts[1].trim()));
+        }
+        return Map.copyOf(ttls);
+    }
+
+    record Key(String index, String method, String endpoint, String body, long generation) {}
+
+    private record Entry(JsonNode value, long ttlNanos) {}
+
+    public record Lookup(Key key, long ttlNanos, IndexState state) {}
+
+    static final class IndexState {
+        volatile long generation;
+        volatile long writtenAt;
+
+        IndexState(long generation, long writtenAt) {
+            this.generation = generation;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
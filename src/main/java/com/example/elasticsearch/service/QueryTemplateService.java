@@ -1,7 +1,9 @@
 package com.example.elasticsearch.service;
 
+import com.example.elasticsearch.model.ProjectionManifest;
 import com.example.elasticsearch.model.QueryTemplate;
 import com.example.elasticsearch.query.QueryParams;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -11,10 +13,14 @@ import com.github.mustachejava.MustacheFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
 import org.springframework.stereotype.Component;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 
+import jakarta.annotation.PostConstruct;
+
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -22,17 +28,33 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class QueryTemplateService {
+    // Per-schema response projections, next to the templates they shape
+    static final String PROJECTIONS = "projections.yml";
+
     private final MustacheFactory mustacheFactory;
     private final ResourceLoader loader;
     private final String basePath;
     private final ObjectMapper mapper;
     private final Yaml yaml;
-    private final Map<String, QueryTemplate> templateCache = new ConcurrentHashMap<>();
+    // Execution plans per operation type, each keyed by template name
+    private final Map<String, Map<String, OperationPlan>> plans = new ConcurrentHashMap<>();
+    // Compiled es-templates keyed by "schema/template"; replaced wholesale on reload()
+    private volatile Map<String, Mustache> compiled = new ConcurrentHashMap<>();
+    // Response projections per schema, each keyed by template name; replaced together with compiled
+    private volatile Map<String, Map<String, ResponseProjection>> projections = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder compilations = new LongAdder();
 
     public QueryTemplateService(@Value("${app.query.template-path}") String basePath,
                                 ResourceLoader loader,
@@ -44,67 +66,202 @@ public class QueryTemplateService {
         this.yaml = new Yaml(new Constructor(QueryTemplate.class));
     }
 
+    @PostConstruct
+    public void preload() throws IOException {
+        reload();
+        ResourcePatternResolver resolver = ResourcePatternUtils.getResourcePatternResolver(loader);
+        for (Resource res : resolver.getResources("classpath*:query-templates/*.yml")) {
+            String operationType = res.getFilename().replace(".yml", "");
+            plans.put(operationType, buildPlans(operationType, res));
+        }
+    }
+
+    /**
+     * Compiles every template under the base path and atomically swaps it in
+     * as the new registry. Returns the number of compiled templates.
+     */
+    public int reload() {
+        ResourcePatternResolver resolver = ResourcePatternUtils.getResourcePatternResolver(loader);
+        String pattern = basePath.replaceFirst("^classpath:", "classpath*:") + "*/*";
+        Map<String, Mustache> fresh = new ConcurrentHashMap<>();
+        Map<String, Map<String, ResponseProjection>> freshProjections = new ConcurrentHashMap<>();
+        try {
+            for (Resource res : resolver.getResources(pattern)) {
+                if (!res.isReadable() || res.getFilename() == null) {
+                    continue;
+                }
+                String[] path = res.getURL().getPath().split("/");
+                String schemaName = path[path.length - 2];
+                if (PROJECTIONS.equals(res.getFilename())) {
+                    freshProjections.putIfAbsent(schemaName, loadProjections(res));
+                    continue;
+                }
+                String key = key(schemaName, res.getFilename());
+                fresh.putIfAbsent(key, compile(res, key));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        compiled = fresh;
+        projections = freshProjections;
+        return fresh.size();
+    }
+
     public String render(String schemaName, String templateName, QueryParams params) {
-        Resource res = loader.getResource(basePath + schemaName + "/" + templateName);
+        Mustache mustache = compiled(schemaName, templateName);
         Map<String, Object> ctx = mapper.convertValue(params, new TypeReference<>() {});
+        return mustache.execute(new StringWriter(), ctx).toString();
+    }
+
+    /** Whether the template exists under the configured template path. */
+    public boolean exists(String schemaName, String templateName) {
+        return compiled.containsKey(key(schemaName, templateName))
+            || loader.getResource(basePath + schemaName + "/" + templateName).exists();
+    }
+
+    /** The response projection declared for a template, or {@link ResponseProjection#NONE}. */
+    public ResponseProjection projection(String schemaName, String templateName) {
+        return projections.computeIfAbsent(schemaName,
+                s -> loadProjections(loader.getResource(basePath + s + "/" + PROJECTIONS)))
+            .getOrDefault(templateName, ResponseProjection.NONE);
+    }
+
+    public JsonNode executeTemplate(String operationType, String templateName, QueryParams params, ElasticsearchService esService) throws IOException {
+        OperationPlan plan = getPlan(operationType, templateName);
+        return esService.executePlan(plan, render(plan, params));
+    }
+
+    public String render(OperationPlan plan, QueryParams params) {
+        return plan.render(mapper.convertValue(params, new TypeReference<>() {}));
+    }
+
+    public OperationPlan getPlan(String operationType, String templateName) {
+        OperationPlan plan = plans.computeIfAbsent(operationType,
+                key -> buildPlans(key, loader.getResource("classpath:query-templates/" + key + ".yml")))
+            .get(templateName);
+        if (plan == null) {
+            throw new IllegalArgumentException("Template not found: " + templateName);
+        }
+        return plan;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCompilations() {
+        return compilations.sum();
+    }
+
+    public int getCompiledTemplateCount() {
+        return compiled.size();
+    }
+
+    private Mustache compiled(String schemaName, String templateName) {
+        String key = key(schemaName, templateName);
+        Mustache mustache = compiled.get(key);
+        if (mustache != null) {
+            cacheHits.increment();
+            return mustache;
+        }
+        // Only reached for templates added after the last reload (or when preload did not run)
+        return compiled.computeIfAbsent(key,
+                k -> compile(loader.getResource(basePath + schemaName + "/" + templateName), k));
+    }
+
+    private Mustache compile(Resource res, String key) {
         try (Reader reader = new InputStreamReader(res.getInputStream(), StandardCharsets.UTF_8)) {
-            Mustache mustache = mustacheFactory.compile(reader, templateName);
-            return mustache.execute(new StringWriter(), ctx).toString();
+            compilations.increment();
+            return mustacheFactory.compile(reader, key);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    public JsonNode executeTemplate(String operationType, String templateName, QueryParams params, ElasticsearchService esService) throws IOException {
-        QueryTemplate queryTemplate = loadTemplate(operationType);
-        
-        QueryTemplate.Template template = queryTemplate.getTemplates().stream()
-                .filter(t -> templateName.equals(t.getName()))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Template not found: " + templateName));
-
-        // Convert params to map for template variable substitution
-        Map<String, Object> paramMap = mapper.convertValue(params, new TypeReference<>() {});
-        
-        // Process the base query with mustache templating
-        String queryJson = processTemplate(mapper.writeValueAsString(template.getBaseQuery()), paramMap);
-        
-        // Execute based on query type
-        String queryType = template.getQueryType();
-        if (queryType == null) queryType = "search";
-        
-        switch (queryType.toLowerCase()) {
-            case "search":
-                return esService.executeRawQuery(getIndexFromOperationType(operationType), "GET", "/_search", queryJson);
-            case "agg":
-            case "aggregation":
-                return esService.executeRawQuery(getIndexFromOperationType(operationType), "GET", "/_search", queryJson);
-            case "msearch":
-                return esService.executeRawQuery(getIndexFromOperationType(operationType), "POST", "/_msearch", queryJson);
-            default:
-                throw new IllegalArgumentException("Unsupported query type: " + queryType);
+    private Mustache compile(String template, String key) {
+        try (StringReader reader = new StringReader(template)) {
+            compilations.increment();
+            return mustacheFactory.compile(reader, key);
         }
     }
 
-    private QueryTemplate loadTemplate(String operationType) throws IOException {
-        return templateCache.computeIfAbsent(operationType, key -> {
-            try {
-                Resource res = loader.getResource("classpath:query-templates/" + key + ".yml");
-                try (Reader reader = new InputStreamReader(res.getInputStream(), StandardCharsets.UTF_8)) {
-                    return yaml.load(reader);
-                }
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
+    private static Map<String, ResponseProjection> loadProjections(Resource res) {
+        if (!res.exists()) {
+            return Map.of();
+        }
+        ProjectionManifest manifest;
+        try (Reader reader = new InputStreamReader(res.getInputStream(), StandardCharsets.UTF_8)) {
+            manifest = new Yaml(new Constructor(ProjectionManifest.class)).load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, ResponseProjection> byTemplate = new HashMap<>();
+        if (manifest == null || manifest.getProjections() == null) {
+            return byTemplate;
+        }
+        for (ProjectionManifest.Projection entry : manifest.getProjections()) {
+            List<String> source = entry.getSource() == null ? List.of() : List.copyOf(entry.getSource());
+            Set<String> allow = new LinkedHashSet<>(entry.getAllow() == null ? source : entry.getAllow());
+            String filterPath = entry.getFilterPath() != null ? String.join(",", entry.getFilterPath())
+                : source.isEmpty() ? null : ResponseProjection.HITS_FILTER_PATH;
+            if (!allow.containsAll(source)) {
+                throw new IllegalStateException("Projection of " + entry.getTemplate() + " includes fields outside its allow list");
+            }
+            byTemplate.put(entry.getTemplate(), new ResponseProjection(source, Collections.unmodifiableSet(allow), filterPath));
+        }
+        return Map.copyOf(byTemplate);
+    }
+
+    private static String key(String schemaName, String templateName) {
+        return schemaName + "/" + templateName;
+    }
+
+    private Map<String, OperationPlan> buildPlans(String operationType, Resource res) {
+        QueryTemplate queryTemplate;
+        try (Reader reader = new InputStreamReader(res.getInputStream(), StandardCharsets.UTF_8)) {
+            queryTemplate = yaml.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String index = getIndexFromOperationType(operationType);
+        Map<String, OperationPlan> byName = new HashMap<>();
+        for (QueryTemplate.Template template : queryTemplate.getTemplates()) {
+            String queryType = template.getQueryType();
+            if (queryType == null) queryType = "search";
+
+            String method;
+            String endpoint;
+            switch (queryType.toLowerCase()) {
+                case "search":
+                case "agg":
+                case "aggregation":
+                    method = "GET";
+                    endpoint = "/_search";
+                    break;
+                case "msearch":
+                    method = "POST";
+                    endpoint = "/_msearch";
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported query type: " + queryType);
             }
-        });
+
+            String key = operationType + "/" + template.getName();
+            byName.put(template.getName(), new OperationPlan(operationType, template.getName(), index,
+                    method, endpoint, compile(serialize(template.getBaseQuery()), key)));
+        }
+        return Map.copyOf(byName);
     }
 
-    private String processTemplate(String template, Map<String, Object> params) {
-        try (StringReader reader = new StringReader(template)) {
-            Mustache mustache = mustacheFactory.compile(reader, "template");
-            StringWriter writer = new StringWriter();
-            mustache.execute(writer, params);
-            return writer.toString();
+    private String serialize(Object baseQuery) {
+        if (baseQuery instanceof String raw) {
+            return raw;
+        }
+        try {
+            return mapper.writeValueAsString(baseQuery);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid baseQuery: " + e.getOriginalMessage(), e);
         }
     }
 
@@ -0,0 +1,235 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * State of one reindex job: the request, the point in time it reads from, and a
+ * checkpoint per slice (the search_after values of the last page whose documents were
+ * all acknowledged by the destination). A cancelled or failed job resumes from these
+ * checkpoints. Each slice is advanced by a single worker thread; the counters are
+ * volatile so that status reads see recent progress.
+ */
+public class ReindexJob {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int MAX_ERRORS = 10;
+
+    public enum State { RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /**
+     * A reindex request. slices, transforms, schema and docsPerSecond are optional:
+     * one slice per CPU, no transforms, the schema named after the source index, and
+     * no throttling.
+     */
+    public record Spec(String source, String dest, Integer slices, JsonNode query,
+                       List<String> transforms, String schema, Integer docsPerSecond) {}
+
+    private final String id;
+    private final Spec spec;
+    private final List<Slice> slices = new ArrayList<>();
+    private final Function<ObjectNode, ObjectNode> transform;
+    private final Throttle throttle;
+    private final long total;
+    private final List<String> errors = new ArrayList<>();
+    private volatile String pitId;
+    private volatile State state = State.RUNNING;
+    private volatile String failure;
+    private volatile boolean cancelled;
+    private volatile long startedNanos = System.nanoTime();
+    private volatile long elapsedNanos;
+    private volatile int restarts;
+
+    ReindexJob(String id, Spec spec, int sliceCount, Function<ObjectNode, ObjectNode> transform, long total, String pitId) {
+        this.id = id;
+        this.spec = spec;
+        this.transform = transform;
+        this.throttle = new Throttle(spec.docsPerSecond() == null ? 0 : spec.docsPerSecond());
+        this.total = total;
+        this.pitId = pitId;
+        for (int i = 0; i < sliceCount; i++) {
+            slices.add(new Slice(i));
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Spec getSpec() {
+        return spec;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getCopied() {
+        return slices.stream().mapToLong(s -> s.copied).sum();
+    }
+
+    public long getFailed() {
+        return slices.stream().mapToLong(s -> s.failed).sum();
+    }
+
+    public JsonNode status() {
+        long copied = getCopied();
+        long elapsed = state == State.RUNNING ? System.nanoTime() - startedNanos : elapsedNanos;
+        ObjectNode status = MAPPER.createObjectNode()
+            .put("id", id)
+            .put("source", spec.source())
+            .put("dest", spec.dest())
+            .put("state", state.name())
+            .put("total", total)
+            .put("copied", copied)
+            .put("failed", getFailed())
+            .put("restarts", restarts)
+            .put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsed))
+            .put("docsPerSecond", elapsed == 0 ? 0 : Math.round(copied * 1e9 / elapsed));
+        if (failure != null) {
+            status.put("failure", failure);
+        }
+        ArrayNode sliceStatus = status.putArray("slices");
+        for (Slice slice : slices) {
+            sliceStatus.addObject()
+                .put("id", slice.id)
+                .put("copied", slice.copied)
+                .put("failed", slice.failed)
+                .put("done", slice.done)
+                .set("checkpoint", slice.searchAfter);
+        }
+        synchronized (errors) {
+            errors.forEach(status.putArray("errors")::add);
+        }
+        return status;
+    }
+
+    List<Slice> slices() {
+        return slices;
+    }
+
+    Function<ObjectNode, ObjectNode> transform() {
+        return transform;
+    }
+
+    Throttle throttle() {
+        return throttle;
+    }
+
+    String pitId() {
+        return pitId;
+    }
+
+    // ES may hand back a new point in time id with any page; later pages must use the latest
+    void pitId(String pitId) {
+        if (pitId != null) {
+            this.pitId = pitId;
+        }
+    }
+
+    boolean isStopping() {
+        return cancelled || failure != null;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    void error(String message) {
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+    }
+
+    void fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+        }
+    }
+
+    boolean isComplete() {
+        return failure == null && slices.stream().allMatch(s -> s.done);
+    }
+
+    void finish() {
+        elapsedNanos += System.nanoTime() - startedNanos;
+        if (failure != null) {
+            state = State.FAILED;
+        } else if (isComplete()) {
+            state = State.COMPLETED;
+        } else {
+            state = State.CANCELLED;
+        }
+    }
+
+    void resume() {
+        cancelled = false;
+        failure = null;
+        startedNanos = System.nanoTime();
+        state = State.RUNNING;
+    }
+
+    // The point in time expired: checkpoints and slice assignment are only valid within one, so start over
+    void restart(String pitId) {
+        this.pitId = pitId;
+        restarts++;
+        for (Slice slice : slices) {
+            slice.searchAfter = null;
+            slice.copied = 0;
+            slice.failed = 0;
+            slice.done = false;
+        }
+    }
+
+    static final class Slice {
+        final int id;
+        volatile JsonNode searchAfter;
+        volatile long copied;
+        volatile long failed;
+        volatile boolean done;
+
+        Slice(int id) {
+            this.id = id;
+        }
+
+        void checkpoint(JsonNode searchAfter, int copied, int failed) {
+            this.searchAfter = searchAfter;
+            this.copied += copied;
+            this.failed += failed;
+        }
+    }
+
+    /** Spaces out pages so that all slices together stay under docsPerSecond (0 = unlimited). */
+    static final class Throttle {
+        private final int docsPerSecond;
+        private long next = System.nanoTime();
+
+        Throttle(int docsPerSecond) {
+            this.docsPerSecond = docsPerSecond;
+        }
+
+        void acquire(int docs) throws InterruptedException {
+            if (docsPerSecond <= 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long start = Math.max(now, next);
+                next = start + docs * 1_000_000_000L / docsPerSecond;
+                wait = start - now;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Copies one index into another as a background job. The source is read through a
+ * point in time split into slices, each paged with search_after on its own worker
+ * thread, so reads run in parallel across shards and cores. Every page goes through
+ * the job's transforms and into a BulkIndexer sized to the job's slices, keeping the
+ * source _id (re-copying a document overwrites it). A slice's checkpoint moves only
+ * once all documents of a page are acknowledged, so a cancelled or failed job resumes
+ * without gaps. Jobs are kept in memory and are lost on restart.
+ */
+@Service
+public class ReindexService {
+    private static final Logger log = LoggerFactory.getLogger(ReindexService.class);
+    private static final String FILTER_PATH = "pit_id,hits.hits._id,hits.hits._source,hits.hits.sort";
+    private static final int NOT_FOUND = 404;
+
+    private final RestClient es;
+    private final SchemaRegistry schemas;
+    private final int defaultSlices;
+    private final int pageSize;
+    private final String keepAlive;
+    private final long bulkMaxBytes;
+    private final int bulkMaxRetries;
+    private final Duration bulkBackoff;
+    private final ExecutorService workers;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, ReindexJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder copied = new LongAdder();
+
+    public ReindexService(RestClient es, SchemaRegistry schemas,
+                          @Value("${app.reindex.slices:0}") int defaultSlices,
+                          @Value("${app.reindex.page-size:1000}") int pageSize,
+                          @Value("${app.reindex.keep-alive:5m}") Duration keepAlive,
+                          @Value("${app.reindex.max-threads:16}") int maxThreads,
+                          @Value("${app.bulk.max-bytes:5242880}") long bulkMaxBytes,
+                          @Value("${app.bulk.max-retries:3}") int bulkMaxRetries,
+                          @Value("${app.bulk.initial-backoff:100ms}") Duration bulkBackoff) {
+        this.es = es;
+        this.schemas = schemas;
+        this.defaultSlices = defaultSlices > 0 ? defaultSlices : Runtime.getRuntime().availableProcessors();
+        this.pageSize = pageSize;
+        this.keepAlive = keepAlive.toMillis() + "ms";
+        this.bulkMaxBytes = bulkMaxBytes;
+        this.bulkMaxRetries = bulkMaxRetries;
+        this.bulkBackoff = bulkBackoff;
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(maxThreads, r -> {
+            Thread t = new Thread(r, "reindex-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ReindexJob start(ReindexJob.Spec spec) throws IOException {
+        if (spec.source() == null || spec.dest() == null) {
+            throw new IllegalArgumentException("Both source and dest are required");
+        }
+        if (spec.source().equals(spec.dest())) {
+            throw new IllegalArgumentException("source and dest must be different indices");
+        }
+        int slices = spec.slices() == null ? defaultSlices : spec.slices();
+        if (slices < 1) {
+            throw new IllegalArgumentException("slices must be at least 1");
+        }
+        Function<ObjectNode, ObjectNode> transform = transform(spec);
+        long total = count(spec);
+        ReindexJob job = new ReindexJob("reindex-" + ids.incrementAndGet(), spec, slices, transform, total, openPit(spec.source()));
+        jobs.put(job.getId(), job);
+        launch(job);
+        return job;
+    }
+
+    public ReindexJob job(String id) {
+        return jobs.get(id);
+    }
+
+    public Collection<ReindexJob> jobs() {
+        return List.copyOf(jobs.values());
+    }
+
+    /** Stops the job after the page each slice is working on; null when there is no such job. */
+    public ReindexJob cancel(String id) {
+        ReindexJob job = jobs.get(id);
+        if (job != null) {
+            job.cancel();
+        }
+        return job;
+    }
+
+    /**
+     * Continues a cancelled or failed job from its slice checkpoints. If the point in time
+     * has expired in the meantime, the job starts over on a new one.
+     */
+    public ReindexJob resume(String id) throws IOException {
+        ReindexJob job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            if (job.getState() == ReindexJob.State.RUNNING || job.getState() == ReindexJob.State.COMPLETED) {
+                throw new IllegalStateException("Job " + id + " is " + job.getState() + " and cannot be resumed");
+            }
+            if (!pitAlive(job.pitId())) {
+                job.restart(openPit(job.getSpec().source()));
+            }
+            job.resume();
+        }
+        launch(job);
+        return job;
+    }
+
+    public long getCopiedCount() {
+        return copied.sum();
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        jobs.values().forEach(ReindexJob::cancel);
+        workers.shutdown();
+    }
+
+    private void launch(ReindexJob job) {
+        running.incrementAndGet();
+        List<ReindexJob.Slice> slices = job.slices();
+        // one bulk in flight per slice, and a slice waits for its page before reading the next,
+        // so a write never has to wait for room
+        BulkIndexer writer = new BulkIndexer(es, false, pageSize, bulkMaxBytes, Duration.ZERO, slices.size(),
+            bulkMaxRetries, bulkBackoff, Duration.ofMinutes(1));
+        List<CompletableFuture<Void>> work = new ArrayList<>();
+        for (ReindexJob.Slice slice : slices) {
+            if (!slice.done) {
+                work.add(CompletableFuture.runAsync(() -> copySlice(job, slice, writer), workers));
+            }
+        }
+        CompletableFuture.allOf(work.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+            writer.close();
+            if (error != null) {
+                job.fail(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+            // close before the state flips, so a caller seeing COMPLETED never finds the point in time open
+            if (job.isComplete()) {
+                closePit(job.pitId());
+            }
+            synchronized (job) {
+                job.finish();
+            }
+            running.decrementAndGet();
+            log.info("Reindex {} {}: {} copied, {} failed", job.getId(), job.getState(), job.getCopied(), job.getFailed());
+        });
+    }
+
+    private void copySlice(ReindexJob job, ReindexJob.Slice slice, BulkIndexer writer) {
+        try {
+            while (!slice.done && !job.isStopping()) {
+                JsonNode page = search(job, slice);
+                job.pitId(page.path("pit_id").asText(null));
+                JsonNode hits = page.path("hits").path("hits");
+                if (hits.isEmpty()) {
+                    slice.done = true;
+                    break;
+                }
+                job.throttle().acquire(hits.size());
+                write(job, slice, hits, writer);
+                slice.done = hits.size() < pageSize;
+            }
+        } catch (IOException e) {
+            job.fail(e);
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+            throw new CompletionException(new InterruptedIOException("Reindex interrupted"));
+        }
+    }
+
+    private void write(ReindexJob job, ReindexJob.Slice slice, JsonNode hits, BulkIndexer writer) throws IOException {
+        String dest = job.getSpec().dest();
+        int rejected = 0;
+        List<CompletableFuture<JsonNode>> writes = new ArrayList<>(hits.size());
+        for (JsonNode hit : hits) {
+            String id = hit.path("_id").asText();
+            ObjectNode document;
+            try {
+                document = job.transform().apply((ObjectNode) hit.path("_source"));
+            } catch (RuntimeException e) {
+                rejected++;
+                job.error(id + ": " + e.getMessage());
+                continue;
+            }
+            if (document != null) {
+                writes.add(writer.index(dest, id, document.toString()));
+            }
+        }
+        writer.flush();
+        int failed = 0;
+        for (CompletableFuture<JsonNode> result : writes) {
+            try {
+                result.join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof BulkItemException item)) {
+                    // the _bulk request failed, or ES kept answering 429: stop at the last checkpoint
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+                failed++;
+                job.error(item.getMessage());
+            }
+        }
+        copied.add(writes.size() - failed);
+        slice.checkpoint(hits.get(hits.size() - 1).path("sort"), writes.size() - failed, rejected + failed);
+    }
+
+    private JsonNode search(ReindexJob job, ReindexJob.Slice slice) throws IOException {
+        ObjectNode body = mapper.createObjectNode()
+            .put("size", pageSize)
+            .put("track_total_hits", false);
+        if (job.getSpec().query() != null) {
+            body.set("query", job.getSpec().query());
+        }
+        body.putObject("pit").put("id", job.pitId()).put("keep_alive", keepAlive);
+        if (job.slices().size() > 1) {
+            body.putObject("slice").put("id", slice.id).put("max", job.slices().size());
+        }
+        body.putArray("sort").addObject().put("_shard_doc", "asc");
+        if (slice.searchAfter != null) {
+            body.set("search_after", slice.searchAfter);
+        }
+        Request req = new Request("POST", "/_search");
+        req.addParameter("filter_path", FILTER_PATH);
+        req.setJsonEntity(body.toString());
+        try (InputStream in = es.performRequest(req).getEntity().getContent()) {
+            return mapper.readTree(in);
+        }
+    }
+
+    private Function<ObjectNode, ObjectNode> transform(ReindexJob.Spec spec) {
+        Function<ObjectNode, ObjectNode> chain = Function.identity();
+        for (String name : spec.transforms() == null ? List.<String>of() : spec.transforms()) {
+            chain = chain.andThen(switch (name) {
+                case "none" -> Function.identity();
+                case "validate" -> validate(spec.schema() != null ? spec.schema() : spec.source());
+                default -> throw new IllegalArgumentException("Unknown transform: " + name + " (available: none, validate)");
+            });
+        }
+        return chain;
+    }
+
+    // Documents that do not match the schema are skipped and reported as failed
+    private Function<ObjectNode, ObjectNode> validate(String schema) {
+        if (schemas.definition(schema) == null) {
+            throw new IllegalArgumentException("Unknown schema: " + schema + " (available: " + schemas.names() + ")");
+        }
+        return document -> {
+            schemas.validate(schema, document);
+            return document;
+        };
+    }
+
+    private long count(ReindexJob.Spec spec) throws IOException {
+        Request req = new Request("POST", "/" + spec.source() + "/_count");
+        if (spec.query() != null) {
+            req.setJsonEntity(mapper.createObjectNode().set("query", spec.query()).toString());
+        }
+        try (InputStream in = es.performRequest(req).getEntity().getContent()) {
+            return mapper.readTree(in).path("count").asLong();
+        }
+    }
+
+    private String openPit(String indexName) throws IOException {
+        Request req = new Request("POST", "/" + indexName + "/_pit");
+        req.addParameter("keep_alive", keepAlive);
+        try (InputStream in = es.performRequest(req).getEntity().getContent()) {
+            return mapper.readTree(in).path("id").asText();
+        }
+    }
+
+    private boolean pitAlive(String pitId) throws IOException {
+        Request req = new Request("POST", "/_search");
+        ObjectNode body = mapper.createObjectNode().put("size", 0).put("track_total_hits", false);
+        body.putObject("pit").put("id", pitId).put("keep_alive", keepAlive);
+        req.setJsonEntity(body.toString());
+        try {
+            es.performRequest(req);
+            return true;
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == NOT_FOUND) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private void closePit(String pitId) {
+        Request req = new Request("DELETE", "/_pit");
+        req.setJsonEntity(mapper.createObjectNode().put("id", pitId).toString());
+        try {
+            es.performRequest(req);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not close point in time of reindex job", e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Response shape of a template search, declared in es-templates/<schema>/projections.yml:
+ * the _source includes sent with the query, the fields a caller may ask for instead,
+ * and the filter_path that drops response metadata nobody reads (_shards, _index,
+ * _score, ...). Both end up in the request body and endpoint, so cached results and
+ * coalesced reads are kept apart per projection.
+ */
+public record ResponseProjection(List<String> source, Set<String> allow, String filterPath) {
+    public static final ResponseProjection NONE = new ResponseProjection(List.of(), Set.of(), null);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** filter_path of hit-returning searches that declare source fields but no filterPath. */
+    public static final String HITS_FILTER_PATH =
+        "took,timed_out,hits.total,hits.max_score,hits.hits._id,hits.hits._source,hits.hits.sort,aggregations";
+
+    /** This projection with its _source narrowed to the requested fields; null keeps the default. */
+    public ResponseProjection withFields(Collection<String> fields) {
+        if (fields == null) {
+            return this;
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field must be requested");
+        }
+        Set<String> requested = new LinkedHashSet<>(fields);
+        for (String field : requested) {
+            if (!allow.contains(field)) {
+                throw new IllegalArgumentException("Field not allowed: " + field + " (allowed: " + allow + ")");
+            }
+        }
+        return new ResponseProjection(List.copyOf(requested), allow, filterPath);
+    }
+
+    /**
+     * Adds the _source includes to a rendered query, unless the template sets a top-level
+     * _source itself. A body that is not a JSON object is sent as rendered, for Elasticsearch
+     * to reject.
+     */
+    public String body(String query) {
+        if (source.isEmpty()) {
+            return query;
+        }
+        JsonNode parsed;
+        try {
+            parsed = MAPPER.readTree(query);
+        } catch (JsonProcessingException e) {
+            return query;
+        }
+        if (!(parsed instanceof ObjectNode object) || object.has("_source")) {
+            return query;
+        }
+        ObjectNode body = MAPPER.createObjectNode();
+        ArrayNode includes = body.putArray("_source");
+        source.forEach(includes::add);
+        body.setAll(object);
+        return body.toString();
+    }
+
+    public String endpoint(String endpoint) {
+        return filterPath == null ? endpoint : endpoint + "?filter_path=" + filterPath;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Walks a _search response with a streaming parser and hands hits.hits to the
+ * caller in chunks, so at most one chunk of hits is held as a tree at a time.
+ * Everything else (took, hits.total, aggregations, ...) is collected into the
+ * returned summary, with hits.returned counting the hits that were streamed.
+ */
+public final class SearchHitReader {
+    private SearchHitReader() {
+    }
+
+    public static ObjectNode read(ObjectMapper mapper, InputStream in, int chunkSize,
+                                  Consumer<ArrayNode> onChunk) throws IOException {
+        ObjectNode summary = mapper.createObjectNode();
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a search response object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("hits".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    readHits(mapper, parser, summary.putObject("hits"), Math.max(1, chunkSize), onChunk);
+                } else {
+                    summary.set(field, mapper.readTree(parser));
+                }
+            }
+        }
+        return summary;
+    }
+
+    private static void readHits(ObjectMapper mapper, JsonParser parser, ObjectNode hits, int chunkSize,
+                                 Consumer<ArrayNode> onChunk) throws IOException {
+        long returned = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (!"hits".equals(field) || parser.currentToken() != JsonToken.START_ARRAY) {
+                hits.set(field, mapper.readTree(parser));
+                continue;
+            }
+            ArrayNode chunk = mapper.createArrayNode();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                chunk.add((JsonNode) mapper.readTree(parser));
+                returned++;
+                if (chunk.size() == chunkSize) {
+                    onChunk.accept(chunk);
+                    chunk = mapper.createArrayNode();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                onChunk.accept(chunk);
+            }
+        }
+        hits.put("returned", returned);
+    }
+}
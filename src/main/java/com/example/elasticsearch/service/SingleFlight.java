@@ -0,0 +1,75 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent reads: while a request for a given method, index, endpoint
+ * and body is in flight, further callers share its result instead of sending their own.
+ * Each caller gets its own dependent future, so cancelling, completing or timing out one
+ * leaves the shared request and every other caller untouched.
+ * The entry is removed as soon as the response arrives, so a caller never receives a result
+ * that completed before it asked, and a write to the index detaches in-flight reads so that
+ * callers arriving after the write start a fresh request.
+ */
+@Component
+public class SingleFlight {
+    private final boolean enabled;
+    private final Map<Key, CompletableFuture<JsonNode>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(@Value("${app.coalesce.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public CompletableFuture<JsonNode> execute(String method, String index, String endpoint, String body,
+                                               Supplier<CompletableFuture<JsonNode>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        Key key = new Key(method, index, endpoint, body);
+        CompletableFuture<JsonNode> mine = new CompletableFuture<>();
+        CompletableFuture<JsonNode> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy();
+        }
+        try {
+            call.get().whenComplete((result, error) -> {
+                inFlight.remove(key, mine);
+                if (error != null) {
+                    mine.completeExceptionally(error);
+                } else {
+                    mine.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine.copy();
+    }
+
+    public void invalidate(String index) {
+        if (enabled && !inFlight.isEmpty()) {
+            inFlight.keySet().removeIf(key -> key.index().equals(index));
+        }
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private record Key(String method, String index, String endpoint, String body) {}
+}
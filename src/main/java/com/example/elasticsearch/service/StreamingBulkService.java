@@ -0,0 +1,288 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Splits an NDJSON bulk upload into size-bounded _bulk requests while it is still being
+ * read. At most {@code max-concurrent} chunks are in flight and the reader blocks until
+ * one completes, so heap use is bounded by chunk size times parallelism rather than by
+ * the size of the upload. One summary line is written per chunk as it completes.
+ * Derived fields are set on each document as it is read. With schema validation on, each
+ * chunk is validated before it is sent: invalid documents are dropped from the chunk and
+ * reported on a line of their own. A malformed line ends the upload: chunks already sent
+ * are waited for, the unsent remainder is dropped, and the final line carries the error
+ * and the line number.
+ */
+@Service
+public class StreamingBulkService {
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+
+    private final RestClient es;
+    private final QueryResultCache cache;
+    private final SingleFlight flights;
+    private final DocumentValidator validator;
+    private final DocumentEnricher enricher;
+    private final int chunkBytes;
+    private final int maxConcurrent;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private record Pending(byte[] action, byte[] source, DocumentValidator.BulkDocument document) {}
+
+    public StreamingBulkService(RestClient es, QueryResultCache cache, SingleFlight flights, DocumentValidator validator,
+                                DocumentEnricher enricher,
+                                @Value("${app.bulk.stream.chunk-bytes:5242880}") int chunkBytes,
+                                @Value("${app.bulk.stream.max-concurrent:4}") int maxConcurrent) {
+        this.es = es;
+        this.cache = cache;
+        this.flights = flights;
+        this.validator = validator != null && validator.isEnabled() ? validator : null;
+        this.enricher = enricher;
+        this.chunkBytes = chunkBytes;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public void stream(String indexName, InputStream ndjson, OutputStream summary) throws IOException {
+        Semaphore inFlight = new Semaphore(maxConcurrent);
+        BlockingQueue<ObjectNode> completed = new LinkedBlockingQueue<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+        List<Pending> chunk = new ArrayList<>();
+        int chunkSize = 0;
+        int chunks = 0;
+        long actions = 0;
+        long rejected = 0;
+        int lineNumber = 0;
+        int actionLineNumber = 0;
+        String error = null;
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                actionLineNumber = lineNumber;
+                JsonNode actionLine = parseAction(line);
+                byte[] action = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                byte[] source = null;
+                DocumentValidator.BulkDocument document = null;
+                if (!actionLine.has("delete")) {
+                    String sourceLine = reader.readLine();
+                    lineNumber++;
+                    if (sourceLine == null) {
+                        throw new IllegalArgumentException("Bulk action without source line: " + line);
+                    }
+                    if (enricher != null) {
+                        String name = actionLine.fieldNames().next();
+                        sourceLine = enricher.enrichBulkSource(name, actionLine.get(name).path("_index").asText(indexName), sourceLine);
+                    }
+                    source = (sourceLine + "\n").getBytes(StandardCharsets.UTF_8);
+                    if (validator != null) {
+                        document = document(lineNumber, indexName, actionLine, sourceLine);
+                    }
+                }
+                int size = action.length + (source == null ? 0 : source.length);
+                if (!chunk.isEmpty() && chunkSize + size > chunkBytes) {
+                    int sent = flush(indexName, chunk, chunks + 1, inFlight, completed, summary);
+                    chunks += sent > 0 ? 1 : 0;
+                    rejected += chunk.size() - sent;
+                    chunk.clear();
+                    chunkSize = 0;
+                    write(completed, summary);
+                }
+                chunk.add(new Pending(action, source, document));
+                chunkSize += size;
+                actions++;
+            }
+            if (!chunk.isEmpty()) {
+                int sent = flush(indexName, chunk, chunks + 1, inFlight, completed, summary);
+                chunks += sent > 0 ? 1 : 0;
+                rejected += chunk.size() - sent;
+                chunk.clear();
+            }
+        } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+        } catch (JsonProcessingException e) {
+            error = "Malformed bulk action line: " + e.getOriginalMessage();
+        }
+
+        // wait for every outstanding chunk before writing the final summary
+        acquire(inFlight, maxConcurrent);
+        write(completed, summary);
+        // the actions read since the last chunk was sent are not applied
+        ObjectNode done = mapper.createObjectNode().put("done", true).put("chunks", chunks).put("actions", actions - chunk.size());
+        if (validator != null) {
+            done.put("rejected", rejected);
+        }
+        if (error != null) {
+            done.put("error", error).put("line", actionLineNumber);
+        }
+        summary.write((done + "\n").getBytes(StandardCharsets.UTF_8));
+        summary.flush();
+    }
+
+    // Validates the chunk, reports and drops rejected documents, and sends the rest; returns the actions sent
+    private int flush(String indexName, List<Pending> chunk, int chunkNumber, Semaphore inFlight,
+                      BlockingQueue<ObjectNode> completed, OutputStream summary) throws IOException {
+        Set<Integer> rejectedLines = new HashSet<>();
+        if (validator != null) {
+            List<DocumentValidator.BulkDocument> documents = new ArrayList<>();
+            for (Pending pending : chunk) {
+                if (pending.document() != null) {
+                    documents.add(pending.document());
+                }
+            }
+            for (DocumentValidationException.Rejection rejection : validator.validateAll(documents)) {
+                rejectedLines.add(rejection.line());
+                ObjectNode report = mapper.createObjectNode().put("rejected", true);
+                report.setAll((ObjectNode) mapper.valueToTree(rejection));
+                summary.write((report + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.min(chunkBytes, 1 << 20));
+        int sent = 0;
+        for (Pending pending : chunk) {
+            if (pending.document() != null && rejectedLines.contains(pending.document().line())) {
+                continue;
+            }
+            body.write(pending.action());
+            if (pending.source() != null) {
+                body.write(pending.source());
+            }
+            sent++;
+        }
+        if (sent > 0) {
+            send(indexName, chunkNumber, sent, rejectedLines.size(), body.toByteArray(), inFlight, completed);
+        }
+        return sent;
+    }
+
+    // Only delete actions come without a source line
+    private JsonNode parseAction(String actionLine) throws IOException {
+        JsonNode action = mapper.readTree(actionLine);
+        if (action == null || !action.isObject() || action.size() != 1) {
+            throw new IllegalArgumentException("Malformed bulk action line: " + actionLine);
+        }
+        return action;
+    }
+
+    private static DocumentValidator.BulkDocument document(int line, String indexName, JsonNode action, String source) {
+        String name = action.fieldNames().next();
+        JsonNode meta = action.get(name);
+        return new DocumentValidator.BulkDocument(line, name, meta.path("_index").asText(indexName),
+            meta.path("_id").asText(null), source);
+    }
+
+    private void send(String indexName, int chunkNumber, int chunkActions, int chunkRejected, byte[] body,
+                      Semaphore inFlight, BlockingQueue<ObjectNode> completed) throws IOException {
+        acquire(inFlight, 1);
+        long start = System.nanoTime();
+        Request req = new Request("POST", "/" + indexName + "/_bulk");
+        req.setEntity(new ByteArrayEntity(body, NDJSON));
+        es.performRequestAsync(req, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                ObjectNode result = summary(chunkNumber, chunkActions, chunkRejected, body.length, start);
+                try {
+                    JsonNode json = mapper.readTree(response.getEntity().getContent());
+                    int failed = 0;
+                    for (JsonNode item : json.path("items")) {
+                        if (item.elements().next().has("error")) {
+                            failed++;
+                        }
+                    }
+                    result.put("status", response.getStatusLine().getStatusCode())
+                        .put("took", json.path("took").asLong())
+                        .put("errors", json.path("errors").asBoolean())
+                        .put("failedItems", failed);
+                } catch (IOException | RuntimeException e) {
+                    result.put("errors", true).put("error", e.getMessage());
+                }
+                finish(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                ObjectNode result = summary(chunkNumber, chunkActions, chunkRejected, body.length, start)
+                    .put("errors", true)
+                    .put("error", exception.getMessage());
+                if (exception instanceof ResponseException re) {
+                    result.put("status", re.getResponse().getStatusLine().getStatusCode());
+                }
+                finish(result);
+            }
+
+            private void finish(ObjectNode result) {
+                if (cache != null) {
+                    cache.invalidate(indexName);
+                }
+                if (flights != null) {
+                    flights.invalidate(indexName);
+                }
+                completed.add(result);
+                inFlight.release();
+            }
+        });
+    }
+
+    private ObjectNode summary(int chunkNumber, int chunkActions, int chunkRejected, int bytes, long startNanos) {
+        ObjectNode summary = mapper.createObjectNode()
+            .put("chunk", chunkNumber)
+            .put("actions", chunkActions);
+        if (validator != null) {
+            summary.put("rejected", chunkRejected);
+        }
+        return summary
+            .put("bytes", bytes)
+            .put("latencyMs", (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    private void write(BlockingQueue<ObjectNode> completed, OutputStream summary) throws IOException {
+        ObjectNode result;
+        boolean wrote = false;
+        while ((result = completed.poll()) != null) {
+            summary.write((result + "\n").getBytes(StandardCharsets.UTF_8));
+            wrote = true;
+        }
+        if (wrote) {
+            summary.flush();
+        }
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) throws InterruptedIOException {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for bulk chunks");
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.elasticsearch.service;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Hands an Elasticsearch response to the caller as soon as its headers arrive and feeds the
+ * body to it as it is read. RestClient's default consumer buffers the whole body on the heap
+ * before the request completes; here socket input is suspended while {@code bufferBytes} are
+ * unread, so memory stays bounded however large the response is, and parsing starts with the
+ * first bytes. Error bodies are small and buffered instead, so RestClient can still retry another
+ * node and build its exception message from them; the caller gets the final response whatever
+ * its status. Closing the body before its end cancels the request.
+ */
+final class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+    private static final int READ_SIZE = 8192;
+
+    private final CompletableFuture<HttpResponse> head;
+    private final Body body;
+    private final ByteBuffer chunk = ByteBuffer.allocate(READ_SIZE);
+    private HttpResponse response;
+    private HttpResponse streamed;
+    private ByteArrayOutputStream error;
+    private HttpEntity errorEntity;
+
+    private StreamingResponseConsumer(CompletableFuture<HttpResponse> head, Body body) {
+        this.head = head;
+        this.body = body;
+    }
+
+    /** Sends the request; the future completes with the status line and headers, the body streams from its entity. */
+    static CompletableFuture<HttpResponse> send(RestClient es, Request request, int bufferBytes) {
+        CompletableFuture<HttpResponse> head = new CompletableFuture<>();
+        Body body = new Body(bufferBytes);
+        RequestOptions.Builder options = request.getOptions().toBuilder();
+        options.setHttpAsyncResponseConsumerFactory(() -> new StreamingResponseConsumer(head, body));
+        request.setOptions(options);
+        Cancellable cancellable = es.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                complete(head, response);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                if (exception instanceof ResponseException e) {
+                    complete(head, e.getResponse());
+                } else {
+                    head.completeExceptionally(exception);
+                    body.fail(exception instanceof IOException io ? io : new IOException(exception));
+                }
+            }
+        });
+        body.cancellable = cancellable;
+        return head;
+    }
+
+    // A buffered error response; a streamed one has completed head already
+    private static void complete(CompletableFuture<HttpResponse> head, Response response) {
+        if (!head.isDone()) {
+            HttpResponse copy = new BasicHttpResponse(response.getStatusLine());
+            copy.setHeaders(response.getHeaders());
+            copy.setEntity(response.getEntity());
+            head.complete(copy);
+        }
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+        if (response.getStatusLine().getStatusCode() >= 300) {
+            error = new ByteArrayOutputStream();
+            return;
+        }
+        streamed = new BasicHttpResponse(response.getStatusLine());
+        streamed.setHeaders(response.getAllHeaders());
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        if (streamed == null) {
+            errorEntity = entity;
+            return;
+        }
+        HttpEntity content = new InputStreamEntity(body, entity.getContentLength(), contentType);
+        Header encoding = entity.getContentEncoding();
+        if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+            content = new GzipDecompressingEntity(content);
+            streamed.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            streamed.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        }
+        streamed.setEntity(content);
+        head.complete(streamed);
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+        int read;
+        while ((read = decoder.read(chunk)) > 0) {
+            if (streamed != null) {
+                body.write(Arrays.copyOf(chunk.array(), read), ioControl);
+            } else {
+                error.write(chunk.array(), 0, read);
+            }
+            chunk.clear();
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        if (streamed != null) {
+            body.finish();
+            head.complete(streamed);
+            // the bytes went to the caller
+            response.setEntity(null);
+        } else if (errorEntity != null) {
+            ByteArrayEntity buffered = new ByteArrayEntity(error.toByteArray());
+            buffered.setContentType(errorEntity.getContentType());
+            buffered.setContentEncoding(errorEntity.getContentEncoding());
+            response.setEntity(buffered);
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        Exception failure = getException();
+        if (failure != null && streamed != null) {
+            body.fail(failure instanceof IOException io ? io : new IOException(failure));
+        }
+    }
+
+    /** The unread part of the body: a bounded queue of chunks between the I/O reactor and the reader. */
+    private static final class Body extends InputStream {
+        private final int bufferBytes;
+        private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+        private byte[] current;
+        private int position;
+        private int buffered;
+        private boolean finished;
+        private boolean closed;
+        private IOException failure;
+        private IOControl suspended;
+        volatile Cancellable cancellable;
+
+        Body(int bufferBytes) {
+            this.bufferBytes = bufferBytes;
+        }
+
+        synchronized void write(byte[] bytes, IOControl ioControl) {
+            if (closed) {
+                return;
+            }
+            chunks.add(bytes);
+            buffered += bytes.length;
+            if (buffered >= bufferBytes) {
+                ioControl.suspendInput();
+                suspended = ioControl;
+            }
+            notifyAll();
+        }
+
+        synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        synchronized void fail(IOException cause) {
+            if (!finished) {
+                failure = cause;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (current == null) {
+                if (closed) {
+                    throw new IOException("Response body closed");
+                }
+                current = chunks.poll();
+                position = 0;
+                if (current != null) {
+                    break;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (finished) {
+                    return -1;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted reading an Elasticsearch response");
+                }
+            }
+            int n = Math.min(length, current.length - position);
+            System.arraycopy(current, position, bytes, offset, n);
+            position += n;
+            if (position == current.length) {
+                buffered -= current.length;
+                current = null;
+                if (suspended != null && buffered <= bufferBytes / 2) {
+                    suspended.requestInput();
+                    suspended = null;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return current == null ? 0 : current.length - position;
+        }
+
+        @Override
+        public void close() {
+            boolean abandon;
+            synchronized (this) {
+                abandon = !finished && failure == null && !closed;
+                closed = true;
+                chunks.clear();
+                current = null;
+                notifyAll();
+            }
+            Cancellable request = cancellable;
+            if (abandon && request != null) {
+                request.cancel();
+            }
+        }
+    }
+}
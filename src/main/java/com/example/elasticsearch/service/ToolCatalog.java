@@ -0,0 +1,227 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.model.ToolManifest;
+import com.example.elasticsearch.query.QueryParams;
+import com.example.elasticsearch.query.TemplateArguments;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.theokanning.openai.completion.chat.ChatFunctionDynamic;
+import com.theokanning.openai.completion.chat.ChatFunctionProperty;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * MCP tools offered to the LLM, built once at startup from the mcp-tools/*.yml manifests.
+ * Each tool maps to an es-templates file. Its parameter schema is derived from the
+ * QueryParams record, or from the manifest's parameter list, plus the property
+ * definitions in SchemaRegistry, so the model sees typed, required arguments.
+ */
+@Component
+public class ToolCatalog {
+    private static final String DEFAULT_LOCATION = "classpath*:mcp-tools/*.yml";
+    private static final String PARAMS_PACKAGE = "com.example.elasticsearch.query.";
+
+    public record Tool(String name, String description, String schema, String template, boolean aggregation,
+                       List<String> parameters, Class<? extends QueryParams> paramsType,
+                       ChatFunctionDynamic function, JsonNode inputSchema) {
+
+        /** Binds LLM arguments to template parameters; every declared parameter is required. */
+        public QueryParams bind(JsonNode args, ObjectMapper mapper) {
+            ObjectNode values = mapper.createObjectNode();
+            for (String parameter : parameters) {
+                JsonNode value = args == null ? null : args.get(parameter);
+                if (value == null || value.isNull()) {
+                    throw new IllegalArgumentException("Missing required parameter: " + parameter);
+                }
+                values.set(parameter, value);
+            }
+            if (paramsType != null) {
+                return mapper.convertValue(values, paramsType);
+            }
+            return new TemplateArguments(mapper.convertValue(values, new TypeReference<Map<String, Object>>() {}));
+        }
+    }
+
+    private final Map<String, Tool> tools;
+    private final List<ChatFunctionDynamic> functions;
+    private final String fingerprint;
+
+    public ToolCatalog(@Value("${app.mcp.tools-location:" + DEFAULT_LOCATION + "}") String location,
+                       ResourceLoader loader, SchemaRegistry schemas, QueryTemplateService templates) {
+        ResourcePatternResolver resolver = ResourcePatternUtils.getResourcePatternResolver(loader);
+        Yaml yaml = new Yaml(new Constructor(ToolManifest.class));
+        Map<String, Tool> byName = new LinkedHashMap<>();
+        try {
+            Resource[] manifests = resolver.getResources(location);
+            // deterministic order, so the function list (and its fingerprint) is stable across restarts
+            Arrays.sort(manifests, Comparator.comparing(Resource::getFilename));
+            for (Resource res : manifests) {
+                ToolManifest manifest;
+                try (Reader reader = new InputStreamReader(res.getInputStream(), StandardCharsets.UTF_8)) {
+                    manifest = yaml.load(reader);
+                }
+                for (ToolManifest.Tool entry : manifest.getTools()) {
+                    Tool tool = build(manifest.getSchema(), entry, schemas, templates);
+                    if (byName.putIfAbsent(tool.name(), tool) != null) {
+                        throw new IllegalStateException("Duplicate MCP tool: " + tool.name());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.tools = byName;
+        this.functions = byName.values().stream().map(Tool::function).toList();
+        this.fingerprint = byName.values().stream()
+            .map(t -> t.name() + ':' + t.description() + ':' + t.parameters())
+            .collect(Collectors.joining("|"));
+    }
+
+    public Tool tool(String name) {
+        return tools.get(name);
+    }
+
+    public Collection<Tool> tools() {
+        return tools.values();
+    }
+
+    public List<ChatFunctionDynamic> functions() {
+        return functions;
+    }
+
+    /** Identifies the offered tool set; changes whenever a tool, description or parameter does. */
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    private static Tool build(String schema, ToolManifest.Tool entry, SchemaRegistry schemas,
+                              QueryTemplateService templates) {
+        if (!templates.exists(schema, entry.getTemplate())) {
+            throw new IllegalStateException("MCP tool " + entry.getName() + " refers to missing template "
+                + schema + "/" + entry.getTemplate());
+        }
+        Class<? extends QueryParams> paramsType = paramsType(entry);
+        Map<String, Class<?>> parameters = new LinkedHashMap<>();
+        if (paramsType != null) {
+            for (RecordComponent component : paramsType.getRecordComponents()) {
+                parameters.put(component.getName(), component.getType());
+            }
+        } else if (entry.getParameters() != null) {
+            entry.getParameters().forEach(name -> parameters.put(name, null));
+        }
+
+        ChatFunctionDynamic.Builder function = ChatFunctionDynamic.builder()
+            .name(entry.getName())
+            .description(entry.getDescription());
+        ObjectNode inputSchema = JsonNodeFactory.instance.objectNode().put("type", "object");
+        ObjectNode properties = inputSchema.putObject("properties");
+        parameters.forEach((name, javaType) -> {
+            ObjectNode parameter = parameterSchema(javaType, schemas.property(schema, name));
+            properties.set(name, parameter);
+            function.addProperty(property(name, parameter));
+        });
+        parameters.keySet().forEach(inputSchema.putArray("required")::add);
+        boolean aggregation = entry.getQueryType() != null && entry.getQueryType().toLowerCase().startsWith("agg");
+        return new Tool(entry.getName(), entry.getDescription(), schema, entry.getTemplate(), aggregation,
+            List.copyOf(parameters.keySet()), paramsType, function.build(), inputSchema);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends QueryParams> paramsType(ToolManifest.Tool entry) {
+        if (entry.getParams() == null) {
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName(PARAMS_PACKAGE + entry.getParams());
+            if (!type.isRecord() || !QueryParams.class.isAssignableFrom(type)) {
+                throw new IllegalStateException(type.getName() + " must be a QueryParams record");
+            }
+            return (Class<? extends QueryParams>) type;
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unknown params record for MCP tool " + entry.getName() + ": "
+                + entry.getParams(), e);
+        }
+    }
+
+    // JSON schema of one parameter: the record component's type, described by the schema property
+    private static ObjectNode parameterSchema(Class<?> javaType, JsonNode definition) {
+        String type = javaType != null ? jsonType(javaType)
+            : definition != null ? definition.path("type").asText("string") : "string";
+        ObjectNode parameter = JsonNodeFactory.instance.objectNode().put("type", type);
+        if ("array".equals(type)) {
+            String itemType = definition == null ? "string" : definition.path("items").path("type").asText("string");
+            parameter.putObject("items").put("type", itemType);
+        }
+        if (definition != null && definition.hasNonNull("description")) {
+            parameter.put("description", definition.get("description").asText());
+        }
+        if (definition != null && definition.path("enum").isArray()) {
+            parameter.set("enum", definition.get("enum"));
+        }
+        return parameter;
+    }
+
+    private static ChatFunctionProperty property(String name, JsonNode parameter) {
+        ChatFunctionProperty.ChatFunctionPropertyBuilder property = ChatFunctionProperty.builder()
+            .name(name)
+            .type(parameter.get("type").asText())
+            .required(true);
+        if (parameter.has("items")) {
+            property.items(ChatFunctionProperty.builder().name(name).type(parameter.get("items").get("type").asText()).build());
+        }
+        if (parameter.has("description")) {
+            property.description(parameter.get("description").asText());
+        }
+        if (parameter.has("enum")) {
+            Set<String> values = new LinkedHashSet<>();
+            parameter.get("enum").forEach(value -> values.add(value.asText()));
+            property.enumValues(values);
+        }
+        return property.build();
+    }
+
+    private static String jsonType(Class<?> javaType) {
+        if (javaType == String.class) {
+            return "string";
+        }
+        if (javaType == Integer.class || javaType == int.class || javaType == Long.class || javaType == long.class) {
+            return "integer";
+        }
+        if (Number.class.isAssignableFrom(javaType) || javaType == double.class || javaType == float.class) {
+            return "number";
+        }
+        if (javaType == Boolean.class || javaType == boolean.class) {
+            return "boolean";
+        }
+        if (javaType.isArray() || Collection.class.isAssignableFrom(javaType)) {
+            return "array";
+        }
+        return "object";
+    }
+}
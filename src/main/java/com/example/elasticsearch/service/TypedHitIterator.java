@@ -0,0 +1,155 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes hits.hits[]._source of a _search response straight into POJOs with a
+ * streaming parser: no JsonNode tree is built for the response or for any hit, and
+ * each source is only decoded when the caller asks for the next one. Hit metadata
+ * other than hits.total is skipped; hits without a _source are left out. The
+ * underlying stream is released on close, or once the last hit has been read.
+ */
+public class TypedHitIterator<T> implements Iterator<T>, Closeable {
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private long total = -1;
+    private T next;
+    private boolean done;
+
+    public TypedHitIterator(ObjectMapper mapper, InputStream in, Class<T> type) throws IOException {
+        this.parser = mapper.getFactory().createParser(in);
+        this.reader = mapper.readerFor(type);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a search response object");
+            }
+            done = !seekHits();
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+        if (done) {
+            parser.close();
+        }
+    }
+
+    /** hits.total.value, or -1 when the response did not report it ahead of the hits. */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = advance();
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T value = next;
+        next = null;
+        return value;
+    }
+
+    /** Sequential stream over the remaining sources; closing it closes this iterator. */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        try {
+            parser.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Positions the parser inside the hits.hits array; false when the response has none
+    private boolean seekHits() throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && "hits".equals(field)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("hits".equals(name) && value == JsonToken.START_ARRAY) {
+                        return true;
+                    }
+                    if ("total".equals(name)) {
+                        readTotal(value);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                return false;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    // total is {"value": n, "relation": ...} since ES 7, a bare number before that
+    private void readTotal(JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            total = parser.getLongValue();
+            return;
+        }
+        while (value == JsonToken.START_OBJECT && parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if ("value".equals(name)) {
+                total = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private T advance() throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            T source = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("_source".equals(name) && value == JsonToken.START_OBJECT) {
+                    source = reader.readValue(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (source != null) {
+                return source;
+            }
+        }
+        // end of hits.hits: the rest of the response (aggregations, ...) is not needed
+        close();
+        return null;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.query.UserSearchParams;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves users by userId with a realtime _mget on the user index when userId is the
+ * document _id ({@code app.documents.id-fields=user=userId}, see {@link DocumentIdStrategy}),
+ * and with a userId query otherwise. Results keep the _search response shape
+ * ({@code hits.total}, {@code hits.hits[]._source}) so existing clients are unaffected.
+ * Ids not found by _id fall back to a userId query while documents indexed with generated
+ * ids still exist; turn this off with {@code app.users.search-fallback=false} once reindexed.
+ */
+@Service
+public class UserLookupService {
+    private static final String INDEX = "user";
+    /** Full user documents: by-id lookups are not narrowed by the search template's default projection. */
+    public static final List<String> USER_FIELDS = List.of("userId", "userName", "courses", "grades");
+
+    private static final String KEY_FIELD = "userId";
+
+    private final ElasticsearchService es;
+    private final boolean byDocumentId;
+    private final boolean searchFallback;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public UserLookupService(ElasticsearchService es, DocumentIdStrategy ids,
+                             @Value("${app.users.search-fallback:true}") boolean searchFallback) {
+        this.es = es;
+        this.byDocumentId = KEY_FIELD.equals(ids.keyField(INDEX));
+        this.searchFallback = searchFallback;
+    }
+
+    public CompletableFuture<JsonNode> byId(Long userId) {
+        if (!byDocumentId) {
+            // generated ids: an _mget could never find the user, so skip that round trip
+            return es.searchAsync(INDEX, "simple-search.json", new UserSearchParams(userId), USER_FIELDS);
+        }
+        return es.mgetAsync(INDEX, List.of(String.valueOf(userId))).thenCompose(docs -> {
+            ObjectNode result = toHits(docs);
+            if (!searchFallback || result.path("hits").path("total").path("value").asInt() > 0) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return es.searchAsync(INDEX, "simple-search.json", new UserSearchParams(userId), USER_FIELDS);
+        });
+    }
+
+    public CompletableFuture<JsonNode> byIds(List<Long> userIds) {
+        Set<String> ids = new LinkedHashSet<>();
+        userIds.forEach(id -> ids.add(String.valueOf(id)));
+        if (!byDocumentId) {
+            ObjectNode none = mapper.createObjectNode();
+            ArrayNode docs = none.putArray("docs");
+            ids.forEach(id -> docs.addObject().put("_id", id).put("found", false));
+            return search(toHits(none));
+        }
+        return es.mgetAsync(INDEX, List.copyOf(ids)).thenCompose(docs -> {
+            ObjectNode result = toHits(docs);
+            if (!searchFallback || result.path("missing").isEmpty()) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return search(result);
+        });
+    }
+
+    // Resolves the ids still missing from result with one userId terms query
+    private CompletableFuture<JsonNode> search(ObjectNode result) {
+        ArrayNode missing = (ArrayNode) result.get("missing");
+        ObjectNode query = mapper.createObjectNode().put("size", missing.size());
+        query.putObject("query").putObject("terms").set(KEY_FIELD, missing);
+        return es.executeRawQueryAsync(INDEX, "GET", "/_search", query.toString())
+            .thenApply(found -> merge(result, found));
+    }
+
+    // _mget docs -> {"hits": {"total": {...}, "hits": [...]}, "missing": [ids]}
+    private ObjectNode toHits(JsonNode mget) {
+        ObjectNode result = mapper.createObjectNode();
+        ObjectNode hits = result.putObject("hits");
+        ArrayNode hitList = mapper.createArrayNode();
+        ArrayNode missing = result.putArray("missing");
+        for (JsonNode doc : mget.path("docs")) {
+            if (doc.path("found").asBoolean()) {
+                ObjectNode hit = hitList.addObject();
+                hit.put("_index", doc.path("_index").asText()).put("_id", doc.path("_id").asText());
+                hit.set("_source", doc.path("_source"));
+            } else {
+                missing.add(doc.path("_id").asLong());
+            }
+        }
+        hits.putObject("total").put("value", hitList.size()).put("relation", "eq");
+        hits.set("hits", hitList);
+        return result;
+    }
+
+    private JsonNode merge(ObjectNode result, JsonNode search) {
+        ArrayNode hits = (ArrayNode) result.path("hits").path("hits");
+        Set<Long> resolved = new LinkedHashSet<>();
+        for (JsonNode hit : search.path("hits").path("hits")) {
+            hits.add(hit);
+            resolved.add(hit.path("_source").path(KEY_FIELD).asLong());
+        }
+        ((ObjectNode) result.path("hits").path("total")).put("value", hits.size());
+        ArrayNode stillMissing = mapper.createArrayNode();
+        for (JsonNode id : result.path("missing")) {
+            if (!resolved.contains(id.asLong())) {
+                stillMissing.add(id);
+            }
+        }
+        result.set("missing", stillMissing);
+        return result;
+    }
+}
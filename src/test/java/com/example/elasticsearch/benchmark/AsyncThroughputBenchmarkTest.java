@@ -0,0 +1,95 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.query.UserSearchParams;
+import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.QueryTemplateService;
+import com.example.elasticsearch.support.StubElasticsearchServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares blocking and async ElasticsearchService throughput against a slow stub
+ * cluster, with a fixed pool standing in for the servlet worker threads.
+ * Run with: mvn test -Dbenchmark=true -Dtest=AsyncThroughputBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+public class AsyncThroughputBenchmarkTest {
+    private static final int WORKER_THREADS = 50;
+    private static final int REQUESTS = 4000;
+    private static final Duration ES_LATENCY = Duration.ofMillis(50);
+    private static final String HIT = "{\"hits\":{\"total\":{\"value\":1},\"hits\":[{\"_source\":{\"userId\":1}}]}}";
+
+    @Test
+    void blockingVersusAsync() throws Exception {
+        try (StubElasticsearchServer stub = StubElasticsearchServer.start(ES_LATENCY, HIT);
+             RestClient client = RestClient.builder(stub.host())
+                 .setHttpClientConfigCallback(http -> http.setMaxConnTotal(REQUESTS).setMaxConnPerRoute(REQUESTS))
+                 .build()) {
+            ElasticsearchService svc = new ElasticsearchService(client,
+                new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper()),
+                null, null, null, null, null, null, null, false);
+
+            double blocking = blocking(svc);
+            double async = async(svc);
+
+            System.out.printf("blocking: %.0f req/s, async: %.0f req/s (%d worker threads, %d ms ES latency)%n",
+                blocking, async, WORKER_THREADS, ES_LATENCY.toMillis());
+            assertTrue(async > blocking, "async mode should not be bounded by the worker pool");
+        }
+    }
+
+    private double blocking(ElasticsearchService svc) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<JsonNode>> results = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                long userId = i;
+                results.add(workers.submit(() -> svc.search("user", "simple-search.json", new UserSearchParams(userId))));
+            }
+            for (Future<JsonNode> result : results) {
+                assertEquals(1, result.get().path("hits").path("total").path("value").asInt());
+            }
+            return REQUESTS / seconds(start);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private double async(ElasticsearchService svc) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<CompletableFuture<JsonNode>>> dispatched = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                long userId = i;
+                // a worker only dispatches the request and is free again, as with a deferred controller result
+                dispatched.add(workers.submit(() -> svc.searchAsync("user", "simple-search.json", new UserSearchParams(userId))));
+            }
+            for (Future<CompletableFuture<JsonNode>> result : dispatched) {
+                assertEquals(1, result.get().get().path("hits").path("total").path("value").asInt());
+            }
+            return REQUESTS / seconds(start);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000_000.0;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.schema.UserSchema;
+import com.example.elasticsearch.service.TypedHitIterator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JMH comparison of decoding a _search response into UserSchema objects: readTree of the
+ * whole response (what search() returns) plus treeToValue per hit, versus TypedHitIterator
+ * decoding each _source straight off the parser. Reports time and bytes allocated per
+ * response (GC profiler).
+ * Run with: mvn test -Dbenchmark=true -Dtest=HitDecodingBenchmarkTest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HitDecodingBenchmarkTest {
+    private static final String[] COURSES = {"Mathematics", "Physics", "Chemistry", "English", "History"};
+
+    @Param({"100", "10000"})
+    public int hits;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] response;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectNode root = mapper.createObjectNode().put("took", 12).put("timed_out", false);
+        ObjectNode hitsNode = root.putObject("hits");
+        hitsNode.putObject("total").put("value", hits).put("relation", "eq");
+        hitsNode.put("max_score", 1.0);
+        ArrayNode list = hitsNode.putArray("hits");
+        for (int i = 0; i < hits; i++) {
+            ObjectNode hit = list.addObject().put("_index", "user").put("_id", String.valueOf(i)).put("_score", 1.0);
+            ObjectNode source = hit.putObject("_source").put("userId", i).put("userName", "user-" + i);
+            ArrayNode courses = source.putArray("courses");
+            ArrayNode grades = source.putArray("grades");
+            for (int c = 0; c < 3; c++) {
+                String course = COURSES[(i + c) % COURSES.length];
+                courses.add(course);
+                grades.addObject().put("course", course).put("score", 50 + (i * 7 + c) % 50);
+            }
+        }
+        response = mapper.writeValueAsBytes(root);
+    }
+
+    @Benchmark
+    public void readTree(Blackhole blackhole) throws IOException {
+        JsonNode tree = mapper.readTree(new ByteArrayInputStream(response));
+        for (JsonNode hit : tree.path("hits").path("hits")) {
+            blackhole.consume(mapper.treeToValue(hit.get("_source"), UserSchema.class));
+        }
+    }
+
+    @Benchmark
+    public void typedStream(Blackhole blackhole) throws IOException {
+        TypedHitIterator<UserSchema> users = new TypedHitIterator<>(mapper, new ByteArrayInputStream(response), UserSchema.class);
+        while (users.hasNext()) {
+            blackhole.consume(users.next());
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+    void treeVersusStreamingDecode() throws Exception {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+            .include(HitDecodingBenchmarkTest.class.getName() + "\\.")
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(5)
+            .measurementTime(TimeValue.seconds(1))
+            .build()).run();
+
+        Map<String, RunResult> byName = results.stream().collect(Collectors.toMap(
+            r -> r.getParams().getBenchmark().replaceAll(".*\\.", "") + "/" + r.getParams().getParam("hits"), r -> r));
+        for (String size : List.of("100", "10000")) {
+            RunResult tree = byName.get("readTree/" + size);
+            RunResult typed = byName.get("typedStream/" + size);
+            System.out.printf("%s hits: readTree %.1f us, %.0f B/op; typedStream %.1f us, %.0f B/op%n", size,
+                tree.getPrimaryResult().getScore(), allocated(tree), typed.getPrimaryResult().getScore(), allocated(typed));
+            assertTrue(allocated(typed) < allocated(tree), "streaming decode should allocate less than a tree per response");
+            assertTrue(typed.getPrimaryResult().getScore() < tree.getPrimaryResult().getScore());
+        }
+    }
+
+    private static double allocated(RunResult result) {
+        return result.getSecondaryResults().entrySet().stream()
+            .filter(e -> e.getKey().endsWith("gc.alloc.rate.norm"))
+            .map(Map.Entry::getValue)
+            .mapToDouble(Result::getScore)
+            .findFirst()
+            .orElseThrow();
+    }
+}
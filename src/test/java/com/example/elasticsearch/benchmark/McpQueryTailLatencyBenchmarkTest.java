@@ -0,0 +1,106 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.controller.McpController;
+import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.IntentRouter;
+import com.example.elasticsearch.service.OpenAiLlmClient;
+import com.example.elasticsearch.service.QueryTemplateService;
+import com.example.elasticsearch.service.ToolCatalog;
+import com.example.elasticsearch.support.StubElasticsearchServer;
+import com.example.elasticsearch.support.StubLlmServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tail latency of /mcp/query when the LLM endpoint is slow: every request goes through
+ * the stub LLM (the intent router is off), 5% of its answers take seconds. Compares the
+ * old client settings (30s timeout, no breaker, no limit) with the bounded defaults.
+ * Run with: mvn test -Dbenchmark=true -Dtest=McpQueryTailLatencyBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+public class McpQueryTailLatencyBenchmarkTest {
+    private static final int REQUESTS = 1_000;
+    private static final int CONCURRENCY = 32;
+    private static final Duration LLM_LATENCY = Duration.ofMillis(50);
+    private static final Duration LLM_SLOW_LATENCY = Duration.ofSeconds(3);
+    private static final Duration BOUNDED_TIMEOUT = Duration.ofMillis(500);
+    private static final String HIT = "{\"hits\":{\"total\":{\"value\":1},\"hits\":[{\"_source\":{\"userId\":1}}]}}";
+
+    @Test
+    void unboundedVersusBoundedClient() throws Exception {
+        try (StubElasticsearchServer es = StubElasticsearchServer.start(Duration.ofMillis(2), HIT);
+             StubLlmServer llm = StubLlmServer.start(n -> n % 20 == 0 ? LLM_SLOW_LATENCY : LLM_LATENCY, n -> 200)) {
+            Result unbounded = run(es, new OpenAiLlmClient("test-key", llm.baseUrl(), "gpt-4o-mini",
+                Duration.ofSeconds(2), Duration.ofSeconds(30), 16, Duration.ofMinutes(5), 1_000, Duration.ZERO,
+                0, Duration.ZERO, Integer.MAX_VALUE, Duration.ofSeconds(30)));
+            Result bounded = run(es, new OpenAiLlmClient("test-key", llm.baseUrl(), "gpt-4o-mini",
+                Duration.ofSeconds(2), BOUNDED_TIMEOUT, 16, Duration.ofMinutes(5), 16, Duration.ofMillis(100),
+                1, Duration.ofMillis(20), 5, Duration.ofSeconds(1)));
+
+            System.out.printf("unbounded client: p50 %.0f ms, p99 %.0f ms, %d failed%n",
+                unbounded.p50Millis, unbounded.p99Millis, unbounded.failures);
+            System.out.printf("bounded client:   p50 %.0f ms, p99 %.0f ms, %d failed (%d requests, %d concurrent, %d%% of LLM answers take %d ms)%n",
+                bounded.p50Millis, bounded.p99Millis, bounded.failures, REQUESTS, CONCURRENCY, 5, LLM_SLOW_LATENCY.toMillis());
+            assertTrue(bounded.p99Millis < BOUNDED_TIMEOUT.toMillis() * 2, "the call timeout should bound the tail");
+            assertTrue(bounded.p99Millis < unbounded.p99Millis);
+        }
+    }
+
+    private Result run(StubElasticsearchServer stub, OpenAiLlmClient llm) throws Exception {
+        RestClient client = RestClient.builder(stub.host()).build();
+        ExecutorService callers = Executors.newFixedThreadPool(CONCURRENCY);
+        try (client) {
+            QueryTemplateService templates =
+                new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper());
+            ElasticsearchService es = new ElasticsearchService(client, templates,
+                null, null, null, null, null, null, null, false);
+            SchemaRegistry schemas = new SchemaRegistry();
+            schemas.loadAll();
+            ToolCatalog tools = new ToolCatalog("classpath*:mcp-tools/*.yml", new DefaultResourceLoader(), schemas, templates);
+            McpController controller = new McpController(llm, es, tools, null,
+                new IntentRouter(false, 0.8), 8, 4, Duration.ofSeconds(5), 50);
+            long[] latencies = new long[REQUESTS];
+            AtomicInteger failures = new AtomicInteger();
+            List<Future<?>> pending = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                int n = i;
+                pending.add(callers.submit(() -> {
+                    long sent = System.nanoTime();
+                    try {
+                        controller.handle(Map.of("query", "Show users in Mathematics")).get();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[n] = System.nanoTime() - sent;
+                }));
+            }
+            for (Future<?> call : pending) {
+                call.get();
+            }
+            Arrays.sort(latencies);
+            return new Result(latencies[REQUESTS / 2] / 1_000_000.0, latencies[(int) (REQUESTS * 0.99)] / 1_000_000.0,
+                failures.get());
+        } finally {
+            callers.shutdown();
+            llm.close();
+        }
+    }
+
+    private record Result(double p50Millis, double p99Millis, int failures) { }
+}
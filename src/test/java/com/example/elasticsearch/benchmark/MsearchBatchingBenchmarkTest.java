@@ -0,0 +1,97 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.query.UserSearchParams;
+import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.MsearchBatcher;
+import com.example.elasticsearch.service.QueryTemplateService;
+import com.example.elasticsearch.support.StubElasticsearchServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Throughput and p99 latency of simple-search.json lookups with _msearch micro-batching
+ * off and on, against a stub cluster with a fixed per-request cost and a bounded connection pool.
+ * Run with: mvn test -Dbenchmark=true -Dtest=MsearchBatchingBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+public class MsearchBatchingBenchmarkTest {
+    private static final int REQUESTS = 20_000;
+    private static final int CONCURRENCY = 256;
+    private static final int CONNECTIONS = 16;
+    private static final Duration ES_LATENCY = Duration.ofMillis(5);
+    private static final String HIT = "{\"hits\":{\"total\":{\"value\":1},\"hits\":[{\"_source\":{\"userId\":1}}]}}";
+
+    @Test
+    void batchingOffVersusOn() throws Exception {
+        try (StubElasticsearchServer stub = StubElasticsearchServer.start(ES_LATENCY, MsearchBatchingBenchmarkTest::respond)) {
+            Result off = run(stub, false);
+            Result on = run(stub, true);
+
+            System.out.printf("batching off: %.0f req/s, p99 %.1f ms%n", off.throughput, off.p99Millis);
+            System.out.printf("batching on:  %.0f req/s, p99 %.1f ms (%d ms ES latency, %d connections, %d concurrent callers)%n",
+                on.throughput, on.p99Millis, ES_LATENCY.toMillis(), CONNECTIONS, CONCURRENCY);
+            assertTrue(on.throughput > off.throughput, "batching should raise throughput when per-request cost dominates");
+        }
+    }
+
+    private Result run(StubElasticsearchServer stub, boolean batching) throws Exception {
+        RestClient client = RestClient.builder(stub.host())
+            .setHttpClientConfigCallback(http -> http.setMaxConnTotal(CONNECTIONS).setMaxConnPerRoute(CONNECTIONS))
+            .build();
+        MsearchBatcher batcher = new MsearchBatcher(client, batching, Duration.ofMillis(2), 64);
+        try (client) {
+            ElasticsearchService svc = new ElasticsearchService(client,
+                new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper()),
+                null, null, null, batcher, null, null, null, false);
+            long[] latencies = new long[REQUESTS];
+            AtomicInteger failures = new AtomicInteger();
+            Semaphore outstanding = new Semaphore(CONCURRENCY);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i++) {
+                outstanding.acquire();
+                int n = i;
+                long sent = System.nanoTime();
+                svc.searchAsync("user", "simple-search.json", new UserSearchParams((long) i)).whenComplete((result, error) -> {
+                    latencies[n] = System.nanoTime() - sent;
+                    if (error != null || result.path("hits").path("total").path("value").asInt() != 1) {
+                        failures.incrementAndGet();
+                    }
+                    outstanding.release();
+                });
+            }
+            outstanding.acquire(CONCURRENCY);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            assertEquals(0, failures.get());
+            Arrays.sort(latencies);
+            return new Result(REQUESTS / seconds, latencies[(int) (REQUESTS * 0.99)] / 1_000_000.0);
+        } finally {
+            batcher.close();
+        }
+    }
+
+    private static String respond(StubElasticsearchServer.StubRequest request) {
+        if (!request.path().endsWith("/_msearch")) {
+            return HIT;
+        }
+        long searches = request.body().lines().count() / 2;
+        StringBuilder body = new StringBuilder("{\"responses\":[");
+        for (int i = 0; i < searches; i++) {
+            body.append(i == 0 ? "" : ",").append(HIT, 0, HIT.length() - 1).append(",\"status\":200}");
+        }
+        return body.append("]}").toString();
+    }
+
+    private record Result(double throughput, double p99Millis) { }
+}
@@ -0,0 +1,125 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.service.DocumentEnricher;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of users-multiple-courses.json before and after courseCount: the old Painless
+ * script query against the range filter on the derived field, over a generated index of
+ * DOCS users written the way ElasticsearchService writes them. Needs Docker.
+ * Run with: mvn test -Dbenchmark=true -Ddocker.available=true -Dtest=MultipleCoursesQueryBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+@EnabledIfSystemProperty(named = "docker.available", matches = "true", disabledReason = "Docker not available")
+public class MultipleCoursesQueryBenchmarkTest {
+    private static final int DOCS = 500_000;
+    private static final int BATCH = 5_000;
+    private static final int WARMUP = 50;
+    private static final int QUERIES = 300;
+    private static final String[] COURSES = {"Mathematics", "Physics", "Chemistry", "English", "History"};
+    private static final String SCRIPT_QUERY =
+        "{\"query\":{\"script\":{\"script\":\"doc['courses.keyword'].length > 1\"}}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DocumentEnricher enricher = new DocumentEnricher("user=courses:courseCount");
+
+    @Test
+    void rangeFilterVersusScriptQuery() throws Exception {
+        try (ElasticsearchContainer es = new ElasticsearchContainer(
+                DockerImageName.parse("docker.elastic.co/elasticsearch/elasticsearch:8.7.0"))
+                .withEnv("discovery.type", "single-node")
+                .withEnv("xpack.security.enabled", "false")) {
+            es.start();
+            try (RestClient client = RestClient.builder(HttpHost.create(es.getHttpHostAddress())).build()) {
+                load(client);
+                String rangeQuery;
+                try (InputStream in = new ClassPathResource("es-templates/user/users-multiple-courses.json").getInputStream()) {
+                    rangeQuery = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+
+                long scriptHits = hits(client, SCRIPT_QUERY);
+                assertEquals(scriptHits, hits(client, rangeQuery), "both queries should match the same users");
+
+                long[] script = latencies(client, SCRIPT_QUERY);
+                long[] range = latencies(client, rangeQuery);
+                System.out.printf("%d users, %d with more than one course%n", DOCS, scriptHits);
+                System.out.printf("script query: p50 %.2f ms, p99 %.2f ms%n", percentile(script, 50), percentile(script, 99));
+                System.out.printf("range filter: p50 %.2f ms, p99 %.2f ms%n", percentile(range, 50), percentile(range, 99));
+                assertTrue(percentile(range, 50) < percentile(script, 50), "the range filter should be faster than the script");
+            }
+        }
+    }
+
+    // Users with 0 to 4 courses, sent through the same enrichment as ElasticsearchService.bulkAsync
+    private void load(RestClient client) throws IOException {
+        for (int start = 0; start < DOCS; start += BATCH) {
+            StringBuilder ndjson = new StringBuilder();
+            for (int i = start; i < start + BATCH; i++) {
+                ObjectNode user = mapper.createObjectNode().put("userId", i).put("userName", "user-" + i);
+                for (int c = 0; c < i % 5; c++) {
+                    user.withArray("courses").add(COURSES[(i + c) % COURSES.length]);
+                }
+                user.putArray("grades");
+                ndjson.append("{\"index\":{\"_id\":\"").append(i).append("\"}}\n").append(user).append('\n');
+            }
+            Request bulk = new Request("POST", "/user/_bulk");
+            bulk.setJsonEntity(enricher.enrichBulk("user", ndjson.toString()));
+            client.performRequest(bulk);
+        }
+        client.performRequest(new Request("POST", "/user/_refresh"));
+        Request merge = new Request("POST", "/user/_forcemerge");
+        merge.addParameter("max_num_segments", "1");
+        client.performRequest(merge);
+    }
+
+    private long hits(RestClient client, String query) throws IOException {
+        return search(client, query).path("hits").path("total").path("value").asLong();
+    }
+
+    // Client-side latency in microseconds; the shard request cache is off so each search is evaluated
+    private long[] latencies(RestClient client, String query) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            search(client, query);
+        }
+        long[] micros = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long start = System.nanoTime();
+            search(client, query);
+            micros[i] = (System.nanoTime() - start) / 1_000;
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private JsonNode search(RestClient client, String query) throws IOException {
+        Request req = new Request("POST", "/user/_search");
+        req.addParameter("request_cache", "false");
+        req.addParameter("track_total_hits", "true");
+        req.setJsonEntity(query);
+        try (InputStream in = client.performRequest(req).getEntity().getContent()) {
+            return mapper.readTree(in);
+        }
+    }
+
+    private static double percentile(long[] sortedMicros, int percentile) {
+        int index = Math.min(sortedMicros.length - 1, (int) Math.ceil(percentile / 100.0 * sortedMicros.length) - 1);
+        return sortedMicros[index] / 1_000.0;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.service.ReindexJob;
+import com.example.elasticsearch.service.ReindexService;
+import com.example.elasticsearch.support.StubElasticsearchServer;
+import com.example.elasticsearch.support.StubElasticsearchServer.StubRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reindex throughput by slice count against a stub cluster where every search page and
+ * every _bulk costs a fixed round trip, so a single slice is bound by latency and extra
+ * slices overlap the waits.
+ * Run with: mvn test -Dbenchmark=true -Dtest=ReindexSliceScalingBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+public class ReindexSliceScalingBenchmarkTest {
+    private static final int DOCS = 40_000;
+    private static final int PAGE_SIZE = 500;
+    private static final Duration ES_LATENCY = Duration.ofMillis(10);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void throughputScalesWithSlices() throws Exception {
+        SchemaRegistry schemas = new SchemaRegistry();
+        schemas.loadAll();
+        Map<Integer, Double> throughput = new LinkedHashMap<>();
+        try (StubElasticsearchServer stub = StubElasticsearchServer.start(ES_LATENCY, this::answer);
+             RestClient client = RestClient.builder(stub.host()).build()) {
+            for (int slices : List.of(1, 2, 4, 8)) {
+                ReindexService reindex = new ReindexService(client, schemas, slices, PAGE_SIZE, Duration.ofMinutes(1),
+                    16, 5 << 20, 3, Duration.ofMillis(10));
+                try {
+                    ReindexJob job = reindex.start(new ReindexJob.Spec("user", "user-v2", slices, null, List.of("validate"), null, null));
+                    while (job.getState() == ReindexJob.State.RUNNING) {
+                        Thread.sleep(5);
+                    }
+                    assertEquals(ReindexJob.State.COMPLETED, job.getState());
+                    assertEquals(DOCS, job.getCopied());
+                    throughput.put(slices, job.status().path("docsPerSecond").asDouble());
+                } finally {
+                    reindex.close();
+                }
+            }
+        }
+        throughput.forEach((slices, docsPerSecond) ->
+            System.out.printf("%d slice(s): %.0f docs/s (%d ms per ES round trip)%n", slices, docsPerSecond, ES_LATENCY.toMillis()));
+        assertTrue(throughput.get(4) > 2 * throughput.get(1), "slices should overlap the round trips");
+    }
+
+    // Source documents 0..DOCS-1 sliced by id modulo max; _bulk acknowledges every item
+    private String answer(StubRequest request) {
+        if (request.path().endsWith("/_pit")) {
+            return "POST".equals(request.method()) ? "{\"id\":\"pit\"}" : "{\"succeeded\":true}";
+        }
+        if (request.path().endsWith("/_count")) {
+            return "{\"count\":" + DOCS + "}";
+        }
+        if (request.path().endsWith("/_bulk")) {
+            StringBuilder items = new StringBuilder("{\"errors\":false,\"items\":[");
+            long actions = request.body().lines().count() / 2;
+            for (long i = 0; i < actions; i++) {
+                items.append(i == 0 ? "" : ",").append("{\"index\":{\"status\":201}}");
+            }
+            return items.append("]}").toString();
+        }
+        JsonNode search = read(request.body());
+        int max = search.path("slice").path("max").asInt(1);
+        int slice = search.path("slice").path("id").asInt(0);
+        int from = search.has("search_after") ? search.path("search_after").get(0).asInt() + max : slice;
+        ObjectNode response = mapper.createObjectNode().put("pit_id", "pit");
+        ArrayNode hits = response.putObject("hits").putArray("hits");
+        for (int i = from; i < DOCS && hits.size() < search.path("size").asInt(); i += max) {
+            ObjectNode hit = hits.addObject().put("_id", String.valueOf(i));
+            ObjectNode source = hit.putObject("_source").put("userId", i).put("userName", "user-" + i);
+            source.putArray("courses").add("Physics");
+            source.putArray("grades").addObject().put("course", "Physics").put("score", i % 100);
+            hit.putArray("sort").add(i);
+        }
+        return response.toString();
+    }
+
+    private JsonNode read(String json) {
+        try {
+            return mapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
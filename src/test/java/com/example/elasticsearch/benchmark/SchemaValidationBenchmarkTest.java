@@ -0,0 +1,134 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.service.DocumentValidator;
+import com.example.elasticsearch.service.DocumentValidator.BulkDocument;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JMH cost of checking a user document on the write path: parsing alone, parsing plus the
+ * registry's precompiled schema, and parsing plus compiling the schema on every call (what
+ * a validator without a registry does). Also times a 1,000-document bulk validated on one
+ * thread and on the validator's parallel pool.
+ * Run with: mvn test -Dbenchmark=true -Dtest=SchemaValidationBenchmarkTest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SchemaValidationBenchmarkTest {
+    private static final int BULK = 1_000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V202012);
+    private SchemaRegistry schemas;
+    private DocumentValidator sequential;
+    private DocumentValidator parallel;
+    private String document;
+    private List<BulkDocument> bulk;
+
+    @Setup
+    public void setUp() throws IOException {
+        schemas = new SchemaRegistry();
+        schemas.loadAll();
+        sequential = new DocumentValidator(schemas, true, "user=user", Integer.MAX_VALUE, 1);
+        parallel = new DocumentValidator(schemas, true, "user=user", 1, 0);
+        bulk = new ArrayList<>();
+        for (int i = 0; i < BULK; i++) {
+            bulk.add(new BulkDocument(2 * i + 2, "index", "user", String.valueOf(i), user(i)));
+        }
+        document = user(42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sequential.close();
+        parallel.close();
+    }
+
+    @Benchmark
+    public JsonNode parseOnly() throws IOException {
+        return mapper.readTree(document);
+    }
+
+    @Benchmark
+    public Object precompiled() throws IOException {
+        return schemas.errors("user", mapper.readTree(document));
+    }
+
+    @Benchmark
+    public Object compilePerCall() throws IOException {
+        return factory.getSchema(schemas.definition("user")).validate(mapper.readTree(document));
+    }
+
+    @Benchmark
+    public void bulkSequential(Blackhole blackhole) {
+        blackhole.consume(sequential.validateAll(bulk));
+    }
+
+    @Benchmark
+    public void bulkParallel(Blackhole blackhole) {
+        blackhole.consume(parallel.validateAll(bulk));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+    void precompiledVersusPerCallValidation() throws Exception {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+            .include(SchemaValidationBenchmarkTest.class.getName() + "\\.")
+            .forks(1)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(5)
+            .measurementTime(TimeValue.seconds(1))
+            .build()).run();
+
+        Map<String, Double> us = results.stream().collect(Collectors.toMap(
+            r -> r.getParams().getBenchmark().replaceAll(".*\\.", ""), r -> r.getPrimaryResult().getScore()));
+        System.out.printf("per document: parse %.2f us, precompiled %.2f us, compile per call %.2f us%n",
+            us.get("parseOnly"), us.get("precompiled"), us.get("compilePerCall"));
+        System.out.printf("%d-document bulk: sequential %.0f us, parallel (%d CPUs) %.0f us%n", BULK,
+            us.get("bulkSequential"), Runtime.getRuntime().availableProcessors(), us.get("bulkParallel"));
+        assertTrue(us.get("precompiled") * 2 < us.get("compilePerCall"), "a precompiled schema should be much cheaper than compiling per call");
+    }
+
+    private String user(int i) throws IOException {
+        ObjectNode user = mapper.createObjectNode().put("userId", i).put("userName", "user-" + i);
+        ArrayNode courses = user.putArray("courses");
+        ArrayNode grades = user.putArray("grades");
+        for (String course : List.of("Mathematics", "Physics", "Chemistry")) {
+            courses.add(course);
+            grades.addObject().put("course", course).put("score", 50 + i % 50);
+        }
+        return mapper.writeValueAsString(user);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.elasticsearch.benchmark;
+
+import com.example.elasticsearch.config.VirtualThreadConfig;
+import com.example.elasticsearch.query.UserSearchParams;
+import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.QueryTemplateService;
+import com.example.elasticsearch.support.StubElasticsearchServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Load test for the virtual-thread mode: many concurrent blocking searches against a
+ * slow stub cluster, on Tomcat's default 200 platform threads versus a virtual thread
+ * per request. Pinned virtual threads are reported on stdout by -Djdk.tracePinnedThreads.
+ * Run with: mvn -Pjava21 test -Dbenchmark=true -Dtest=VirtualThreadLoadTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true", disabledReason = "Benchmarks run with -Dbenchmark=true")
+public class VirtualThreadLoadTest {
+    private static final int PLATFORM_THREADS = 200;
+    private static final int REQUESTS = 5_000;
+    private static final Duration ES_LATENCY = Duration.ofMillis(200);
+    private static final String HIT = "{\"hits\":{\"total\":{\"value\":1},\"hits\":[{\"_source\":{\"userId\":1}}]}}";
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads require Java 21");
+
+        try (StubElasticsearchServer stub = StubElasticsearchServer.start(ES_LATENCY, HIT);
+             RestClient client = RestClient.builder(stub.host())
+                 .setHttpClientConfigCallback(http -> http.setMaxConnTotal(REQUESTS).setMaxConnPerRoute(REQUESTS))
+                 .setRequestConfigCallback(request -> request.setConnectTimeout(30_000).setSocketTimeout(60_000))
+                 .build()) {
+            double platform = run(service(client, false), Executors.newFixedThreadPool(PLATFORM_THREADS));
+            double virtual = run(service(client, true), VirtualThreadConfig.newVirtualThreadPerTaskExecutor());
+
+            System.out.printf("platform (%d threads): %.0f req/s, virtual: %.0f req/s (%d requests, %d ms ES latency)%n",
+                PLATFORM_THREADS, platform, virtual, REQUESTS, ES_LATENCY.toMillis());
+            assertTrue(virtual > platform, "virtual threads should not be bounded by the platform pool size");
+        }
+    }
+
+    private ElasticsearchService service(RestClient client, boolean virtualThreads) {
+        return new ElasticsearchService(client,
+            new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper()),
+            null, null, null, null, null, null, null, virtualThreads);
+    }
+
+    private double run(ElasticsearchService svc, ExecutorService executor) throws Exception {
+        try {
+            long start = System.nanoTime();
+            List<Future<JsonNode>> results = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                long userId = i;
+                results.add(executor.submit(() -> svc.search("user", "simple-search.json", new UserSearchParams(userId))));
+            }
+            for (Future<JsonNode> result : results) {
+                assertEquals(1, result.get().path("hits").path("total").path("value").asInt());
+            }
+            return REQUESTS / ((System.nanoTime() - start) / 1_000_000_000.0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
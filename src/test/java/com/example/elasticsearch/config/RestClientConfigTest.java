@@ -0,0 +1,48 @@
+package com.example.elasticsearch.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RestClientConfigTest {
+
+    @Test
+    void testParsesNodeList() throws Exception {
+        RestClientConfig config = new RestClientConfig(50, 20, 2, Duration.ofSeconds(30),
+            Duration.ofSeconds(1), Duration.ofSeconds(30), true, true);
+        try (RestClient client = config.builder("https://es1:9243, http://es2:9200,es3:9201").build()) {
+            List<HttpHost> hosts = client.getNodes().stream().map(Node::getHost).toList();
+            assertEquals(List.of(new HttpHost("es1", 9243, "https"), new HttpHost("es2", 9200, "http"),
+                new HttpHost("es3", 9201, "http")), hosts);
+        }
+    }
+
+    @Test
+    void testSingleHostWithoutScheme() {
+        assertArrayEquals(new HttpHost[] {new HttpHost("localhost", 9200, "http")}, RestClientConfig.hosts("localhost:9200"));
+        assertThrows(IllegalArgumentException.class, () -> RestClientConfig.hosts(" , "));
+    }
+
+    @Test
+    void testSniffedNodesCarryRoles() throws Exception {
+        String json = "{\"nodes\":{"
+            + "\"a\":{\"name\":\"master-1\",\"version\":\"8.7.0\",\"roles\":[\"master\"],\"http\":{\"publish_address\":\"10.0.0.1:9200\"}},"
+            + "\"b\":{\"name\":\"data-1\",\"version\":\"8.7.0\",\"roles\":[\"data\",\"ingest\"],\"http\":{\"publish_address\":\"es-data-1/10.0.0.2:9200\"}},"
+            + "\"c\":{\"name\":\"no-http\",\"roles\":[\"data\"]}}}";
+        List<Node> nodes = NodeSniffer.parse(new ObjectMapper().readTree(json), "https");
+
+        assertEquals(2, nodes.size());
+        assertEquals(new HttpHost("10.0.0.1", 9200, "https"), nodes.get(0).getHost());
+        assertTrue(nodes.get(0).getRoles().isMasterEligible());
+        assertFalse(nodes.get(0).getRoles().canContainData());
+        assertEquals(new HttpHost("es-data-1", 9200, "https"), nodes.get(1).getHost());
+        assertTrue(nodes.get(1).getRoles().canContainData());
+    }
+}
@@ -1,21 +1,47 @@
 package com.example.elasticsearch.controller;
 
+import com.example.elasticsearch.config.SchemaRegistry;
 import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.FunctionCallCache;
+import com.example.elasticsearch.service.FunctionCallCache.ResolvedCall;
+import com.example.elasticsearch.service.IntentRouter;
+import com.example.elasticsearch.service.LlmClient;
+import com.example.elasticsearch.service.LlmUnavailableException;
+import com.example.elasticsearch.service.OpenAiLlmClient;
+import com.example.elasticsearch.service.QueryTemplateService;
+import com.example.elasticsearch.service.ToolCatalog;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
 import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatFunctionCall;
 import com.theokanning.openai.completion.chat.ChatMessage;
-import com.theokanning.openai.service.OpenAiService;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.BasicHttpEntity;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -28,27 +54,54 @@ public class McpControllerTest {
     private ElasticsearchService elasticsearchService;
 
     @Mock
-    private OpenAiService openAiService;
+    private LlmClient llmClient;
 
+    private static ToolCatalog tools;
     private McpController mcpController;
     private ObjectMapper objectMapper;
 
+    @BeforeAll
+    static void loadTools() throws IOException {
+        SchemaRegistry schemas = new SchemaRegistry();
+        schemas.loadAll();
+        tools = new ToolCatalog("classpath*:mcp-tools/*.yml", new DefaultResourceLoader(), schemas,
+            new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper()));
+    }
+
     @BeforeEach
     void setUp() {
-        // Create controller with test key
-        mcpController = new McpController("test-key", elasticsearchService);
+        mcpController = controller(null, null);
         objectMapper = new ObjectMapper();
     }
 
+    private McpController controller(FunctionCallCache calls, IntentRouter router) {
+        return controller(calls, router, 8, 4, Duration.ofSeconds(5));
+    }
+
+    private McpController controller(FunctionCallCache calls, IntentRouter router, int maxCalls, int maxParallel,
+                                     Duration callTimeout) {
+        return new McpController(llmClient, elasticsearchService, tools, calls, router,
+            maxCalls, maxParallel, callTimeout, 50);
+    }
+
     @Test
     void testHandleQueryBasicStructure() throws Exception {
         // Test the controller basic structure - expect OpenAI exception
         Map<String, Object> payload = Map.of("query", "Show users in Mathematics");
         
         // The OpenAI call will fail with invalid API key, which is expected
-        assertThrows(com.theokanning.openai.OpenAiHttpException.class, () -> {
-            mcpController.handle(payload);
-        });
+        OpenAiLlmClient openAi = new OpenAiLlmClient("test-key", "https://api.openai.com/", "gpt-4o-mini",
+            Duration.ofSeconds(2), Duration.ofSeconds(10), 16, Duration.ofMinutes(5), 16, Duration.ofMillis(100),
+            0, Duration.ZERO, 5, Duration.ofSeconds(30));
+        McpController controller = new McpController(openAi, elasticsearchService, tools, null, null,
+            8, 4, Duration.ofSeconds(5), 50);
+        try {
+            assertThrows(com.theokanning.openai.OpenAiHttpException.class, () -> {
+                controller.handle(payload);
+            });
+        } finally {
+            openAi.close();
+        }
     }
 
     @Test
@@ -82,4 +135,206 @@ public class McpControllerTest {
             mcpController.handle(nullQueryPayload);
         });
     }
+
+    @Test
+    void testCachedFunctionCallSkipsLlm() throws Exception {
+        FunctionCallCache calls = mock(FunctionCallCache.class);
+        ResolvedCall cached = new ResolvedCall("getCourseMaxScore", objectMapper.createObjectNode().put("course", "math"));
+        when(calls.get(anyString(), eq("max score in math"))).thenReturn(cached);
+        JsonNode aggregation = objectMapper.createObjectNode().put("took", 1);
+        when(elasticsearchService.aggregateAsync(eq("user"), eq("course-max.json"), any()))
+            .thenReturn(CompletableFuture.completedFuture(aggregation));
+        McpController controller = controller(calls, null);
+
+        assertSame(aggregation, controller.handle(Map.of("query", "max score in math")).get());
+        verifyNoInteractions(llmClient);
+        verify(calls, never()).put(any(), any(), any());
+    }
+
+    @Test
+    void testConfidentLocalRouteSkipsLlm() throws Exception {
+        JsonNode aggregation = objectMapper.createObjectNode().put("took", 1);
+        when(elasticsearchService.aggregateAsync(eq("user"), eq("class-average.json"), any()))
+            .thenReturn(CompletableFuture.completedFuture(aggregation));
+        McpController controller = controller(null, new IntentRouter(true, 0.8));
+
+        assertSame(aggregation, controller.handle(Map.of("query", "What is the class average?")).get());
+        verifyNoInteractions(llmClient);
+    }
+
+    @Test
+    void testSingleCallTimesOutWithoutFailingTheSharedSearch() throws Exception {
+        CompletableFuture<JsonNode> shared = new CompletableFuture<>();
+        when(elasticsearchService.aggregateAsync(eq("user"), eq("class-average.json"), any())).thenReturn(shared);
+        McpController controller = controller(null, new IntentRouter(true, 0.8), 8, 4, Duration.ofMillis(50));
+
+        JsonNode result = controller.handle(Map.of("query", "What is the class average?")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("Timed out after 50ms", result.path("error").asText());
+        // coalesced callers of the same search are not failed by this caller's timeout
+        assertFalse(shared.isDone());
+    }
+
+    @Test
+    void testMultiToolCallRunsSubCallsConcurrently() throws Exception {
+        FunctionCallCache calls = mock(FunctionCallCache.class);
+        JsonNode arguments = objectMapper.readTree("""
+            {"calls":[{"name":"getClassAverageScore","arguments":{}},
+                      {"name":"getCourseMaxScore","arguments":{"course":"physics"}}]}""");
+        when(calls.get(anyString(), anyString())).thenReturn(new ResolvedCall("runTools", arguments));
+        CompletableFuture<JsonNode> average = new CompletableFuture<>();
+        CompletableFuture<JsonNode> max = new CompletableFuture<>();
+        when(elasticsearchService.aggregateAsync(eq("user"), eq("class-average.json"), any())).thenReturn(average);
+        when(elasticsearchService.aggregateAsync(eq("user"), eq("course-max.json"), any())).thenReturn(max);
+        McpController controller = controller(calls, null, 8, 4, Duration.ofSeconds(5));
+
+        CompletableFuture<JsonNode> response = controller.handle(Map.of("query", "average score and max in physics"));
+        // both searches are dispatched before either has answered, and the request thread is not held
+        verify(elasticsearchService).aggregateAsync(eq("user"), eq("class-average.json"), any());
+        verify(elasticsearchService).aggregateAsync(eq("user"), eq("course-max.json"), any());
+        assertFalse(response.isDone());
+        max.complete(objectMapper.createObjectNode().put("max", 98));
+        average.complete(objectMapper.createObjectNode().put("avg", 71.5));
+
+        JsonNode results = response.get().get("results");
+        assertEquals(2, results.size());
+        assertEquals("getClassAverageScore", results.get(0).get("function").asText());
+        assertEquals(71.5, results.get(0).get("result").get("avg").asDouble());
+        assertEquals("physics", results.get(1).get("arguments").get("course").asText());
+        assertEquals(98, results.get(1).get("result").get("max").asInt());
+    }
+
+    @Test
+    void testMultiToolCallBoundsFanOutAndTimesOutSubCalls() throws Exception {
+        FunctionCallCache calls = mock(FunctionCallCache.class);
+        JsonNode arguments = objectMapper.readTree("""
+            {"calls":[{"name":"showUsersInMultipleCourses"},
+                      {"name":"getClassAverageScore"},
+                      {"name":"showUsersInCourse"}]}""");
+        when(calls.get(anyString(), anyString())).thenReturn(new ResolvedCall("runTools", arguments));
+        when(elasticsearchService.searchAsync(eq("user"), eq("users-multiple-courses.json"), any(), any()))
+            .thenReturn(new CompletableFuture<>());
+        CompletableFuture<JsonNode> average = new CompletableFuture<>();
+        when(elasticsearchService.aggregateAsync(eq("user"), eq("class-average.json"), any())).thenReturn(average);
+        McpController controller = controller(calls, null, 8, 1, Duration.ofMillis(50));
+
+        JsonNode results = controller.handle(Map.of("query", "who takes several courses, the average, and who takes what")).get().get("results");
+
+        assertEquals("Timed out after 50ms", results.get(0).get("error").asText());
+        // with a single lane the second sub-call only starts after the first has settled
+        assertEquals("Timed out after 50ms", results.get(1).get("error").asText());
+        assertEquals("Missing required parameter: course", results.get(2).get("error").asText());
+    }
+
+    @Test
+    void testMultiToolCallRejectsTooManyCalls() throws Exception {
+        FunctionCallCache calls = mock(FunctionCallCache.class);
+        JsonNode arguments = objectMapper.readTree("""
+            {"calls":[{"name":"getClassAverageScore"},{"name":"getClassAverageScore"},{"name":"getClassAverageScore"}]}""");
+        when(calls.get(anyString(), anyString())).thenReturn(new ResolvedCall("runTools", arguments));
+        McpController controller = controller(calls, null, 2, 2, Duration.ofSeconds(5));
+
+        JsonNode response = controller.handle(Map.of("query", "average three times")).get();
+
+        assertEquals("Too many tool calls: 3 (max 2)", response.get("error").asText());
+        verifyNoInteractions(elasticsearchService);
+    }
+
+    @Test
+    void testUnknownFunctionIsAnsweredWithAnErrorBody() throws Exception {
+        FunctionCallCache calls = mock(FunctionCallCache.class);
+        when(calls.get(anyString(), anyString())).thenReturn(new ResolvedCall("dropIndex", objectMapper.createObjectNode()));
+        McpController controller = controller(calls, null);
+
+        JsonNode response = controller.handle(Map.of("query", "drop everything")).get();
+
+        assertEquals("Unknown function: dropIndex", response.path("error").asText());
+        verifyNoInteractions(elasticsearchService);
+    }
+
+    @Test
+    void testStreamEmitsIntentDispatchHitChunksAndSummary() throws Exception {
+        StringBuilder hits = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            hits.append(i == 0 ? "" : ",").append("{\"_id\":\"").append(i).append("\"}");
+        }
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(("{\"took\":2,\"hits\":{\"total\":{\"value\":3},\"hits\":["
+            + hits + "]}}").getBytes(StandardCharsets.UTF_8)));
+        StatusLine status = mock(StatusLine.class);
+        when(status.getStatusCode()).thenReturn(200);
+        HttpResponse esResponse = mock(HttpResponse.class);
+        when(esResponse.getEntity()).thenReturn((HttpEntity) entity);
+        when(esResponse.getStatusLine()).thenReturn(status);
+        when(elasticsearchService.searchStream(eq("user"), eq("users-in-course.json"), any(), any())).thenReturn(esResponse);
+        McpController controller = new McpController(llmClient, elasticsearchService, tools, null,
+            new IntentRouter(true, 0.8), 8, 4, Duration.ofSeconds(5), 2);
+
+        ResponseEntity<StreamingResponseBody> response = controller.stream(Map.of("query", "Show users in Mathematics"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals(MediaType.TEXT_EVENT_STREAM, response.getHeaders().getContentType());
+        List<String> events = out.toString(StandardCharsets.UTF_8).lines()
+            .filter(line -> line.startsWith("event: ")).map(line -> line.substring(7)).toList();
+        assertEquals(List.of("intent", "dispatched", "hits", "hits", "done"), events);
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.contains("\"source\":\"router\""));
+        assertTrue(body.contains("\"returned\":3"));
+        verifyNoInteractions(llmClient);
+    }
+
+    @Test
+    void testStreamReportsMissingArgumentAsErrorEvent() throws Exception {
+        FunctionCallCache calls = mock(FunctionCallCache.class);
+        when(calls.get(anyString(), anyString())).thenReturn(new ResolvedCall("showUsersInCourse", objectMapper.createObjectNode()));
+        McpController controller = controller(calls, null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        controller.stream(Map.of("query", "who is in the course")).getBody().writeTo(out);
+
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("event: intent\n"));
+        assertTrue(body.contains("event: error\ndata: {\"error\":\"Missing required parameter: course\"}\n\n"));
+        verifyNoInteractions(elasticsearchService);
+    }
+
+    @Test
+    void testRequestedFieldsArePassedToSearch() throws Exception {
+        FunctionCallCache calls = mock(FunctionCallCache.class);
+        when(calls.get(anyString(), anyString()))
+            .thenReturn(new ResolvedCall("showUsersInCourse", objectMapper.createObjectNode().put("course", "Physics")));
+        JsonNode hits = objectMapper.createObjectNode().put("took", 1);
+        when(elasticsearchService.searchAsync(eq("user"), eq("users-in-course.json"), any(), eq(List.of("userName", "grades"))))
+            .thenReturn(CompletableFuture.completedFuture(hits));
+        when(elasticsearchService.searchAsync(eq("user"), eq("users-in-course.json"), any(), eq(List.of("password"))))
+            .thenThrow(new IllegalArgumentException("Field not allowed: password"));
+        McpController controller = controller(calls, null);
+
+        assertSame(hits, controller.handle(Map.of("query", "who is in physics", "fields", "userName, grades")).get());
+        JsonNode rejected = controller.handle(Map.of("query", "who is in physics", "fields", List.of("password"))).get();
+        assertEquals("Field not allowed: password", rejected.path("error").asText());
+    }
+
+    @Test
+    void testLlmResolvedCallAndUnavailableLlm() throws Exception {
+        JsonNode hits = objectMapper.createObjectNode().put("took", 1);
+        when(elasticsearchService.searchAsync(eq("user"), eq("users-in-course.json"), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture(hits));
+        ChatMessage message = new ChatMessage("assistant", null);
+        message.setFunctionCall(new ChatFunctionCall("showUsersInCourse", objectMapper.createObjectNode().put("course", "Physics")));
+        ChatCompletionChoice choice = new ChatCompletionChoice();
+        choice.setMessage(message);
+        ChatCompletionResult result = new ChatCompletionResult();
+        result.setChoices(List.of(choice));
+        when(llmClient.complete(any(), any()))
+            .thenReturn(result)
+            .thenThrow(new LlmUnavailableException("LLM circuit breaker is open", Duration.ofSeconds(3)));
+        McpController controller = new McpController(llmClient, elasticsearchService, tools, null,
+            new IntentRouter(false, 0.8), 8, 4, Duration.ofSeconds(5), 50);
+
+        assertSame(hits, controller.handle(Map.of("query", "who takes physics and chemistry")).get());
+        assertThrows(LlmUnavailableException.class, () -> controller.handle(Map.of("query", "anything else")));
+        verify(llmClient, times(2)).complete(any(), any());
+    }
 }
@@ -0,0 +1,54 @@
+package com.example.elasticsearch.controller;
+
+import com.example.elasticsearch.service.McpServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class McpRpcControllerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testInitializeHandsOutSessionId() throws Exception {
+        McpServer server = mock(McpServer.class);
+        when(server.isInitialize(any())).thenReturn(true);
+        when(server.handle(any())).thenReturn(CompletableFuture.completedFuture(mapper.createObjectNode().put("id", 1)));
+
+        ResponseEntity<JsonNode> response = new McpRpcController(server)
+            .rpc("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\"}").get();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getHeaders().getFirst(McpRpcController.SESSION_HEADER));
+    }
+
+    @Test
+    void testNotificationsAreAccepted() throws Exception {
+        McpServer server = mock(McpServer.class);
+        when(server.handle(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        ResponseEntity<JsonNode> response = new McpRpcController(server)
+            .rpc("{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}").get();
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void testMalformedJsonIsAParseError() throws Exception {
+        McpServer server = mock(McpServer.class);
+        when(server.parseError(any())).thenReturn(mapper.createObjectNode().put("code", -32700));
+
+        ResponseEntity<JsonNode> response = new McpRpcController(server).rpc("{not json").get();
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(server, never()).handle(any());
+    }
+}
@@ -1,9 +1,16 @@
 package com.example.elasticsearch.controller;
 
 import com.example.elasticsearch.service.ElasticsearchService;
+import com.example.elasticsearch.service.UserLookupService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,8 +18,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -25,13 +36,16 @@ public class UserControllerTest {
     @Mock
     private ElasticsearchService elasticsearchService;
 
+    @Mock
+    private UserLookupService userLookupService;
+
     private UserController userController;
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
 
     @BeforeEach
     void setUp() {
-        userController = new UserController(elasticsearchService);
+        userController = new UserController(elasticsearchService, userLookupService);
         mockMvc = MockMvcBuilders.standaloneSetup(userController)
                 .setControllerAdvice(new GlobalExceptionHandler())
                 .build();
@@ -46,15 +60,34 @@ public class UserControllerTest {
                 .put("total", objectMapper.createObjectNode()
                     .put("value", 1)));
 
-        when(elasticsearchService.search(eq("user"), eq("simple-search.json"), any()))
-            .thenReturn(mockResponse);
+        when(userLookupService.byId(123L)).thenReturn(CompletableFuture.completedFuture(mockResponse));
 
         // Test the endpoint
-        mockMvc.perform(get("/api/users/by-id/123"))
+        MvcResult result = mockMvc.perform(get("/api/users/by-id/123"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk());
 
-        // Verify the service was called with correct parameters
-        verify(elasticsearchService).search(eq("user"), eq("simple-search.json"), any());
+        // Verify the lookup went through the realtime get path, not a search
+        verify(userLookupService).byId(123L);
+        verify(elasticsearchService, never()).searchAsync(any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetUsersByIds() throws Exception {
+        JsonNode mockResponse = objectMapper.readTree("{\"hits\":{\"total\":{\"value\":2}},\"missing\":[3]}");
+        when(userLookupService.byIds(List.of(1L, 2L, 3L))).thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        MvcResult result = mockMvc.perform(post("/api/users/by-ids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1,2,3]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hits.total.value").value(2))
+                .andExpect(jsonPath("$.missing[0]").value(3));
     }
 
     @Test
@@ -63,16 +96,19 @@ public class UserControllerTest {
         JsonNode mockResponse = objectMapper.createObjectNode()
             .put("responses", objectMapper.createArrayNode());
 
-        when(elasticsearchService.msearch(eq("user"), eq("multi-search.msearch"), any()))
-            .thenReturn(mockResponse);
+        when(elasticsearchService.msearchAsync(eq("user"), eq("multi-search.msearch"), any()))
+            .thenReturn(CompletableFuture.completedFuture(mockResponse));
 
         // Test the endpoint
-        mockMvc.perform(get("/api/users/search")
+        MvcResult result = mockMvc.perform(get("/api/users/search")
                 .param("userName", "Alice"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk());
 
         // Verify the service was called with correct parameters
-        verify(elasticsearchService).msearch(eq("user"), eq("multi-search.msearch"), any());
+        verify(elasticsearchService).msearchAsync(eq("user"), eq("multi-search.msearch"), any());
     }
 
     @Test
@@ -85,15 +121,19 @@ public class UserControllerTest {
         ObjectNode mockResponse = objectMapper.createObjectNode();
         mockResponse.set("aggregations", aggregations);
 
-        when(elasticsearchService.aggregate(eq("user"), eq("agg-count-sum.json"), any()))
-            .thenReturn(mockResponse);
+        when(elasticsearchService.aggregateAsync(eq("user"), eq("agg-count-sum.json"), any()))
+            .thenReturn(CompletableFuture.completedFuture(mockResponse));
 
         // Test the endpoint
-        mockMvc.perform(get("/api/users/stats/456"))
-                .andExpect(status().isOk());
+        MvcResult result = mockMvc.perform(get("/api/users/stats/456"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.aggregations.course_count.value").value(3));
 
         // Verify the service was called with correct parameters
-        verify(elasticsearchService).aggregate(eq("user"), eq("agg-count-sum.json"), any());
+        verify(elasticsearchService).aggregateAsync(eq("user"), eq("agg-count-sum.json"), any());
     }
 
     @Test
@@ -124,18 +164,41 @@ public class UserControllerTest {
         JsonNode msearchResponse = objectMapper.createObjectNode();
         JsonNode aggregateResponse = objectMapper.createObjectNode();
 
-        when(elasticsearchService.search(any(), any(), any())).thenReturn(searchResponse);
-        when(elasticsearchService.msearch(any(), any(), any())).thenReturn(msearchResponse);
-        when(elasticsearchService.aggregate(any(), any(), any())).thenReturn(aggregateResponse);
+        when(userLookupService.byId(any())).thenReturn(CompletableFuture.completedFuture(searchResponse));
+        when(elasticsearchService.msearchAsync(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(msearchResponse));
+        when(elasticsearchService.aggregateAsync(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(aggregateResponse));
 
         // Test all endpoints return JSON
-        mockMvc.perform(get("/api/users/by-id/123"))
-                .andExpect(status().isOk());
-
-        mockMvc.perform(get("/api/users/search").param("userName", "test"))
-                .andExpect(status().isOk());
+        for (MvcResult result : List.of(
+                mockMvc.perform(get("/api/users/by-id/123")).andReturn(),
+                mockMvc.perform(get("/api/users/search").param("userName", "test")).andReturn(),
+                mockMvc.perform(get("/api/users/stats/123")).andReturn())) {
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        }
+    }
 
-        mockMvc.perform(get("/api/users/stats/123"))
-                .andExpect(status().isOk());
+    @Test
+    void testPassthroughRelaysStatusHeadersAndBody() throws Exception {
+        String body = "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}";
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 404, "Not Found"));
+        response.setHeaders(new org.apache.http.Header[] {
+            new BasicHeader("Content-Type", "application/json"),
+            new BasicHeader("X-elastic-product", "Elasticsearch")
+        });
+        response.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        when(elasticsearchService.aggregateResponse(eq("user"), eq("agg-count-sum.json"), any())).thenReturn(response);
+
+        MvcResult result = mockMvc.perform(get("/api/users/stats/456").param("passthrough", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound())
+                .andExpect(header().string("X-elastic-product", "Elasticsearch"))
+                .andExpect(content().string(body));
+
+        verify(elasticsearchService, never()).aggregateAsync(any(), any(), any());
     }
 }
@@ -52,9 +52,8 @@ public class ElasticsearchIntegrationTest {
         // index a document
         String doc = "{ \"userId\":1234, \"userName\":\"Alice\", \"courses\":[\"english\",\"math\",\"science\"], "
                      + "\"grades\":[{\"course\":\"math\",\"score\":85},{\"course\":\"science\",\"score\":90}] }";
-        Request indexRequest = new Request("POST", "/user/_doc");
-        indexRequest.setJsonEntity(doc);
-        client.performRequest(indexRequest);
+        // through the service, which sets courseCount for users-multiple-courses.json
+        esService.create("user", doc);
         
         Request refreshRequest = new Request("POST", "/user/_refresh");
         client.performRequest(refreshRequest);
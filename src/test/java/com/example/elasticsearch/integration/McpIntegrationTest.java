@@ -1,25 +1,37 @@
 package com.example.elasticsearch.integration;
 
+import com.example.elasticsearch.config.SchemaRegistry;
 import com.example.elasticsearch.controller.McpController;
+import com.example.elasticsearch.service.FunctionCallCache;
+import com.example.elasticsearch.service.IntentRouter;
+import com.example.elasticsearch.service.LlmClient;
+import com.example.elasticsearch.service.QueryTemplateService;
+import com.example.elasticsearch.service.ToolCatalog;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
-import com.theokanning.openai.service.OpenAiService;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
 
 @WebMvcTest(McpController.class)
+@Import({FunctionCallCache.class, IntentRouter.class, ToolCatalog.class, SchemaRegistry.class, QueryTemplateService.class})
 @TestPropertySource(properties = {
-    "OPENAI_API_KEY=test-key-for-integration-test"
+    "OPENAI_API_KEY=test-key-for-integration-test",
+    // these tests exercise the LLM path, which the local router would otherwise short-circuit
+    "app.mcp.router.enabled=false"
 })
 public class McpIntegrationTest {
 
@@ -27,13 +39,19 @@ public class McpIntegrationTest {
     private MockMvc mockMvc;
 
     @MockBean
-    private OpenAiService openAiService; // Mock the OpenAI service to avoid real API calls
+    private LlmClient llmClient; // Mock the LLM client to avoid real API calls
     
     @MockBean
     private com.example.elasticsearch.service.ElasticsearchService elasticsearchService; // Mock Elasticsearch service
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @BeforeEach
+    void rejectLlmCalls() {
+        // behaves like OpenAI answering an invalid key
+        when(llmClient.complete(any(), any())).thenThrow(new RuntimeException("Incorrect API key provided"));
+    }
+
     @Test
     void testMcpEndpointExists() throws Exception {
         // Test that the MCP endpoint exists and accepts POST requests
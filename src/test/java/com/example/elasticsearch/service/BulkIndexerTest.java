@@ -0,0 +1,197 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.entity.BasicHttpEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class BulkIndexerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private RestClient client;
+    private BulkIndexer indexer;
+    private final List<String> bodies = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        client = mock(RestClient.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (indexer != null) {
+            indexer.close();
+        }
+    }
+
+    // Answers every _bulk request with one item per action line, statuses chosen by itemStatus
+    private void respondWith(IntUnaryOperator itemStatus) {
+        respondWith(itemStatus, 0);
+    }
+
+    // As above, after failing the first failedRequests requests on the connection
+    private void respondWith(IntUnaryOperator itemStatus, int failedRequests) {
+        AtomicInteger seen = new AtomicInteger();
+        AtomicInteger requests = new AtomicInteger();
+        doAnswer(inv -> {
+            if (requests.getAndIncrement() < failedRequests) {
+                inv.<ResponseListener>getArgument(1).onFailure(new IOException("Connection reset"));
+                return null;
+            }
+            Request req = inv.getArgument(0);
+            String body = new String(req.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
+            bodies.add(body);
+            ObjectNode result = mapper.createObjectNode();
+            ArrayNode items = result.putArray("items");
+            for (String line : body.split("\n")) {
+                JsonNode json = mapper.readTree(line);
+                String action = json.fieldNames().next();
+                if (!List.of("index", "create", "update", "delete").contains(action) || json.size() != 1 || !json.get(action).has("_index")) {
+                    continue;
+                }
+                int status = itemStatus.applyAsInt(seen.getAndIncrement());
+                ObjectNode item = items.addObject().putObject(action)
+                    .put("_id", json.get(action).path("_id").asText("auto")).put("status", status);
+                if (status >= 300) {
+                    item.putObject("error").put("type", status == 429 ? "es_rejected_execution_exception" : "mapper_parsing_exception");
+                } else {
+                    item.put("result", "created");
+                }
+            }
+            Response resp = mock(Response.class);
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(new ByteArrayInputStream(mapper.writeValueAsBytes(result)));
+            when(resp.getEntity()).thenReturn(entity);
+            inv.<ResponseListener>getArgument(1).onSuccess(resp);
+            return null;
+        }).when(client).performRequestAsync(any(Request.class), any(ResponseListener.class));
+    }
+
+    private BulkIndexer indexer(int maxActions, Duration flushInterval) {
+        return new BulkIndexer(client, true, maxActions, 5_000_000, flushInterval, 2, 3, Duration.ofMillis(10),
+            Duration.ofSeconds(1));
+    }
+
+    @Test
+    void flushesOneBulkWhenActionLimitIsReached() throws Exception {
+        respondWith(i -> 201);
+        indexer = indexer(3, Duration.ofHours(1));
+
+        CompletableFuture<JsonNode> a = indexer.index("user", "1", "{\"userId\":1}");
+        CompletableFuture<JsonNode> b = indexer.update("user", "2", "{\"userName\":\"B\"}");
+        assertFalse(a.isDone());
+        CompletableFuture<JsonNode> c = indexer.delete("user", "3");
+
+        assertEquals("1", a.get(1, TimeUnit.SECONDS).path("_id").asText());
+        assertEquals("2", b.get(1, TimeUnit.SECONDS).path("_id").asText());
+        assertEquals("3", c.get(1, TimeUnit.SECONDS).path("_id").asText());
+        assertEquals(1, bodies.size());
+        assertTrue(bodies.get(0).contains("{\"doc\":{\"userName\":\"B\"}}"));
+        assertEquals(0, indexer.getQueueDepth());
+        assertEquals(1, indexer.getFlushCount());
+    }
+
+    @Test
+    void flushesOnTimeWindow() throws Exception {
+        respondWith(i -> 201);
+        indexer = indexer(1000, Duration.ofMillis(20));
+
+        JsonNode item = indexer.index("user", null, "{\"userId\":1}").get(2, TimeUnit.SECONDS);
+        assertEquals("created", item.path("result").asText());
+    }
+
+    @Test
+    void retriesRejectedItemsAndFailsOthersIndividually() throws Exception {
+        // first attempt: item 0 rejected with 429, item 1 a mapping error; the retry succeeds
+        respondWith(i -> i == 0 ? 429 : i == 1 ? 400 : 201);
+        indexer = indexer(2, Duration.ofHours(1));
+
+        CompletableFuture<JsonNode> retried = indexer.index("user", "1", "{\"userId\":1}");
+        CompletableFuture<JsonNode> broken = indexer.index("user", "2", "{\"userId\":\"x\"}");
+
+        assertEquals("1", retried.get(2, TimeUnit.SECONDS).path("_id").asText());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> broken.get(1, TimeUnit.SECONDS));
+        assertEquals(400, assertInstanceOf(BulkItemException.class, e.getCause()).getStatus());
+        assertEquals(2, bodies.size());
+        assertEquals(1, indexer.getRetryCount());
+    }
+
+    @Test
+    void createFailsWithAConflictInsteadOfReplacing() throws Exception {
+        respondWith(i -> i == 1 ? 409 : 201);
+        indexer = indexer(2, Duration.ofHours(1));
+
+        CompletableFuture<JsonNode> first = indexer.create("user", "1", "{\"userId\":1}");
+        CompletableFuture<JsonNode> duplicate = indexer.create("user", "1", "{\"userId\":1}");
+
+        assertEquals("1", first.get(1, TimeUnit.SECONDS).path("_id").asText());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> duplicate.get(1, TimeUnit.SECONDS));
+        assertEquals(409, assertInstanceOf(BulkItemException.class, e.getCause()).getStatus());
+        assertTrue(bodies.get(0).startsWith("{\"create\":{\"_index\":\"user\",\"_id\":\"1\"}}"));
+    }
+
+    @Test
+    void queuesBatchesBeyondMaxConcurrentWithoutBlockingAndRejectsWhenFull() throws Exception {
+        List<ResponseListener> pending = new ArrayList<>();
+        doAnswer(inv -> {
+            pending.add(inv.getArgument(1));
+            return null;
+        }).when(client).performRequestAsync(any(Request.class), any(ResponseListener.class));
+        indexer = new BulkIndexer(client, true, 1, 5_000_000, Duration.ofHours(1), 2, 3, Duration.ofMillis(10),
+            Duration.ofMillis(100));
+
+        // two in flight, two queued; none of these calls waits
+        for (int i = 0; i < 4; i++) {
+            indexer.index("user", String.valueOf(i), "{\"userId\":" + i + "}");
+        }
+        assertEquals(2, pending.size());
+
+        CompletableFuture<JsonNode> rejected = indexer.index("user", "4", "{\"userId\":4}");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertEquals(4, indexer.getQueueDepth());
+
+        // a completed request hands its slot to the next queued batch
+        pending.get(0).onFailure(new IOException("Connection reset"));
+        assertEquals(3, pending.size());
+    }
+
+    @Test
+    void connectionFailureRetriesOnlyWritesWithAnId() throws Exception {
+        respondWith(i -> 201, 1);
+        indexer = indexer(2, Duration.ofHours(1));
+
+        CompletableFuture<JsonNode> keyed = indexer.index("user", "1", "{\"userId\":1}");
+        CompletableFuture<JsonNode> autoId = indexer.index("user", null, "{\"userId\":2}");
+
+        assertEquals("1", keyed.get(2, TimeUnit.SECONDS).path("_id").asText());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> autoId.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals(1, bodies.size());
+        assertFalse(bodies.get(0).contains("\"userId\":2"));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentEnricherTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DocumentEnricher enricher = new DocumentEnricher("user=courses:courseCount");
+
+    @Test
+    void countsTheArrayOnFullDocuments() throws Exception {
+        assertEquals(3, read(enricher.enrich("user", "{\"userId\":1,\"courses\":[\"a\",\"b\",\"c\"]}")).get("courseCount").asInt());
+        assertEquals(0, read(enricher.enrich("user", "{\"userId\":1}")).get("courseCount").asInt());
+        assertEquals(1, read(enricher.enrich("user", "{\"courses\":\"a\"}")).get("courseCount").asInt());
+        // keyword doc values are de-duplicated, so repeated courses count once
+        assertEquals(2, read(enricher.enrich("user", "{\"courses\":[\"math\",\"math\",null,\"art\"]}")).get("courseCount").asInt());
+        // a stale count sent by the caller is corrected
+        assertEquals(1, read(enricher.enrich("user", "{\"courses\":[\"a\"],\"courseCount\":5}")).get("courseCount").asInt());
+
+        String other = "{\"courses\":[\"a\",\"b\"]}";
+        assertSame(other, enricher.enrich("logs", other));
+        assertEquals("{not json", enricher.enrich("user", "{not json"));
+    }
+
+    @Test
+    void partialUpdatesOnlyGainACountWhenTheyChangeTheArray() throws Exception {
+        assertEquals(2, read(enricher.enrichPartial("user", "{\"courses\":[\"a\",\"b\"]}")).get("courseCount").asInt());
+        String rename = "{\"userName\":\"Bob\"}";
+        assertSame(rename, enricher.enrichPartial("user", rename));
+    }
+
+    @Test
+    void enrichesBulkSourcesAndUpdateDocs() throws Exception {
+        String ndjson = "{\"index\":{\"_id\":\"1\"}}\n{\"courses\":[\"a\",\"b\"]}\n"
+            + "{\"delete\":{\"_id\":\"2\"}}\n"
+            + "{\"update\":{\"_id\":\"3\"}}\n{\"doc\":{\"courses\":[]}}\n"
+            + "{\"update\":{\"_id\":\"4\"}}\n{\"doc\":{\"userName\":\"x\"}}\n"
+            + "{\"create\":{\"_index\":\"logs\"}}\n{\"courses\":[\"a\"]}\n";
+
+        List<String> lines = enricher.enrichBulk("user", ndjson).lines().toList();
+
+        assertEquals(9, lines.size());
+        assertEquals(2, read(lines.get(1)).get("courseCount").asInt());
+        assertEquals("{\"delete\":{\"_id\":\"2\"}}", lines.get(2));
+        assertEquals(0, read(lines.get(4)).path("doc").get("courseCount").asInt());
+        assertFalse(read(lines.get(6)).path("doc").has("courseCount"));
+        assertFalse(read(lines.get(8)).has("courseCount"));
+    }
+
+    @Test
+    void backfillsOnlyDocumentsMissingTheCount() {
+        JsonNode body = enricher.backfillRequest("user");
+        assertEquals("courseCount", body.at("/query/bool/must_not/0/exists/field").asText());
+        assertEquals("courses", body.at("/script/params/source").asText());
+        assertEquals("courseCount", body.at("/script/params/target").asText());
+        assertNull(enricher.backfillRequest("logs"));
+    }
+
+    @Test
+    void rejectsMalformedConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new DocumentEnricher("user=courses"));
+        assertThrows(IllegalArgumentException.class, () -> new DocumentEnricher("user=:courseCount"));
+    }
+
+    private JsonNode read(String json) throws Exception {
+        return mapper.readTree(json);
+    }
+}
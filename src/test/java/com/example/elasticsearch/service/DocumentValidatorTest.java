@@ -0,0 +1,104 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.service.DocumentValidationException.Rejection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentValidatorTest {
+    private static final String VALID = "{\"userId\":1,\"userName\":\"Alice\",\"courses\":[\"Physics\"],"
+        + "\"grades\":[{\"course\":\"Physics\",\"score\":91}]}";
+
+    private SchemaRegistry schemas;
+    private DocumentValidator validator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        schemas = new SchemaRegistry();
+        schemas.loadAll();
+        validator = new DocumentValidator(schemas, true, "user=user", 8, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        validator.close();
+    }
+
+    @Test
+    void reportsEveryViolationWithItsPath() {
+        validator.validate("user", "1", VALID);
+
+        DocumentValidationException e = assertThrows(DocumentValidationException.class,
+            () -> validator.validate("user", "2", "{\"userId\":\"two\",\"courses\":[],\"grades\":[{\"course\":\"Physics\"}]}"));
+        Rejection rejection = e.getRejections().get(0);
+        assertEquals("2", rejection.id());
+        assertNull(rejection.line());
+        List<String> paths = rejection.violations().stream().map(DocumentValidationException.Violation::path).sorted().toList();
+        assertEquals(List.of("$", "$.grades[0]", "$.userId"), paths);
+        assertEquals(1, validator.getRejectedCount());
+        assertEquals(2, validator.getValidatedCount());
+    }
+
+    @Test
+    void partialUpdatesOnlyCheckTheFieldsTheyContain() {
+        validator.validatePartial("user", "1", "{\"courses\":[\"Chemistry\"]}");
+        assertThrows(DocumentValidationException.class, () -> validator.validatePartial("user", "1", "{\"userName\":7}"));
+    }
+
+    @Test
+    void skipsIndicesWithoutASchemaAndDisabledValidation() {
+        assertFalse(validator.appliesTo("logs"));
+        validator.validate("logs", "1", "{\"anything\":true}");
+
+        DocumentValidator disabled = new DocumentValidator(schemas, false, "user=user", 8, 4);
+        assertFalse(disabled.appliesTo("user"));
+        disabled.validate("user", "1", "{}");
+        // no validation pool is started unless validation is on
+        assertNull(ReflectionTestUtils.getField(disabled, "pool"));
+        List<DocumentValidator.BulkDocument> bulk = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            bulk.add(new DocumentValidator.BulkDocument(i + 1, "index", "user", null, "{}"));
+        }
+        assertTrue(disabled.validateAll(bulk).isEmpty());
+        disabled.close();
+    }
+
+    @Test
+    void unknownSchemasFailAtStartup() {
+        assertThrows(IllegalArgumentException.class, () -> new DocumentValidator(schemas, true, "user=missing", 8, 1));
+    }
+
+    @Test
+    void bulkRejectionsKeepLineOrderWhenValidatedInParallel() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            ndjson.append("{\"index\":{\"_id\":\"").append(i).append("\"}}\n")
+                .append(i % 7 == 0 ? "{\"userId\":\"x\"}" : VALID).append('\n');
+        }
+        ndjson.append("{\"delete\":{\"_id\":\"3\"}}\n")
+            .append("{\"update\":{\"_id\":\"4\"}}\n{\"doc\":{\"grades\":5}}\n")
+            .append("{\"update\":{\"_id\":\"5\"}}\n{\"script\":{\"source\":\"ctx._source.userId++\"}}\n")
+            .append("{\"index\":{\"_index\":\"logs\"}}\n{\"free\":\"form\"}\n")
+            .append("{\"create\":{\"_id\":\"6\"}}\n{not json\n");
+
+        List<Rejection> rejections = validator.validateBulk("user", ndjson.toString());
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i += 7) {
+            expected.add(2 * i + 2);
+        }
+        expected.add(203);
+        expected.add(209);
+        assertEquals(expected, rejections.stream().map(Rejection::line).toList());
+        assertEquals("json", rejections.get(rejections.size() - 1).violations().get(0).keyword());
+        assertEquals("4", rejections.get(rejections.size() - 2).id());
+    }
+}
@@ -1,16 +1,26 @@
 package com.example.elasticsearch.service;
 
+import com.example.elasticsearch.config.SchemaRegistry;
 import com.example.elasticsearch.query.QueryParams;
+import com.example.elasticsearch.schema.UserSchema;
 import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestClientBuilder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import org.mockito.ArgumentCaptor;
@@ -19,15 +29,12 @@ public class ElasticsearchServiceTest {
     private RestClient mockClient;
     private ElasticsearchService svc;
     private QueryTemplateService tpl;
-    private RestClientBuilder builder;
 
     @BeforeEach
     void setUp() {
         mockClient = mock(RestClient.class);
         tpl = mock(QueryTemplateService.class);
-        builder = mock(RestClientBuilder.class);
-        when(builder.build()).thenReturn(mockClient);
-        svc = new ElasticsearchService(builder, tpl);
+        svc = new ElasticsearchService(mockClient, tpl, null, null, null, null, null, null, null, false);
     }
 
     private record DummyParams(Object userId) implements QueryParams {}
@@ -53,4 +60,200 @@ public class ElasticsearchServiceTest {
         assertEquals("GET", sent.getMethod());
         assertTrue(sent.getEndpoint().endsWith("/user/_search"));
     }
+
+    @Test
+    void searchUsers_decodesSourcesIntoUserSchema() throws Exception {
+        when(tpl.render("user", "users-in-course.json", new DummyParams(1234L))).thenReturn("{}");
+        String fake = "{\"hits\":{\"total\":{\"value\":1},\"hits\":[{\"_id\":\"1234\",\"_source\":{\"userId\":1234,"
+            + "\"userName\":\"Ann\",\"courses\":[\"Physics\"],\"grades\":[{\"course\":\"Physics\",\"score\":88}]}}]}}";
+        Response resp = mock(Response.class);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(fake.getBytes(StandardCharsets.UTF_8)));
+        when(resp.getEntity()).thenReturn(entity);
+        when(mockClient.performRequest(any(Request.class))).thenReturn(resp);
+
+        List<UserSchema> users;
+        try (Stream<UserSchema> stream = svc.searchUsers("users-in-course.json", new DummyParams(1234L))) {
+            users = stream.toList();
+        }
+
+        assertEquals(1, users.size());
+        assertEquals(1234, users.get(0).getUserId());
+        assertEquals(88.0, users.get(0).getGrades().get(0).getScore());
+    }
+
+    @Test
+    void searchAsync_completesFromResponseListener() throws Exception {
+        when(tpl.render("user", "simple-search.json", new DummyParams(1234L)))
+            .thenReturn("{\"query\":{\"term\":{\"userId\":1234}}}");
+        Response resp = mock(Response.class);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream("{\"hits\":{\"total\":{\"value\":1}}}".getBytes(StandardCharsets.UTF_8)));
+        when(resp.getEntity()).thenReturn(entity);
+        doAnswer(inv -> {
+            inv.<ResponseListener>getArgument(1).onSuccess(resp);
+            return null;
+        }).when(mockClient).performRequestAsync(any(Request.class), any(ResponseListener.class));
+
+        CompletableFuture<JsonNode> result = svc.searchAsync("user", "simple-search.json", new DummyParams(1234L));
+
+        assertEquals(1, result.get().path("hits").path("total").path("value").asInt());
+        verify(mockClient, never()).performRequest(any(Request.class));
+    }
+
+    @Test
+    void searchAsync_propagatesClientFailure() {
+        when(tpl.render(any(), any(), any())).thenReturn("{}");
+        doAnswer(inv -> {
+            inv.<ResponseListener>getArgument(1).onFailure(new IOException("connection refused"));
+            return null;
+        }).when(mockClient).performRequestAsync(any(Request.class), any(ResponseListener.class));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+            () -> svc.searchAsync("user", "simple-search.json", new DummyParams(1L)).get());
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    void search_appliesProjectionAndKeysCacheByFields() throws Exception {
+        QueryResultCache cache = new QueryResultCache(true, 100, Duration.ofSeconds(30), "", Duration.ZERO);
+        ElasticsearchService cached = new ElasticsearchService(mockClient, tpl, null, cache, null, null, null, null, null, false);
+        when(tpl.render("user", "simple-search.json", new DummyParams(1L))).thenReturn("{\"query\":{\"match_all\":{}}}");
+        when(tpl.projection("user", "simple-search.json")).thenReturn(new ResponseProjection(
+            List.of("userId", "userName"), Set.of("userId", "userName", "courses"), "took,hits.hits._source"));
+        when(mockClient.performRequest(any(Request.class))).thenAnswer(inv -> {
+            Response resp = mock(Response.class);
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(new ByteArrayInputStream("{\"took\":1}".getBytes(StandardCharsets.UTF_8)));
+            when(resp.getEntity()).thenReturn(entity);
+            return resp;
+        });
+
+        cached.search("user", "simple-search.json", new DummyParams(1L));
+        cached.search("user", "simple-search.json", new DummyParams(1L));
+        cached.search("user", "simple-search.json", new DummyParams(1L), List.of("courses"));
+        assertThrows(IllegalArgumentException.class,
+            () -> cached.search("user", "simple-search.json", new DummyParams(1L), List.of("grades")));
+
+        ArgumentCaptor<Request> cap = ArgumentCaptor.forClass(Request.class);
+        verify(mockClient, times(2)).performRequest(cap.capture());
+        Request declared = cap.getAllValues().get(0);
+        assertTrue(declared.getEndpoint().endsWith("/user/_search"));
+        assertEquals("took,hits.hits._source", declared.getParameters().get("filter_path"));
+        assertEquals("{\"_source\":[\"userId\",\"userName\"],\"query\":{\"match_all\":{}}}", body(declared));
+        assertEquals("{\"_source\":[\"courses\"],\"query\":{\"match_all\":{}}}", body(cap.getAllValues().get(1)));
+    }
+
+    private static String body(Request request) throws IOException {
+        return new String(request.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void search_servedFromCacheUntilIndexIsWritten() throws Exception {
+        QueryResultCache cache = new QueryResultCache(true, 100, Duration.ofSeconds(30), "", Duration.ZERO);
+        ElasticsearchService cached = new ElasticsearchService(mockClient, tpl, null, cache, null, null, null, null, null, false);
+        when(tpl.render("user", "class-average.json", new DummyParams(1L))).thenReturn("{\"size\":0}");
+        when(mockClient.performRequest(any(Request.class))).thenAnswer(inv -> {
+            Response resp = mock(Response.class);
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(new ByteArrayInputStream("{\"took\":1}".getBytes(StandardCharsets.UTF_8)));
+            when(resp.getEntity()).thenReturn(entity);
+            return resp;
+        });
+
+        cached.aggregate("user", "class-average.json", new DummyParams(1L));
+        cached.aggregate("user", "class-average.json", new DummyParams(1L));
+        verify(mockClient, times(1)).performRequest(any(Request.class));
+
+        cached.delete("user", "42");
+        cached.aggregate("user", "class-average.json", new DummyParams(1L));
+        verify(mockClient, times(3)).performRequest(any(Request.class));
+    }
+
+    @Test
+    void create_usesKeyFieldAsDocumentId() throws Exception {
+        ElasticsearchService keyed = new ElasticsearchService(mockClient, tpl, null, null, null, null,
+            new DocumentIdStrategy("user=userId"), null, null, false);
+        Response resp = mock(Response.class);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream("{\"result\":\"created\"}".getBytes(StandardCharsets.UTF_8)));
+        when(resp.getEntity()).thenReturn(entity);
+        when(mockClient.performRequest(any(Request.class))).thenReturn(resp);
+
+        keyed.create("user", "{\"userId\":1234,\"userName\":\"Alice\"}");
+
+        ArgumentCaptor<Request> cap = ArgumentCaptor.forClass(Request.class);
+        verify(mockClient).performRequest(cap.capture());
+        assertEquals("PUT", cap.getValue().getMethod());
+        assertEquals("/user/_create/1234", cap.getValue().getEndpoint());
+    }
+
+    @Test
+    void create_parsesTheDocumentOnceForIdEnrichmentAndValidation() throws Exception {
+        SchemaRegistry schemas = new SchemaRegistry();
+        schemas.loadAll();
+        DocumentIdStrategy ids = spy(new DocumentIdStrategy("user=userId"));
+        DocumentValidator validator = spy(new DocumentValidator(schemas, true, "user=user", 256, 1));
+        ElasticsearchService service = new ElasticsearchService(mockClient, tpl, null, null, null, null, ids, validator,
+            new DocumentEnricher("user=courses:courseCount"), false);
+        Response resp = mock(Response.class);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream("{\"result\":\"created\"}".getBytes(StandardCharsets.UTF_8)));
+        when(resp.getEntity()).thenReturn(entity);
+        when(mockClient.performRequest(any(Request.class))).thenReturn(resp);
+
+        service.create("user", "{\"userId\":1234,\"userName\":\"Alice\",\"courses\":[\"Physics\",\"Chemistry\"],\"grades\":[]}");
+
+        ArgumentCaptor<Request> cap = ArgumentCaptor.forClass(Request.class);
+        verify(mockClient).performRequest(cap.capture());
+        assertEquals("/user/_create/1234", cap.getValue().getEndpoint());
+        assertTrue(EntityUtils.toString(cap.getValue().getEntity()).contains("\"courseCount\":2"));
+        verify(ids, never()).idFor(anyString(), anyString());
+        verify(validator, never()).validate(anyString(), any(), anyString());
+        verify(validator).validate(eq("user"), eq("1234"), any(JsonNode.class));
+        validator.close();
+    }
+
+    @Test
+    void invalidWritesNeverReachTheCluster() throws Exception {
+        SchemaRegistry schemas = new SchemaRegistry();
+        schemas.loadAll();
+        DocumentValidator validator = new DocumentValidator(schemas, true, "user=user", 256, 1);
+        ElasticsearchService validated = new ElasticsearchService(mockClient, tpl, null, null, null, null, null, validator, null, false);
+
+        DocumentValidationException e = assertThrows(DocumentValidationException.class,
+            () -> validated.create("user", "1", "{\"userId\":\"one\",\"userName\":\"Alice\",\"courses\":[],\"grades\":[]}"));
+        assertEquals("$.userId", e.getRejections().get(0).violations().get(0).path());
+        assertThrows(DocumentValidationException.class, () -> validated.partialUpdate("user", "1", "{\"courses\":\"Physics\"}"));
+        ExecutionException async = assertThrows(ExecutionException.class,
+            () -> validated.bulkAsync("user", "{\"index\":{\"_id\":\"1\"}}\n{\"userName\":\"Bob\"}\n").get());
+        assertInstanceOf(DocumentValidationException.class, async.getCause());
+        verifyNoInteractions(mockClient);
+    }
+
+    @Test
+    void writesMaintainDerivedCounts() throws Exception {
+        ElasticsearchService enriched = new ElasticsearchService(mockClient, tpl, null, null, null, null, null, null,
+            new DocumentEnricher("user=courses:courseCount"), false);
+        Response resp = mock(Response.class);
+        when(resp.getEntity()).thenAnswer(inv -> {
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(new ByteArrayInputStream("{\"result\":\"created\"}".getBytes(StandardCharsets.UTF_8)));
+            return entity;
+        });
+        when(mockClient.performRequest(any(Request.class))).thenReturn(resp);
+
+        enriched.create("user", "1", "{\"userId\":1,\"courses\":[\"Physics\",\"Chemistry\"]}");
+        enriched.partialUpdate("user", "1", "{\"courses\":[\"Physics\"]}");
+        enriched.backfillDerivedFields("user");
+
+        ArgumentCaptor<Request> cap = ArgumentCaptor.forClass(Request.class);
+        verify(mockClient, times(3)).performRequest(cap.capture());
+        List<Request> requests = cap.getAllValues();
+        assertTrue(EntityUtils.toString(requests.get(0).getEntity()).contains("\"courseCount\":2"));
+        assertTrue(EntityUtils.toString(requests.get(1).getEntity()).contains("\"courseCount\":1"));
+        assertEquals("/user/_update_by_query", requests.get(2).getEndpoint());
+        assertEquals("false", requests.get(2).getParameters().get("wait_for_completion"));
+        assertThrows(IllegalArgumentException.class, () -> enriched.backfillDerivedFields("logs"));
+    }
 }
@@ -0,0 +1,145 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.support.StubElasticsearchServer;
+import com.example.elasticsearch.support.StubElasticsearchServer.StubRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportServiceTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<StubRequest> searches = new CopyOnWriteArrayList<>();
+    private final List<String> closed = new CopyOnWriteArrayList<>();
+    private StubElasticsearchServer stub;
+    private RestClient client;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        stub.close();
+    }
+
+    @Test
+    void exportsEveryPageAndClosesThePointInTime() throws Exception {
+        ExportService export = service(25, 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long exported = export.export("users", "{\"query\":{\"term\":{\"active\":true}}}", out);
+
+        List<JsonNode> lines = out.toString(StandardCharsets.UTF_8).lines().map(this::read).toList();
+        assertEquals(25, exported);
+        assertEquals(25, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(String.valueOf(i), lines.get(i).get("_id").asText());
+            assertEquals(i, lines.get(i).path("_source").path("userId").asInt());
+            assertFalse(lines.get(i).has("sort"));
+        }
+
+        assertEquals(3, searches.size());
+        JsonNode first = read(searches.get(0).body());
+        assertEquals("pit-0", first.path("pit").path("id").asText());
+        assertTrue(first.path("query").has("term"));
+        assertFalse(first.has("search_after"));
+        assertTrue(searches.get(0).query().startsWith("filter_path="));
+        // every page continues from the last sort values, on the point in time id ES last returned
+        JsonNode third = read(searches.get(2).body());
+        assertEquals("pit-2", third.path("pit").path("id").asText());
+        assertEquals(19, third.path("search_after").get(0).asInt());
+
+        assertEquals(List.of("pit-3"), closed);
+        assertEquals(0, export.getOpenCount());
+        assertEquals(25, export.getExportedDocumentCount());
+    }
+
+    @Test
+    void stopsOnAnEmptyPageWhenTheLastPageIsFull() throws Exception {
+        ExportService export = service(20, 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(20, export.export("users", null, out));
+        assertEquals(3, searches.size());
+        assertEquals(1, closed.size());
+    }
+
+    @Test
+    void closesThePointInTimeWhenTheClientGoesAway() throws Exception {
+        ExportService export = service(100, 10);
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class, () -> export.export("users", null, disconnected));
+        // the first page was written (and failed) while the prefetched second one was in flight
+        assertEquals(1, closed.size());
+        assertEquals(0, export.getOpenCount());
+    }
+
+    @Test
+    void rejectsUnsupportedOptionsBeforeOpeningAPointInTime() throws Exception {
+        ExportService export = service(10, 10);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> export.export("users", "{\"size\":5}", new ByteArrayOutputStream()));
+        assertEquals(0, stub.requestCount());
+    }
+
+    // Stub cluster holding docs documents with _id i and sort value i; each answer hands out a new pit id
+    private ExportService service(int docs, int pageSize) throws IOException {
+        stub = StubElasticsearchServer.start(Duration.ZERO, request -> answer(request, docs));
+        client = RestClient.builder(stub.host()).build();
+        return new ExportService(client, pageSize, Duration.ofMinutes(1));
+    }
+
+    private String answer(StubRequest request, int docs) {
+        if (request.path().endsWith("/_pit") && "POST".equals(request.method())) {
+            return "{\"id\":\"pit-0\"}";
+        }
+        if ("DELETE".equals(request.method())) {
+            closed.add(read(request.body()).path("id").asText());
+            return "{\"succeeded\":true,\"num_freed\":1}";
+        }
+        searches.add(request);
+        JsonNode search = read(request.body());
+        int from = search.has("search_after") ? search.path("search_after").get(0).asInt() + 1 : 0;
+        int to = Math.min(docs, from + search.path("size").asInt());
+        ObjectNode response = mapper.createObjectNode().put("pit_id", "pit-" + searches.size());
+        ArrayNode hits = response.putObject("hits").putArray("hits");
+        for (int i = from; i < to; i++) {
+            ObjectNode hit = hits.addObject().put("_id", String.valueOf(i));
+            hit.putObject("_source").put("userId", i);
+            hit.putArray("sort").add(i);
+        }
+        return response.toString();
+    }
+
+    private JsonNode read(String json) {
+        try {
+            return mapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.service.FunctionCallCache.ResolvedCall;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FunctionCallCacheTest {
+    private final ResolvedCall maxInMath = new ResolvedCall("getCourseMaxScore",
+        new ObjectMapper().createObjectNode().put("course", "math"));
+
+    @Test
+    void testNormalizedQueriesShareAnEntry() {
+        FunctionCallCache cache = new FunctionCallCache(true, 100, Duration.ofMinutes(5));
+        cache.put("v1", "Max score in math?", maxInMath);
+
+        assertSame(maxInMath, cache.get("v1", "  max   SCORE in Math "));
+        assertSame(maxInMath, cache.get("v1", "max score in math!!"));
+        assertNull(cache.get("v1", "max score in physics"));
+    }
+
+    @Test
+    void testChangedFunctionSetClearsCache() {
+        FunctionCallCache cache = new FunctionCallCache(true, 100, Duration.ofMinutes(5));
+        cache.put("v1", "max score in math", maxInMath);
+
+        assertNull(cache.get("v2", "max score in math"));
+        assertNull(cache.get("v1", "max score in math"));
+    }
+
+    @Test
+    void testHitsCreditAverageLlmLatency() {
+        FunctionCallCache cache = new FunctionCallCache(true, 100, Duration.ofMinutes(5));
+        cache.recordLlmCall(Duration.ofMillis(300).toNanos());
+        cache.recordLlmCall(Duration.ofMillis(500).toNanos());
+        cache.put("v1", "max score in math", maxInMath);
+
+        cache.get("v1", "max score in math");
+        cache.get("v1", "max score in math");
+
+        assertEquals(800.0, cache.getSavedLlmTimeMillis(), 0.001);
+        assertEquals(2, cache.getLlmCallCount());
+    }
+
+    @Test
+    void testDisabledOrNullQueryNeverHits() {
+        FunctionCallCache disabled = new FunctionCallCache(false, 100, Duration.ofMinutes(5));
+        disabled.put("v1", "max score in math", maxInMath);
+        assertNull(disabled.get("v1", "max score in math"));
+        assertNull(new FunctionCallCache(true, 100, Duration.ofMinutes(5)).get("v1", null));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.service.FunctionCallCache.ResolvedCall;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Offline accuracy and latency checks for the local intent router over a labeled query set.
+ * Runs without network access; the LLM is never involved.
+ */
+public class IntentRouterTest {
+    private static final double THRESHOLD = 0.8;
+
+    private record Labeled(String query, String function, String course) { }
+
+    @Test
+    void testAccuracyOnLabeledQueries() throws Exception {
+        IntentRouter router = new IntentRouter(true, THRESHOLD);
+        List<Labeled> corpus = corpus();
+        int routable = 0;
+        int routed = 0;
+        int correct = 0;
+        List<String> errors = new ArrayList<>();
+        for (Labeled labeled : corpus) {
+            boolean expectLocal = !labeled.function().equals("LLM");
+            if (expectLocal) {
+                routable++;
+            }
+            ResolvedCall call = router.route(labeled.query());
+            if (call == null) {
+                if (expectLocal) {
+                    errors.add("fell through: " + labeled.query());
+                }
+                continue;
+            }
+            routed++;
+            String course = call.arguments().has("course") ? call.arguments().get("course").asText() : "-";
+            if (call.name().equals(labeled.function()) && course.equals(labeled.course())) {
+                correct++;
+            } else {
+                errors.add("misrouted: " + labeled.query() + " -> " + call.name() + " " + call.arguments());
+            }
+        }
+        double precision = (double) correct / routed;
+        double coverage = (double) correct / routable;
+        System.out.printf("intent router: %d queries, threshold %.2f, routed %d locally, precision %.3f, coverage %.3f%n",
+            corpus.size(), THRESHOLD, routed, precision, coverage);
+        errors.forEach(e -> System.out.println("  " + e));
+
+        // a wrong local route costs more than an LLM round trip, so precision is held to a higher bar
+        assertTrue(precision >= 0.95, "precision " + precision + ": " + errors);
+        assertTrue(coverage >= 0.85, "coverage " + coverage + ": " + errors);
+        assertEquals(routed, router.getRoutedLocallyCount());
+        assertEquals(corpus.size() - routed, router.getFallThroughCount());
+    }
+
+    @Test
+    void testClassificationLatency() throws Exception {
+        IntentRouter router = new IntentRouter(true, THRESHOLD);
+        List<Labeled> corpus = corpus();
+        for (int i = 0; i < 2_000; i++) {
+            router.classify(corpus.get(i % corpus.size()).query());
+        }
+        // timed in batches so that a single GC pause in the test JVM does not dominate the percentile
+        int batches = 1_000;
+        int batchSize = 50;
+        long[] perCallNanos = new long[batches];
+        for (int b = 0; b < batches; b++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                router.classify(corpus.get((b * batchSize + i) % corpus.size()).query());
+            }
+            perCallNanos[b] = (System.nanoTime() - start) / batchSize;
+        }
+        Arrays.sort(perCallNanos);
+        double p50 = perCallNanos[batches / 2] / 1000.0;
+        double p99 = perCallNanos[(int) (batches * 0.99)] / 1000.0;
+        System.out.printf("intent router latency per query: p50 %.1f us, p99 %.1f us%n", p50, p99);
+        assertTrue(p99 < 1000, "p99 classification latency should stay well below a millisecond, was " + p99 + " us");
+    }
+
+    @Test
+    void testDisabledRouterAlwaysFallsThrough() {
+        assertNull(new IntentRouter(false, THRESHOLD).route("class average"));
+    }
+
+    private static List<Labeled> corpus() throws Exception {
+        List<Labeled> corpus = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                IntentRouterTest.class.getResourceAsStream("/intent-router/labeled-queries.tsv"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] cols = line.split("\t");
+                corpus.add(new Labeled(cols[0], cols[1], cols[2]));
+            }
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.query.CourseMaxParams;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class McpServerTest {
+
+    @Mock
+    private ElasticsearchService es;
+
+    private McpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SchemaRegistry schemas = new SchemaRegistry();
+        schemas.loadAll();
+        server = new McpServer(es, new ToolCatalog("classpath*:mcp-tools/*.yml", new DefaultResourceLoader(), schemas,
+            new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper())), schemas);
+    }
+
+    @Test
+    void testInitializeNegotiatesProtocolVersion() throws Exception {
+        JsonNode response = call("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{\"protocolVersion\":\"2024-11-05\"}}");
+
+        assertEquals(1, response.get("id").asInt());
+        assertEquals("2024-11-05", response.get("result").get("protocolVersion").asText());
+        assertTrue(response.get("result").get("capabilities").has("tools"));
+        assertTrue(response.get("result").get("capabilities").has("resources"));
+        assertNull(server.handle(mapper.readTree("{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}")).get());
+    }
+
+    @Test
+    void testToolsListIncludesTemplateAndDocumentTools() throws Exception {
+        JsonNode tools = call("{\"jsonrpc\":\"2.0\",\"id\":\"a\",\"method\":\"tools/list\"}").get("result").get("tools");
+
+        List<String> names = new ArrayList<>();
+        tools.forEach(tool -> names.add(tool.get("name").asText()));
+        assertEquals(List.of("showUsersInCourse", "showUsersInMultipleCourses", "getClassAverageScore", "getCourseMaxScore",
+            "createDocument", "deleteDocument", "getDocument", "updateDocument"), names);
+        JsonNode courseMax = tools.get(3).get("inputSchema");
+        assertEquals("string", courseMax.get("properties").get("course").get("type").asText());
+        assertEquals("course", courseMax.get("required").get(0).asText());
+    }
+
+    @Test
+    void testToolCallRunsTemplateAsynchronously() throws Exception {
+        CompletableFuture<JsonNode> search = new CompletableFuture<>();
+        when(es.aggregateAsync("user", "course-max.json", new CourseMaxParams("Physics"))).thenReturn(search);
+
+        CompletableFuture<JsonNode> response = server.handle(mapper.readTree(
+            "{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"tools/call\",\"params\":{\"name\":\"getCourseMaxScore\",\"arguments\":{\"course\":\"Physics\"}}}"));
+        assertFalse(response.isDone());
+        search.complete(mapper.readTree("{\"took\":1}"));
+
+        JsonNode result = response.get().get("result");
+        assertFalse(result.get("isError").asBoolean());
+        assertEquals(1, result.get("structuredContent").get("took").asInt());
+        assertEquals("{\"took\":1}", result.get("content").get(0).get("text").asText());
+    }
+
+    @Test
+    void testToolFailuresAreReportedInTheResult() throws Exception {
+        when(es.readAsync("user", "42")).thenReturn(CompletableFuture.failedFuture(new IOException("not found")));
+
+        JsonNode missingArg = call("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"getCourseMaxScore\",\"arguments\":{}}}");
+        JsonNode esFailure = call("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/call\",\"params\":{\"name\":\"getDocument\",\"arguments\":{\"index\":\"user\",\"id\":\"42\"}}}");
+
+        assertTrue(missingArg.get("result").get("isError").asBoolean());
+        assertEquals("Missing required parameter: course", missingArg.get("result").get("structuredContent").get("error").asText());
+        assertTrue(esFailure.get("result").get("isError").asBoolean());
+        assertEquals("not found", esFailure.get("result").get("structuredContent").get("error").asText());
+    }
+
+    @Test
+    void testCreateDocumentPassesDocumentJson() throws Exception {
+        when(es.createAsync("user", "{\"userId\":5}")).thenReturn(CompletableFuture.completedFuture(mapper.readTree("{\"result\":\"created\"}")));
+
+        JsonNode response = call("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"createDocument\",\"arguments\":{\"index\":\"user\",\"document\":{\"userId\":5}}}}");
+
+        assertEquals("created", response.get("result").get("structuredContent").get("result").asText());
+    }
+
+    @Test
+    void testResourcesExposeSchemas() throws Exception {
+        JsonNode resources = call("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"resources/list\"}").get("result").get("resources");
+        assertEquals("schema://user", resources.get(0).get("uri").asText());
+
+        JsonNode contents = call("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"resources/read\",\"params\":{\"uri\":\"schema://user\"}}")
+            .get("result").get("contents");
+        assertEquals("User", mapper.readTree(contents.get(0).get("text").asText()).get("title").asText());
+
+        JsonNode missing = call("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"resources/read\",\"params\":{\"uri\":\"schema://nope\"}}");
+        assertEquals(McpServer.RESOURCE_NOT_FOUND, missing.get("error").get("code").asInt());
+    }
+
+    @Test
+    void testProtocolErrors() throws Exception {
+        assertEquals(McpServer.METHOD_NOT_FOUND, call("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"nope\"}").get("error").get("code").asInt());
+        assertEquals(McpServer.INVALID_REQUEST, call("{\"id\":1,\"method\":\"ping\"}").get("error").get("code").asInt());
+        assertEquals(McpServer.INVALID_PARAMS, call("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"dropIndex\"}}")
+            .get("error").get("code").asInt());
+        assertEquals(McpServer.INVALID_REQUEST, call("[]").get("error").get("code").asInt());
+    }
+
+    @Test
+    void testBatchRunsCallsConcurrentlyAndSkipsNotifications() throws Exception {
+        CompletableFuture<JsonNode> first = new CompletableFuture<>();
+        CompletableFuture<JsonNode> second = new CompletableFuture<>();
+        when(es.readAsync("user", "1")).thenReturn(first);
+        when(es.readAsync("user", "2")).thenReturn(second);
+
+        CompletableFuture<JsonNode> response = server.handle(mapper.readTree("["
+            + "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"getDocument\",\"arguments\":{\"index\":\"user\",\"id\":\"1\"}}},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"},"
+            + "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/call\",\"params\":{\"name\":\"getDocument\",\"arguments\":{\"index\":\"user\",\"id\":\"2\"}}}]"));
+        // both ES calls are out before either answers
+        verify(es).readAsync("user", "1");
+        verify(es).readAsync("user", "2");
+        second.complete(mapper.readTree("{\"_id\":\"2\"}"));
+        first.complete(mapper.readTree("{\"_id\":\"1\"}"));
+
+        JsonNode batch = response.get();
+        assertEquals(2, batch.size());
+        assertEquals(1, batch.get(0).get("id").asInt());
+        assertEquals("2", batch.get(1).get("result").get("structuredContent").get("_id").asText());
+    }
+
+    private JsonNode call(String json) throws Exception {
+        return server.handle(mapper.readTree(json)).get();
+    }
+}
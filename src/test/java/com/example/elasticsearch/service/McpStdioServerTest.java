@@ -0,0 +1,58 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class McpStdioServerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testPipelinedRequestsAnswerAsTheyComplete() throws Exception {
+        McpServer server = mock(McpServer.class);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            when(server.handle(any())).thenAnswer(invocation -> {
+                JsonNode request = invocation.getArgument(0);
+                if (!request.has("id")) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                // the first request is the slowest, so its response comes last
+                long delay = request.get("id").asInt() == 1 ? 200 : 10;
+                CompletableFuture<JsonNode> response = new CompletableFuture<>();
+                timer.schedule(() -> response.complete(mapper.createObjectNode().put("jsonrpc", "2.0")
+                    .set("id", request.get("id"))), delay, TimeUnit.MILLISECONDS);
+                return response;
+            });
+            when(server.parseError(any())).thenReturn(mapper.createObjectNode().put("error", "parse"));
+            String input = """
+                {"jsonrpc":"2.0","id":1,"method":"tools/call"}
+                {"jsonrpc":"2.0","method":"notifications/initialized"}
+
+                {"jsonrpc":"2.0","id":2,"method":"ping"}
+                not json
+                """;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            new McpStdioServer(server, null).serve(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+
+            List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+            assertEquals(List.of("{\"error\":\"parse\"}", "{\"jsonrpc\":\"2.0\",\"id\":2}", "{\"jsonrpc\":\"2.0\",\"id\":1}"), lines);
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+}
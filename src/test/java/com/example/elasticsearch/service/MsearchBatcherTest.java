@@ -0,0 +1,111 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class MsearchBatcherTest {
+    private RestClient client;
+    private MsearchBatcher batcher;
+    private final List<String> bodies = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        client = mock(RestClient.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    private void respondWith(String json) {
+        doAnswer(inv -> {
+            Request req = inv.getArgument(0);
+            bodies.add(EntityUtils.toString(req.getEntity()));
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+            Response response = mock(Response.class);
+            when(response.getEntity()).thenReturn(entity);
+            inv.<ResponseListener>getArgument(1).onSuccess(response);
+            return null;
+        }).when(client).performRequestAsync(any(Request.class), any(ResponseListener.class));
+    }
+
+    @Test
+    void testFullBatchIsSentAsOneMsearch() throws Exception {
+        respondWith("{\"responses\":["
+            + "{\"hits\":{\"total\":{\"value\":1}},\"status\":200},"
+            + "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404},"
+            + "{\"hits\":{\"total\":{\"value\":3}},\"status\":200}]}");
+        batcher = new MsearchBatcher(client, true, Duration.ofSeconds(10), 3);
+
+        CompletableFuture<JsonNode> first = batcher.search("user", "{\n  \"query\": {\"term\": {\"userId\": 1}}\n}");
+        CompletableFuture<JsonNode> missing = batcher.search("nope", "{}");
+        CompletableFuture<JsonNode> third = batcher.search("user", "{\"size\":0}");
+
+        assertEquals(1, first.get(1, TimeUnit.SECONDS).path("hits").path("total").path("value").asInt());
+        assertFalse(first.get().has("status"));
+        assertEquals(3, third.get(1, TimeUnit.SECONDS).path("hits").path("total").path("value").asInt());
+        ExecutionException e = assertThrows(ExecutionException.class, missing::get);
+        assertEquals(404, ((MsearchItemException) e.getCause()).getStatus());
+
+        assertEquals(1, bodies.size());
+        List<String> lines = bodies.get(0).lines().toList();
+        assertEquals(6, lines.size());
+        assertEquals("{\"index\":\"user\"}", lines.get(0));
+        assertEquals("{   \"query\": {\"term\": {\"userId\": 1}} }", lines.get(1));
+        assertEquals("{\"index\":\"nope\"}", lines.get(2));
+        assertEquals(1, batcher.getBatchCount());
+        assertEquals(3, batcher.getBatchedSearchCount());
+    }
+
+    @Test
+    void testWindowFlushesPartialBatch() throws Exception {
+        respondWith("{\"responses\":[{\"hits\":{\"total\":{\"value\":1}},\"status\":200}]}");
+        batcher = new MsearchBatcher(client, true, Duration.ofMillis(1), 64);
+
+        JsonNode result = batcher.search("user", "{}").get(1, TimeUnit.SECONDS);
+
+        assertEquals(1, result.path("hits").path("total").path("value").asInt());
+        assertEquals(1, bodies.size());
+    }
+
+    @Test
+    void testRequestFailureFailsEveryCaller() {
+        doAnswer(inv -> {
+            inv.<ResponseListener>getArgument(1).onFailure(new IOException("connection refused"));
+            return null;
+        }).when(client).performRequestAsync(any(Request.class), any(ResponseListener.class));
+        batcher = new MsearchBatcher(client, true, Duration.ofSeconds(10), 2);
+
+        CompletableFuture<JsonNode> first = batcher.search("user", "{}");
+        CompletableFuture<JsonNode> second = batcher.search("user", "{\"size\":1}");
+
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, first::get).getCause());
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, second::get).getCause());
+    }
+}
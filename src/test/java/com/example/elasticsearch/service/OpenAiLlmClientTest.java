@@ -0,0 +1,121 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.support.StubLlmServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatFunctionCall;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OpenAiLlmClient against the in-process stub endpoint: resolution through the
+ * configured base URL, and the timeout, retry, circuit-breaker and concurrency bounds.
+ */
+public class OpenAiLlmClientTest {
+    private final List<ChatMessage> question = List.of(new ChatMessage("user", "Show users in Mathematics"));
+    private StubLlmServer stub;
+    private OpenAiLlmClient client;
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    private OpenAiLlmClient client(Duration timeout, int maxConcurrent, int retries, int failureThreshold) {
+        return new OpenAiLlmClient("test-key", stub.baseUrl(), "gpt-4o-mini", Duration.ofSeconds(1), timeout,
+            4, Duration.ofMinutes(1), maxConcurrent, Duration.ZERO, retries, Duration.ofMillis(10),
+            failureThreshold, Duration.ofSeconds(30));
+    }
+
+    @Test
+    void testResolvesFunctionCallFromConfiguredEndpoint() throws Exception {
+        stub = StubLlmServer.start(Duration.ZERO);
+        client = client(Duration.ofSeconds(2), 4, 0, 5);
+
+        SchemaRegistry schemas = new SchemaRegistry();
+        schemas.loadAll();
+        ToolCatalog tools = new ToolCatalog("classpath*:mcp-tools/*.yml", new DefaultResourceLoader(), schemas,
+            new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper()));
+
+        ChatCompletionResult result = client.complete(question, tools.functions());
+
+        ChatFunctionCall call = result.getChoices().get(0).getMessage().getFunctionCall();
+        assertEquals("showUsersInCourse", call.getName());
+        assertEquals("Mathematics", call.getArguments().get("course").asText());
+        assertEquals(1, stub.requestCount());
+        assertEquals(1, client.getCallCount());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    void testServerErrorIsRetried() throws Exception {
+        stub = StubLlmServer.start(n -> Duration.ZERO, n -> n == 1 ? 503 : 200);
+        client = client(Duration.ofSeconds(2), 4, 1, 5);
+
+        client.complete(question, List.of());
+
+        assertEquals(2, stub.requestCount());
+        assertEquals(1, client.getRetryCount());
+        assertEquals(0, client.getFailureCount());
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitState());
+    }
+
+    @Test
+    void testTimeoutsOpenTheCircuit() throws Exception {
+        // the first answer is fast, to warm up the HTTP stack before timing calls
+        stub = StubLlmServer.start(n -> n == 1 ? Duration.ZERO : Duration.ofMillis(500), n -> 200);
+        OpenAiLlmClient warmUp = client(Duration.ofSeconds(5), 4, 0, 5);
+        warmUp.complete(question, List.of());
+        warmUp.close();
+        client = client(Duration.ofMillis(100), 4, 1, 2);
+
+        for (int i = 0; i < 2; i++) {
+            long start = System.nanoTime();
+            assertThrows(RuntimeException.class, () -> client.complete(question, List.of()));
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 400, "the call timeout bounds latency");
+        }
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitState());
+        assertEquals(0, client.getRetryCount(), "timed-out calls are not retried");
+
+        long start = System.nanoTime();
+        LlmUnavailableException rejected = assertThrows(LlmUnavailableException.class,
+            () -> client.complete(question, List.of()));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 50, "an open circuit fails fast");
+        assertTrue(rejected.getRetryAfter().toSeconds() > 0);
+        assertEquals(3, stub.requestCount(), "an open circuit does not reach the endpoint");
+        assertEquals(2, client.getFailureCount());
+        assertEquals(1, client.getRejectedCount());
+    }
+
+    @Test
+    void testConcurrencyLimitShedsExcessCalls() throws Exception {
+        stub = StubLlmServer.start(Duration.ofMillis(300));
+        client = client(Duration.ofSeconds(2), 1, 0, 5);
+
+        CompletableFuture<ChatCompletionResult> first = CompletableFuture.supplyAsync(() -> client.complete(question, List.of()));
+        long deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+        while (client.getInFlight() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertThrows(LlmUnavailableException.class, () -> client.complete(question, List.of()));
+        assertNotNull(first.get());
+        assertEquals(1, stub.requestCount());
+        assertEquals(1, client.getRejectedCount());
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitState(), "shed calls are not endpoint failures");
+    }
+}
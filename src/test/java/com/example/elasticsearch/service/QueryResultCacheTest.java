@@ -0,0 +1,93 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryResultCacheTest {
+    private final JsonNode result = new ObjectMapper().createObjectNode().put("took", 1);
+
+    private QueryResultCache cache(Duration refreshInterval) {
+        return new QueryResultCache(true, 100, Duration.ofSeconds(30), "course-max.json=0s", refreshInterval);
+    }
+
+    @Test
+    void testHitForSameIndexAndBody() {
+        QueryResultCache cache = cache(Duration.ZERO);
+        cache.put(cache.lookup("user", "class-average.json", "GET", "/_search", "{}"), result);
+
+        assertSame(result, cache.get(cache.lookup("user", "class-average.json", "GET", "/_search", "{}")));
+        assertNull(cache.get(cache.lookup("user", "class-average.json", "GET", "/_search", "{\"size\":1}")));
+        assertNull(cache.get(cache.lookup("other", "class-average.json", "GET", "/_search", "{}")));
+    }
+
+    @Test
+    void testWriteInvalidatesOnlyItsIndex() {
+        QueryResultCache cache = cache(Duration.ZERO);
+        cache.put(cache.lookup("user", "t", "GET", "/_search", "{}"), result);
+        cache.put(cache.lookup("course", "t", "GET", "/_search", "{}"), result);
+
+        cache.invalidate("user");
+
+        assertNull(cache.get(cache.lookup("user", "t", "GET", "/_search", "{}")));
+        assertSame(result, cache.get(cache.lookup("course", "t", "GET", "/_search", "{}")));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    void testResultFromBeforeWriteIsNotStored() {
+        QueryResultCache cache = cache(Duration.ZERO);
+        QueryResultCache.Lookup inFlight = cache.lookup("user", "t", "GET", "/_search", "{}");
+
+        cache.invalidate("user");
+        cache.put(inFlight, result);
+
+        assertNull(cache.get(cache.lookup("user", "t", "GET", "/_search", "{}")));
+    }
+
+    @Test
+    void testNothingCachedWithinRefreshIntervalAfterWrite() {
+        QueryResultCache cache = cache(Duration.ofMinutes(1));
+        cache.invalidate("user");
+        cache.put(cache.lookup("user", "t", "GET", "/_search", "{}"), result);
+
+        assertNull(cache.get(cache.lookup("user", "t", "GET", "/_search", "{}")));
+    }
+
+    @Test
+    void testUncacheableTargets() {
+        QueryResultCache cache = cache(Duration.ZERO);
+        assertNull(cache.lookup("user", "course-max.json", "GET", "/_search", "{}"));
+        assertNull(cache.lookup("user,course", "t", "GET", "/_search", "{}"));
+        assertNull(cache.lookup("user-*", "t", "GET", "/_search", "{}"));
+        assertNull(new QueryResultCache(false, 100, Duration.ofSeconds(30), "", Duration.ZERO)
+            .lookup("user", "t", "GET", "/_search", "{}"));
+    }
+
+    @Test
+    void testIndexStatesAreBoundedLikeTheEntries() {
+        QueryResultCache cache = cache(Duration.ZERO);
+        for (int i = 0; i < 1_000; i++) {
+            cache.lookup("index-" + i, "t", "GET", "/_search", "{}");
+        }
+
+        assertTrue(cache.getIndexCount() <= 100, "index states: " + cache.getIndexCount());
+    }
+
+    @Test
+    void testEvictedIndexStateKeepsItsRefreshWindow() {
+        QueryResultCache cache = cache(Duration.ofMinutes(1));
+        cache.invalidate("user");
+        for (int i = 0; i < 1_000; i++) {
+            cache.lookup("index-" + i, "t", "GET", "/_search", "{}");
+        }
+
+        cache.put(cache.lookup("user", "t", "GET", "/_search", "{}"), result);
+
+        assertNull(cache.get(cache.lookup("user", "t", "GET", "/_search", "{}")));
+    }
+}
@@ -1,11 +1,15 @@
 package com.example.elasticsearch.service;
 
 import com.example.elasticsearch.query.QueryParams;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.core.io.DefaultResourceLoader;
+import com.example.elasticsearch.query.UserTemplateParams;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 public class QueryTemplateServiceTest {
     private QueryTemplateService tpl;
@@ -22,4 +26,79 @@ public class QueryTemplateServiceTest {
         String rendered = tpl.render("test", "test.json", new TestParams("World"));
         assertEquals("{ \"greeting\": \"Hello, World!\" }", rendered.trim());
     }
+
+    @Test
+    void preloadedTemplatesAreNeverRecompiled() {
+        int loaded = tpl.reload();
+        assertTrue(loaded >= 1);
+        long compilations = tpl.getCompilations();
+
+        tpl.render("test", "test.json", new TestParams("World"));
+        tpl.render("test", "test.json", new TestParams("Again"));
+
+        assertEquals(compilations, tpl.getCompilations());
+        assertEquals(2, tpl.getCacheHits());
+    }
+
+    @Test
+    void reloadReplacesRegistry() {
+        tpl.render("test", "test.json", new TestParams("World"));
+        assertEquals(1, tpl.getCompilations());
+
+        int loaded = tpl.reload();
+        assertEquals(loaded, tpl.getCompiledTemplateCount());
+        assertEquals("{ \"greeting\": \"Hello, Reloaded!\" }",
+            tpl.render("test", "test.json", new TestParams("Reloaded")).trim());
+    }
+
+    @Test
+    void projectionsAreLoadedPerTemplate() {
+        ResponseProjection search = tpl.projection("user", "simple-search.json");
+        assertEquals(List.of("userId", "userName"), search.source());
+        assertEquals(ResponseProjection.HITS_FILTER_PATH, search.filterPath());
+        assertEquals("{\"_source\":[\"userId\",\"userName\"]}", search.body("{}"));
+        // only a top-level _source counts as the template's own
+        assertEquals("{\"_source\":[\"userId\",\"userName\"],\"query\":{\"nested\":{\"path\":\"grades\",\"inner_hits\":{\"_source\":false}}}}",
+            search.body("{\"query\":{\"nested\":{\"path\":\"grades\",\"inner_hits\":{\"_source\":false}}}}"));
+        assertEquals("{\"_source\":false,\"size\":1}", search.body("{\"_source\":false,\"size\":1}"));
+        assertEquals("/_search?filter_path=" + ResponseProjection.HITS_FILTER_PATH, search.endpoint("/_search"));
+
+        assertEquals(List.of("grades"), search.withFields(List.of("grades")).source());
+        assertThrows(IllegalArgumentException.class, () -> search.withFields(List.of("password")));
+        assertThrows(IllegalArgumentException.class, () -> search.withFields(List.of()));
+
+        ResponseProjection aggregation = tpl.projection("user", "class-average.json");
+        assertEquals("{\"size\":0}", aggregation.body("{\"size\":0}"));
+        assertEquals("/_search?filter_path=took,hits.total,aggregations", aggregation.endpoint("/_search"));
+
+        assertSame(ResponseProjection.NONE, tpl.projection("test", "test.json"));
+    }
+
+    @Test
+    void operationPlansResolveIndexMethodAndEndpoint() {
+        OperationPlan search = tpl.getPlan("USER_OPERATIONS", "searchByUserId");
+        assertEquals("user", search.index());
+        assertEquals("GET", search.method());
+        assertEquals("/_search", search.endpoint());
+
+        OperationPlan msearch = tpl.getPlan("USER_OPERATIONS", "multiSearchUsers");
+        assertEquals("POST", msearch.method());
+        assertEquals("/_msearch", msearch.endpoint());
+
+        assertThrows(IllegalArgumentException.class, () -> tpl.getPlan("USER_OPERATIONS", "missing"));
+    }
+
+    @Test
+    void executeTemplateRendersPlanWithoutCompiling() throws Exception {
+        ElasticsearchService es = mock(ElasticsearchService.class);
+        tpl.getPlan("USER_OPERATIONS", "aggregateUsersByCourse");
+        long compilations = tpl.getCompilations();
+
+        tpl.executeTemplate("USER_OPERATIONS", "aggregateUsersByCourse", new UserTemplateParams(), es);
+        tpl.executeTemplate("USER_OPERATIONS", "aggregateUsersByCourse", new UserTemplateParams(), es);
+
+        assertEquals(compilations, tpl.getCompilations());
+        verify(es, times(2)).executePlan(argThat(plan -> plan.index().equals("user") && plan.method().equals("GET")
+            && plan.endpoint().equals("/_search")), contains("course_enrollment"));
+    }
 }
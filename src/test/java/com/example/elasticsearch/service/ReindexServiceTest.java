@@ -0,0 +1,195 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.support.StubElasticsearchServer;
+import com.example.elasticsearch.support.StubElasticsearchServer.StubRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReindexServiceTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, JsonNode> dest = new ConcurrentHashMap<>();
+    private final List<JsonNode> searches = new CopyOnWriteArrayList<>();
+    private final List<String> closed = new CopyOnWriteArrayList<>();
+    private final AtomicInteger bulks = new AtomicInteger();
+    private volatile boolean failBulksAfterTwo;
+    private int docs = 40;
+    private SchemaRegistry schemas;
+    private StubElasticsearchServer stub;
+    private RestClient client;
+    private ReindexService reindex;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        schemas = new SchemaRegistry();
+        schemas.loadAll();
+        stub = StubElasticsearchServer.start(Duration.ZERO, this::answer);
+        client = RestClient.builder(stub.host()).build();
+        reindex = new ReindexService(client, schemas, 2, 5, Duration.ofMinutes(1), 4, 5 << 20, 2, Duration.ofMillis(1));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        reindex.close();
+        client.close();
+        stub.close();
+    }
+
+    @Test
+    void copiesEverySliceAndSkipsInvalidDocuments() throws Exception {
+        docs = 50;
+        ReindexJob job = reindex.start(new ReindexJob.Spec("user", "user-v2", 3, null, List.of("validate"), null, null));
+
+        await(job);
+        assertEquals(ReindexJob.State.COMPLETED, job.getState());
+        // every tenth document has a string userId and fails the user schema
+        assertEquals(45, job.getCopied());
+        assertEquals(5, job.getFailed());
+        assertEquals(45, dest.size());
+        assertEquals("u7", dest.get("7").path("userName").asText());
+        assertFalse(dest.containsKey("10"));
+
+        JsonNode status = job.status();
+        assertEquals(50, status.path("total").asInt());
+        assertEquals(3, status.path("slices").size());
+        assertEquals(5, status.path("errors").size());
+        assertTrue(searches.stream().allMatch(s -> s.path("slice").path("max").asInt() == 3));
+        assertEquals(List.of("pit-1"), closed);
+    }
+
+    @Test
+    void resumesFromSliceCheckpointsAfterAFailedBulk() throws Exception {
+        failBulksAfterTwo = true;
+        ReindexJob job = reindex.start(new ReindexJob.Spec("user", "user-v2", 2, null, null, null, null));
+        await(job);
+        assertEquals(ReindexJob.State.FAILED, job.getState());
+        assertEquals(10, job.getCopied());
+        assertTrue(closed.isEmpty(), "the point in time stays open for a resume");
+
+        JsonNode checkpoints = job.status().path("slices");
+        int before = searches.size();
+        failBulksAfterTwo = false;
+        reindex.resume(job.getId());
+        await(job);
+
+        assertEquals(ReindexJob.State.COMPLETED, job.getState());
+        assertEquals(40, job.getCopied());
+        assertEquals(40, dest.size());
+        assertEquals(0, job.status().path("restarts").asInt());
+        // each slice picks up after its last acknowledged page rather than from the start
+        for (JsonNode slice : checkpoints) {
+            JsonNode firstAfterResume = searches.subList(before, searches.size()).stream()
+                .filter(s -> s.path("slice").path("id").asInt() == slice.path("id").asInt())
+                .findFirst().orElseThrow();
+            assertEquals(slice.path("checkpoint"), firstAfterResume.path("search_after"));
+        }
+    }
+
+    @Test
+    void throttlesAcrossSlices() throws Exception {
+        docs = 20;
+        long start = System.nanoTime();
+        ReindexJob job = reindex.start(new ReindexJob.Spec("user", "user-v2", 2, null, null, null, 50));
+        await(job);
+
+        assertEquals(20, job.getCopied());
+        // 20 documents at 50/s: the first page goes right away, the other three wait 100ms each
+        assertTrue(System.nanoTime() - start >= 250_000_000L);
+    }
+
+    @Test
+    void rejectsUnknownTransformsBeforeTouchingTheCluster() {
+        assertThrows(IllegalArgumentException.class,
+            () -> reindex.start(new ReindexJob.Spec("user", "user-v2", 2, null, List.of("uppercase"), null, null)));
+        assertEquals(0, stub.requestCount());
+    }
+
+    private static void await(ReindexJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (job.getState() == ReindexJob.State.RUNNING && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    // Stub cluster: source documents 0..docs-1 with sort value = id, sliced by id modulo max
+    private String answer(StubRequest request) {
+        if (request.path().endsWith("/_pit") && "POST".equals(request.method())) {
+            return "{\"id\":\"pit-1\"}";
+        }
+        if (request.path().endsWith("/_count")) {
+            return "{\"count\":" + docs + "}";
+        }
+        if ("DELETE".equals(request.method())) {
+            closed.add(read(request.body()).path("id").asText());
+            return "{\"succeeded\":true}";
+        }
+        if (request.path().endsWith("/_bulk")) {
+            return bulk(request.body());
+        }
+        JsonNode search = read(request.body());
+        if (search.path("size").asInt() == 0) {
+            return "{\"pit_id\":\"pit-1\",\"hits\":{\"hits\":[]}}";
+        }
+        searches.add(search);
+        int max = search.path("slice").path("max").asInt(1);
+        int slice = search.path("slice").path("id").asInt(0);
+        int after = search.has("search_after") ? search.path("search_after").get(0).asInt() : -1;
+        ObjectNode response = mapper.createObjectNode().put("pit_id", "pit-1");
+        ArrayNode hits = response.putObject("hits").putArray("hits");
+        for (int i = after + 1; i < docs && hits.size() < search.path("size").asInt(); i++) {
+            if (i % max == slice) {
+                ObjectNode hit = hits.addObject().put("_id", String.valueOf(i));
+                ObjectNode source = hit.putObject("_source").put("userName", "u" + i);
+                if (i % 10 == 0) {
+                    source.put("userId", "x" + i);
+                } else {
+                    source.put("userId", i);
+                }
+                source.putArray("courses");
+                source.putArray("grades");
+                hit.putArray("sort").add(i);
+            }
+        }
+        return response.toString();
+    }
+
+    private String bulk(String ndjson) {
+        if (failBulksAfterTwo && bulks.incrementAndGet() > 2) {
+            // closes the connection without an answer, like a node going away
+            throw new IllegalStateException("bulk refused");
+        }
+        List<String> lines = ndjson.lines().toList();
+        ArrayNode items = mapper.createArrayNode();
+        for (int i = 0; i + 1 < lines.size(); i += 2) {
+            String id = read(lines.get(i)).path("index").path("_id").asText();
+            dest.put(id, read(lines.get(i + 1)));
+            items.addObject().putObject("index").put("_id", id).put("status", 201);
+        }
+        return mapper.createObjectNode().put("errors", false).set("items", items).toString();
+    }
+
+    private JsonNode read(String json) {
+        try {
+            return mapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchHitReaderTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testHitsAreHandedOverInChunks() throws IOException {
+        StringBuilder hits = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            hits.append(i == 0 ? "" : ",").append("{\"_id\":\"").append(i).append("\",\"_source\":{\"userId\":").append(i).append("}}");
+        }
+        String json = "{\"took\":3,\"timed_out\":false,\"hits\":{\"total\":{\"value\":5,\"relation\":\"eq\"},"
+            + "\"max_score\":1.0,\"hits\":[" + hits + "]},\"aggregations\":{\"avg\":{\"value\":2.0}}}";
+        List<ArrayNode> chunks = new ArrayList<>();
+
+        ObjectNode summary = SearchHitReader.read(mapper, stream(json), 2, chunks::add);
+
+        assertEquals(List.of(2, 2, 1), chunks.stream().map(ArrayNode::size).toList());
+        assertEquals("4", chunks.get(2).get(0).get("_id").asText());
+        assertEquals(3, summary.get("took").asInt());
+        assertEquals(5, summary.get("hits").get("total").get("value").asInt());
+        assertEquals(5, summary.get("hits").get("returned").asLong());
+        assertFalse(summary.get("hits").has("hits"));
+        assertEquals(2.0, summary.get("aggregations").get("avg").get("value").asDouble());
+    }
+
+    @Test
+    void testResponseWithoutHitsHasEmptySummaryCount() throws IOException {
+        List<ArrayNode> chunks = new ArrayList<>();
+
+        ObjectNode summary = SearchHitReader.read(mapper,
+            stream("{\"took\":1,\"hits\":{\"total\":{\"value\":0},\"hits\":[]}}"), 10, chunks::add);
+
+        assertTrue(chunks.isEmpty());
+        assertEquals(0, summary.get("hits").get("returned").asLong());
+    }
+
+    @Test
+    void testRejectsNonObjectResponse() {
+        assertThrows(IOException.class, () -> SearchHitReader.read(mapper, stream("[1,2]"), 10, chunk -> {}));
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+    private final JsonNode result = new ObjectMapper().createObjectNode().put("took", 1);
+    private final SingleFlight flights = new SingleFlight(true);
+    private final AtomicInteger calls = new AtomicInteger();
+    private CompletableFuture<JsonNode> pending;
+
+    private final Supplier<CompletableFuture<JsonNode>> call = () -> {
+        calls.incrementAndGet();
+        pending = new CompletableFuture<>();
+        return pending;
+    };
+
+    @Test
+    void testConcurrentIdenticalReadsShareOneCall() throws Exception {
+        CompletableFuture<JsonNode> first = flights.execute("GET", "user", "/_search", "{}", call);
+        CompletableFuture<JsonNode> shared = pending;
+        CompletableFuture<JsonNode> second = flights.execute("GET", "user", "/_search", "{}", call);
+        CompletableFuture<JsonNode> other = flights.execute("GET", "user", "/_search", "{\"size\":1}", call);
+
+        assertEquals(2, calls.get());
+        assertEquals(1, flights.getCoalescedCount());
+        assertFalse(first.isDone());
+        assertNotSame(first, second);
+        shared.complete(result);
+        assertSame(result, first.get());
+        assertSame(result, second.get());
+        assertFalse(other.isDone());
+        other.complete(result);
+    }
+
+    @Test
+    void testCancellingOneCallerLeavesTheOthersWaiting() throws Exception {
+        CompletableFuture<JsonNode> first = flights.execute("GET", "user", "/_search", "{}", call);
+        CompletableFuture<JsonNode> second = flights.execute("GET", "user", "/_search", "{}", call);
+        CompletableFuture<JsonNode> third = flights.execute("GET", "user", "/_search", "{}", call);
+
+        first.cancel(true);
+        second.orTimeout(1, TimeUnit.MILLISECONDS);
+        assertThrows(ExecutionException.class, second::get);
+        pending.complete(result);
+
+        assertEquals(1, calls.get());
+        assertTrue(first.isCancelled());
+        assertSame(result, third.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCompletedCallIsNotReused() throws Exception {
+        CompletableFuture<JsonNode> first = flights.execute("GET", "user", "/_search", "{}", call);
+        pending.complete(result);
+        assertSame(result, first.get());
+        assertEquals(0, flights.getInFlightCount());
+
+        flights.execute("GET", "user", "/_search", "{}", call);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testWriteDetachesInFlightRead() {
+        CompletableFuture<JsonNode> before = flights.execute("GET", "user", "/_search", "{}", call);
+        CompletableFuture<JsonNode> beforePending = pending;
+        flights.invalidate("user");
+        CompletableFuture<JsonNode> after = flights.execute("GET", "user", "/_search", "{}", call);
+
+        assertEquals(2, calls.get());
+        assertNotSame(before, after);
+        // the detached call finishing must not evict the newer one
+        beforePending.complete(result);
+        assertEquals(1, flights.getInFlightCount());
+    }
+
+    @Test
+    void testFailureReachesEveryCaller() {
+        CompletableFuture<JsonNode> first = flights.execute("GET", "user", "/_search", "{}", call);
+        CompletableFuture<JsonNode> second = flights.execute("GET", "user", "/_search", "{}", call);
+        pending.completeExceptionally(new IOException("boom"));
+
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, first::get).getCause());
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, second::get).getCause());
+        assertEquals(0, flights.getInFlightCount());
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class StreamingBulkServiceTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private RestClient client;
+    private final List<String> bodies = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        client = mock(RestClient.class);
+        doAnswer(inv -> {
+            Request req = inv.getArgument(0);
+            String body = EntityUtils.toString(req.getEntity());
+            bodies.add(body);
+            int items = (int) body.lines().filter(l -> l.startsWith("{\"index\"") || l.startsWith("{\"delete\"")).count();
+            StringBuilder json = new StringBuilder("{\"took\":3,\"errors\":false,\"items\":[");
+            for (int i = 0; i < items; i++) {
+                json.append(i == 0 ? "" : ",").append("{\"index\":{\"status\":201}}");
+            }
+            json.append("]}");
+            ResponseListener listener = inv.getArgument(1);
+            listener.onSuccess(response(json.toString()));
+            return null;
+        }).when(client).performRequestAsync(any(Request.class), any(ResponseListener.class));
+    }
+
+    @Test
+    void testChunksOnActionBoundaries() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            ndjson.append("{\"index\":{\"_id\":\"").append(i).append("\"}}\n")
+                  .append("{\"userId\":\"u").append(i).append("\"}\n");
+        }
+        ndjson.append("{\"delete\":{\"_id\":\"3\"}}\n");
+
+        StreamingBulkService service = new StreamingBulkService(client, null, null, null, null, 100, 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stream("users", new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)), out);
+
+        assertTrue(bodies.size() > 1, "expected the upload to be split into several chunks");
+        int actions = 0;
+        for (String body : bodies) {
+            assertTrue(body.length() <= 100 || body.lines().count() <= 2);
+            List<String> lines = body.lines().toList();
+            for (int i = 0; i < lines.size(); i++) {
+                actions++;
+                if (lines.get(i).startsWith("{\"index\"")) {
+                    assertTrue(lines.get(++i).startsWith("{\"userId\""), "source line must follow its action");
+                }
+            }
+        }
+        assertEquals(11, actions);
+
+        List<JsonNode> summary = out.toString(StandardCharsets.UTF_8).lines().map(this::read).toList();
+        assertEquals(bodies.size() + 1, summary.size());
+        JsonNode done = summary.get(summary.size() - 1);
+        assertTrue(done.get("done").asBoolean());
+        assertEquals(11, done.get("actions").asInt());
+        assertEquals(bodies.size(), done.get("chunks").asInt());
+        assertEquals(11, summary.subList(0, bodies.size()).stream().mapToInt(s -> s.get("actions").asInt()).sum());
+        verify(client, times(bodies.size())).performRequestAsync(any(Request.class), any(ResponseListener.class));
+    }
+
+    @Test
+    void testMissingSourceLineEndsTheUploadWithAnErrorSummary() throws Exception {
+        StreamingBulkService service = new StreamingBulkService(client, null, null, null, null, 1024, 1);
+        byte[] ndjson = "{\"index\":{\"_id\":\"1\"}}\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stream("users", new ByteArrayInputStream(ndjson), out);
+
+        JsonNode done = read(out.toString(StandardCharsets.UTF_8).trim());
+        assertTrue(done.get("error").asText().startsWith("Bulk action without source line"));
+        assertEquals(1, done.get("line").asInt());
+        assertEquals(0, done.get("actions").asInt());
+        assertTrue(bodies.isEmpty());
+    }
+
+    @Test
+    void testMalformedLineMidStreamWaitsForSentChunksAndReportsTheLine() throws Exception {
+        List<ResponseListener> pending = new CopyOnWriteArrayList<>();
+        doAnswer(inv -> {
+            bodies.add(EntityUtils.toString(inv.<Request>getArgument(0).getEntity()));
+            pending.add(inv.getArgument(1));
+            return null;
+        }).when(client).performRequestAsync(any(Request.class), any(ResponseListener.class));
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            ndjson.append("{\"index\":{\"_id\":\"").append(i).append("\"}}\n{\"userId\":").append(i).append("}\n");
+        }
+        ndjson.append("{\"index\":\n{\"userId\":4}\n");
+
+        // two documents per chunk: the first chunk is sent, the second is cut short by line 9
+        StreamingBulkService service = new StreamingBulkService(client, null, null, null, null, 80, 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thread upload = new Thread(() -> {
+            try {
+                service.stream("users", new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)), out);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        upload.start();
+        while (pending.isEmpty()) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertTrue(upload.isAlive(), "the summary must wait for the chunk in flight");
+        for (ResponseListener listener : pending) {
+            listener.onSuccess(response("{\"took\":1,\"errors\":false,\"items\":[]}"));
+        }
+        upload.join(5_000);
+
+        List<JsonNode> summary = out.toString(StandardCharsets.UTF_8).lines().map(this::read).toList();
+        assertEquals(1, summary.stream().filter(s -> s.has("chunk")).count());
+        JsonNode done = summary.get(summary.size() - 1);
+        assertEquals(9, done.get("line").asInt());
+        assertTrue(done.get("error").asText().startsWith("Malformed bulk action line"));
+        assertEquals(1, done.get("chunks").asInt());
+        assertEquals(2, done.get("actions").asInt());
+        assertEquals(1, bodies.size());
+    }
+
+    @Test
+    void testInvalidDocumentsAreDroppedAndReported() throws Exception {
+        SchemaRegistry schemas = new SchemaRegistry();
+        schemas.loadAll();
+        DocumentValidator validator = new DocumentValidator(schemas, true, "users=user", 256, 1);
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            ndjson.append("{\"index\":{\"_id\":\"").append(i).append("\"}}\n")
+                  .append("{\"userId\":").append(i % 3 == 0 ? "\"bad\"" : String.valueOf(i))
+                  .append(",\"userName\":\"u").append(i).append("\",\"courses\":[],\"grades\":[]}\n");
+        }
+
+        StreamingBulkService service = new StreamingBulkService(client, null, null, validator, null, 1 << 20, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stream("users", new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)), out);
+
+        assertEquals(1, bodies.size());
+        assertEquals(8, bodies.get(0).lines().count());
+        assertFalse(bodies.get(0).contains("\"bad\""));
+
+        List<JsonNode> summary = out.toString(StandardCharsets.UTF_8).lines().map(this::read).toList();
+        List<JsonNode> rejected = summary.stream().filter(s -> s.path("rejected").isBoolean()).toList();
+        assertEquals(List.of("0", "3"), rejected.stream().map(r -> r.get("id").asText()).toList());
+        assertEquals(2, rejected.get(0).get("line").asInt());
+        assertEquals("$.userId", rejected.get(0).get("violations").get(0).get("path").asText());
+        JsonNode chunk = summary.stream().filter(s -> s.has("chunk")).findFirst().orElseThrow();
+        assertEquals(4, chunk.get("actions").asInt());
+        assertEquals(2, chunk.get("rejected").asInt());
+        JsonNode done = summary.get(summary.size() - 1);
+        assertEquals(6, done.get("actions").asInt());
+        assertEquals(2, done.get("rejected").asInt());
+        validator.close();
+    }
+
+    @Test
+    void testDerivedFieldsAreSetOnEachDocument() throws Exception {
+        String ndjson = "{\"index\":{\"_id\":\"1\"}}\n{\"courses\":[\"Physics\",\"Chemistry\"]}\n"
+            + "{\"update\":{\"_id\":\"1\"}}\n{\"doc\":{\"courses\":[\"Physics\"]}}\n"
+            + "{\"delete\":{\"_id\":\"2\"}}\n";
+
+        StreamingBulkService service = new StreamingBulkService(client, null, null, null,
+            new DocumentEnricher("users=courses:courseCount"), 1 << 20, 1);
+        service.stream("users", new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream());
+
+        List<String> lines = bodies.get(0).lines().toList();
+        assertEquals(5, lines.size());
+        assertEquals(2, read(lines.get(1)).get("courseCount").asInt());
+        assertEquals(1, read(lines.get(3)).path("doc").get("courseCount").asInt());
+    }
+
+    private JsonNode read(String line) {
+        try {
+            return mapper.readTree(line);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Response response(String json) {
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        StatusLine status = mock(StatusLine.class);
+        when(status.getStatusCode()).thenReturn(200);
+        Response response = mock(Response.class);
+        when(response.getEntity()).thenReturn((HttpEntity) entity);
+        when(response.getStatusLine()).thenReturn(status);
+        return response;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.elasticsearch.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingResponseConsumerTest {
+    private static final int PART = 1 << 20;
+
+    private final CountDownLatch firstPartRead = new CountDownLatch(1);
+    private HttpServer server;
+    private RestClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(2));
+        // two 1 MiB parts; the second is only sent once the client has read into the first
+        server.createContext("/big/_search", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            byte[] part = new byte[PART];
+            Arrays.fill(part, (byte) 'x');
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(part);
+                out.flush();
+                firstPartRead.await(30, TimeUnit.SECONDS);
+                out.write(part);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/missing/_search", exchange -> {
+            byte[] body = "{\"error\":\"no such index\",\"status\":404}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(404, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        client = RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort(), "http")).build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void testBodyIsReadBeforeTheResponseIsComplete() throws Exception {
+        // a buffering consumer would only complete once the server gives up waiting
+        HttpResponse response = StreamingResponseConsumer.send(client, new Request("GET", "/big/_search"), 64 * 1024)
+            .get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        long total = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = response.getEntity().getContent()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                total += n;
+                firstPartRead.countDown();
+            }
+        }
+        assertEquals(2L * PART, total);
+    }
+
+    @Test
+    void testErrorStatusIsReturnedWithItsBody() throws Exception {
+        HttpResponse response = StreamingResponseConsumer.send(client, new Request("GET", "/missing/_search"), 64 * 1024)
+            .get(10, TimeUnit.SECONDS);
+
+        assertEquals(404, response.getStatusLine().getStatusCode());
+        assertEquals("{\"error\":\"no such index\",\"status\":404}", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    void testPassthroughPipesTheBodyThrough() throws Exception {
+        ElasticsearchService service = new ElasticsearchService(client, null, null, null, null, null, null, null, null, false);
+
+        // returns before the server has sent the second part
+        HttpResponse response = service.executeRawResponse("big", "GET", "/_search", null);
+
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        long total = 0;
+        try (InputStream in = response.getEntity().getContent()) {
+            int n;
+            byte[] buffer = new byte[8192];
+            while ((n = in.read(buffer)) > 0) {
+                total += n;
+                firstPartRead.countDown();
+            }
+        }
+        assertEquals(2L * PART, total);
+        assertEquals(404, service.executeRawResponse("missing", "GET", "/_search", null).getStatusLine().getStatusCode());
+    }
+}
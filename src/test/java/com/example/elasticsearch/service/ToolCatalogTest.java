@@ -0,0 +1,98 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.config.SchemaRegistry;
+import com.example.elasticsearch.query.CourseMaxParams;
+import com.example.elasticsearch.query.QueryParams;
+import com.example.elasticsearch.query.TemplateArguments;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.service.OpenAiService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolCatalogTest {
+    private static SchemaRegistry schemas;
+    private static QueryTemplateService templates;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeAll
+    static void loadSchemas() throws IOException {
+        schemas = new SchemaRegistry();
+        schemas.loadAll();
+        templates = new QueryTemplateService("classpath:es-templates/", new DefaultResourceLoader(), new ObjectMapper());
+    }
+
+    private static ToolCatalog bundled() {
+        return new ToolCatalog("classpath*:mcp-tools/*.yml", new DefaultResourceLoader(), schemas, templates);
+    }
+
+    @Test
+    void testFunctionsDeclareTypedRequiredParameters() throws IOException {
+        ToolCatalog catalog = bundled();
+
+        assertEquals(List.of("showUsersInCourse", "showUsersInMultipleCourses", "getClassAverageScore", "getCourseMaxScore"),
+            catalog.tools().stream().map(ToolCatalog.Tool::name).toList());
+        // serialized the way the OpenAI client sends it
+        JsonNode function = OpenAiService.defaultObjectMapper().valueToTree(catalog.tool("getCourseMaxScore").function());
+        JsonNode course = function.get("parameters").get("properties").get("course");
+        assertEquals("string", course.get("type").asText());
+        assertTrue(course.get("description").asText().startsWith("Course name"));
+        assertEquals("course", function.get("parameters").get("required").get(0).asText());
+        assertTrue(OpenAiService.defaultObjectMapper().valueToTree(catalog.tool("getClassAverageScore").function())
+            .get("parameters").get("properties").isEmpty());
+    }
+
+    @Test
+    void testBindsArgumentsToParamsRecord() {
+        ToolCatalog.Tool tool = bundled().tool("getCourseMaxScore");
+
+        QueryParams params = tool.bind(mapper.createObjectNode().put("course", "Physics"), mapper);
+
+        assertEquals(new CourseMaxParams("Physics"), params);
+        assertEquals("course-max.json", tool.template());
+        assertTrue(tool.aggregation());
+        IllegalArgumentException missing = assertThrows(IllegalArgumentException.class,
+            () -> tool.bind(mapper.createObjectNode(), mapper));
+        assertEquals("Missing required parameter: course", missing.getMessage());
+    }
+
+    @Test
+    void testManifestOnlyToolNeedsNoParamsRecord() {
+        ToolCatalog catalog = new ToolCatalog("classpath*:tool-catalog/*.yml", new DefaultResourceLoader(), schemas, templates);
+        ToolCatalog.Tool tool = catalog.tool("findUser");
+
+        JsonNode function = OpenAiService.defaultObjectMapper().valueToTree(tool.function());
+        // the parameter type comes from user-schema.json
+        assertEquals("integer", function.get("parameters").get("properties").get("userId").get("type").asText());
+        QueryParams params = tool.bind(mapper.createObjectNode().put("userId", 7), mapper);
+        assertInstanceOf(TemplateArguments.class, params);
+        assertEquals(Map.of("userId", 7), mapper.convertValue(params, new TypeReference<Map<String, Object>>() {}));
+    }
+
+    @Test
+    void testFingerprintTracksOfferedTools() {
+        ToolCatalog bundled = bundled();
+        ToolCatalog extra = new ToolCatalog("classpath*:tool-catalog/*.yml", new DefaultResourceLoader(), schemas, templates);
+
+        assertEquals(bundled.fingerprint(), bundled().fingerprint());
+        assertNotEquals(bundled.fingerprint(), extra.fingerprint());
+    }
+
+    @Test
+    void testTemplatesResolveAgainstTheConfiguredTemplatePath() {
+        QueryTemplateService elsewhere =
+            new QueryTemplateService("classpath:no-such-templates/", new DefaultResourceLoader(), new ObjectMapper());
+
+        IllegalStateException missing = assertThrows(IllegalStateException.class,
+            () -> new ToolCatalog("classpath*:mcp-tools/*.yml", new DefaultResourceLoader(), schemas, elsewhere));
+        assertTrue(missing.getMessage().contains("refers to missing template"));
+    }
+}
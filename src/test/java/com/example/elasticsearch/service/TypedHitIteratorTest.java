@@ -0,0 +1,85 @@
+package com.example.elasticsearch.service;
+
+import com.example.elasticsearch.schema.UserSchema;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypedHitIteratorTest {
+    private static final String RESPONSE = "{\"took\":2,\"_shards\":{\"total\":1},\"hits\":{\"total\":{\"value\":3,\"relation\":\"eq\"},"
+        + "\"max_score\":1.0,\"hits\":["
+        + "{\"_index\":\"user\",\"_id\":\"1\",\"_score\":1.0,\"_source\":{\"userId\":1,\"userName\":\"Ann\",\"courses\":[\"Mathematics\"],"
+        + "\"grades\":[{\"course\":\"Mathematics\",\"score\":91.5}]}},"
+        + "{\"_index\":\"user\",\"_id\":\"2\",\"_score\":1.0},"
+        + "{\"_index\":\"user\",\"_id\":\"3\",\"_score\":1.0,\"_source\":{\"userId\":3,\"userName\":\"Bo\",\"courses\":[],\"grades\":[]},"
+        + "\"sort\":[3]}]},\"aggregations\":{\"avg\":{\"value\":2.0}}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testDecodesSourcesLazily() throws IOException {
+        TrackingStream in = new TrackingStream(RESPONSE);
+        TypedHitIterator<UserSchema> hits = new TypedHitIterator<>(mapper, in, UserSchema.class);
+
+        assertEquals(3, hits.getTotal());
+        UserSchema first = hits.next();
+        assertEquals(1, first.getUserId());
+        assertEquals("Ann", first.getUserName());
+        assertEquals(91.5, first.getGrades().get(0).getScore());
+        assertFalse(in.closed.get());
+
+        assertEquals("Bo", hits.next().getUserName(), "hits without _source are skipped");
+        assertFalse(hits.hasNext());
+        assertTrue(in.closed.get(), "the response is released after the last hit");
+        assertThrows(NoSuchElementException.class, hits::next);
+    }
+
+    @Test
+    void testStreamCloseReleasesResponse() throws IOException {
+        TrackingStream in = new TrackingStream(RESPONSE);
+
+        try (Stream<UserSchema> users = new TypedHitIterator<>(mapper, in, UserSchema.class).stream()) {
+            assertEquals(List.of(1), users.limit(1).map(UserSchema::getUserId).toList());
+        }
+
+        assertTrue(in.closed.get());
+    }
+
+    @Test
+    void testResponseWithoutHits() throws IOException {
+        TypedHitIterator<UserSchema> hits = new TypedHitIterator<>(mapper,
+            new TrackingStream("{\"took\":1,\"hits\":{\"total\":7,\"hits\":[]}}"), UserSchema.class);
+
+        assertEquals(7, hits.getTotal());
+        assertFalse(hits.hasNext());
+        assertFalse(new TypedHitIterator<>(mapper, new TrackingStream("{\"count\":0}"), UserSchema.class).hasNext());
+    }
+
+    @Test
+    void testRejectsNonObjectResponse() {
+        assertThrows(IOException.class, () -> new TypedHitIterator<>(mapper, new TrackingStream("[1]"), UserSchema.class));
+    }
+
+    private static final class TrackingStream extends ByteArrayInputStream {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        TrackingStream(String json) {
+            super(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed.set(true);
+            super.close();
+        }
+    }
+}
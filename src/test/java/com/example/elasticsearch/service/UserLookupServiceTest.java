@@ -0,0 +1,94 @@
+package com.example.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UserLookupServiceTest {
+    private static final DocumentIdStrategy KEYED = new DocumentIdStrategy("user=userId");
+    /** The shipped default: app.documents.id-fields is empty. */
+    private static final DocumentIdStrategy GENERATED = new DocumentIdStrategy("");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ElasticsearchService es;
+
+    @BeforeEach
+    void setUp() {
+        es = mock(ElasticsearchService.class);
+    }
+
+    private CompletableFuture<JsonNode> json(String json) throws Exception {
+        return CompletableFuture.completedFuture(mapper.readTree(json));
+    }
+
+    @Test
+    void testByIdReturnsSearchShapedRealtimeHit() throws Exception {
+        when(es.mgetAsync("user", List.of("1234"))).thenReturn(json(
+            "{\"docs\":[{\"_index\":\"user\",\"_id\":\"1234\",\"found\":true,\"_source\":{\"userId\":1234,\"userName\":\"Alice\"}}]}"));
+
+        JsonNode result = new UserLookupService(es, KEYED, true).byId(1234L).get();
+
+        assertEquals(1, result.path("hits").path("total").path("value").asInt());
+        assertEquals("Alice", result.path("hits").path("hits").get(0).path("_source").path("userName").asText());
+        verify(es, never()).searchAsync(any(), any(), any(), any());
+    }
+
+    @Test
+    void testByIdFallsBackToSearchForGeneratedIds() throws Exception {
+        when(es.mgetAsync("user", List.of("7"))).thenReturn(json("{\"docs\":[{\"_id\":\"7\",\"found\":false}]}"));
+        when(es.searchAsync(eq("user"), eq("simple-search.json"), any(), eq(UserLookupService.USER_FIELDS))).thenReturn(json("{\"hits\":{\"total\":{\"value\":1}}}"));
+
+        assertEquals(1, new UserLookupService(es, KEYED, true).byId(7L).get().path("hits").path("total").path("value").asInt());
+        assertEquals(0, new UserLookupService(es, KEYED, false).byId(7L).get().path("hits").path("total").path("value").asInt());
+    }
+
+    @Test
+    void testByIdsResolvesInOneMgetAndReportsMissing() throws Exception {
+        when(es.mgetAsync("user", List.of("1", "2", "3"))).thenReturn(json("{\"docs\":["
+            + "{\"_index\":\"user\",\"_id\":\"1\",\"found\":true,\"_source\":{\"userId\":1}},"
+            + "{\"_id\":\"2\",\"found\":false},"
+            + "{\"_id\":\"3\",\"found\":false}]}"));
+        when(es.executeRawQueryAsync(eq("user"), eq("GET"), eq("/_search"), contains("\"terms\":{\"userId\":[2,3]}")))
+            .thenReturn(json("{\"hits\":{\"hits\":[{\"_id\":\"x\",\"_source\":{\"userId\":2}}]}}"));
+
+        JsonNode result = new UserLookupService(es, KEYED, true).byIds(List.of(1L, 2L, 3L, 1L)).get();
+
+        assertEquals(2, result.path("hits").path("total").path("value").asInt());
+        assertEquals(1, result.path("missing").size());
+        assertEquals(3, result.path("missing").get(0).asLong());
+        verify(es, times(1)).mgetAsync(any(), any());
+    }
+
+    @Test
+    void testByIdWithGeneratedIdsSendsOnlyTheSearch() throws Exception {
+        when(es.searchAsync(eq("user"), eq("simple-search.json"), any(), eq(UserLookupService.USER_FIELDS)))
+            .thenReturn(json("{\"hits\":{\"total\":{\"value\":1}}}"));
+
+        JsonNode result = new UserLookupService(es, GENERATED, true).byId(7L).get();
+
+        assertEquals(1, result.path("hits").path("total").path("value").asInt());
+        verify(es, times(1)).searchAsync(any(), any(), any(), any());
+        verifyNoMoreInteractions(es);
+    }
+
+    @Test
+    void testByIdsWithGeneratedIdsSendsOnlyTheSearch() throws Exception {
+        when(es.executeRawQueryAsync(eq("user"), eq("GET"), eq("/_search"), contains("\"terms\":{\"userId\":[1,2]}")))
+            .thenReturn(json("{\"hits\":{\"hits\":[{\"_id\":\"x\",\"_source\":{\"userId\":2}}]}}"));
+
+        JsonNode result = new UserLookupService(es, GENERATED, true).byIds(List.of(1L, 2L)).get();
+
+        assertEquals(1, result.path("hits").path("total").path("value").asInt());
+        assertEquals(1, result.path("missing").get(0).asLong());
+        verify(es, times(1)).executeRawQueryAsync(any(), any(), any(), any());
+        verifyNoMoreInteractions(es);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.elasticsearch.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-process HTTP server that answers like an Elasticsearch node after a fixed delay.
+ * Delayed responses are completed from a scheduler, so a slow "cluster" does not tie
+ * up server threads and the client side is what gets measured.
+ */
+public class StubElasticsearchServer implements AutoCloseable {
+
+    static {
+        // the JDK server otherwise closes kept-alive connections beyond a small idle cap,
+        // which load runs with thousands of pooled client connections hit immediately
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "100000");
+        // headers and body are written separately; without TCP_NODELAY, Nagle plus delayed ACKs
+        // add ~40 ms to every response on a kept-alive connection
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public record StubRequest(String method, String path, String query, String body) { }
+
+    private final HttpServer server;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final AtomicLong requests = new AtomicLong();
+
+    private StubElasticsearchServer(Duration latency, Function<StubRequest, String> responder) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            StubRequest request = read(exchange);
+            String body = responder.apply(request);
+            if (latency.isZero()) {
+                respond(exchange, body);
+            } else {
+                scheduler.schedule(() -> respond(exchange, body), latency.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+    }
+
+    public static StubElasticsearchServer start(Duration latency, String responseBody) throws IOException {
+        return new StubElasticsearchServer(latency, request -> responseBody);
+    }
+
+    public static StubElasticsearchServer start(Duration latency, Function<StubRequest, String> responder) throws IOException {
+        return new StubElasticsearchServer(latency, responder);
+    }
+
+    public HttpHost host() {
+        return new HttpHost("127.0.0.1", server.getAddress().getPort(), "http");
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+    }
+
+    private static StubRequest read(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new StubRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                exchange.getRequestURI().getQuery(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("X-elastic-product", "Elasticsearch");
+            exchange.sendResponseHeaders(200, bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
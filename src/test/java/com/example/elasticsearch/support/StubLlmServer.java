@@ -0,0 +1,134 @@
+package com.example.elasticsearch.support;
+
+import com.example.elasticsearch.service.FunctionCallCache.ResolvedCall;
+import com.example.elasticsearch.service.IntentRouter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * In-process stand-in for an OpenAI-compatible /v1/chat/completions endpoint. It picks
+ * the function call deterministically with the IntentRouter rules, at any confidence,
+ * so the same question always resolves the same way. Latency and HTTP status can vary
+ * per request number, to model slow or failing endpoints. Run main() for load runs
+ * against a live application (app.mcp.llm.base-url=http://127.0.0.1:<port>/).
+ */
+public class StubLlmServer implements AutoCloseable {
+
+    static {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final AtomicLong requests = new AtomicLong();
+    private final IntentRouter rules = new IntentRouter(true, 0.0);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private StubLlmServer(int port, LongFunction<Duration> latency, LongFunction<Integer> status) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/v1/chat/completions", exchange -> {
+            long n = requests.incrementAndGet();
+            String body = answer(read(exchange));
+            int code = status.apply(n);
+            Duration delay = latency.apply(n);
+            if (delay.isZero()) {
+                respond(exchange, code, body);
+            } else {
+                scheduler.schedule(() -> respond(exchange, code, body), delay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+    }
+
+    public static StubLlmServer start(Duration latency) throws IOException {
+        return new StubLlmServer(0, n -> latency, n -> 200);
+    }
+
+    public static StubLlmServer start(LongFunction<Duration> latency, LongFunction<Integer> status) throws IOException {
+        return new StubLlmServer(0, latency, status);
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+    }
+
+    private String answer(JsonNode request) throws IOException {
+        JsonNode messages = request.path("messages");
+        String query = messages.isEmpty() ? "" : messages.get(messages.size() - 1).path("content").asText("");
+        ResolvedCall call = rules.classify(query).call();
+
+        ObjectNode response = mapper.createObjectNode()
+            .put("id", "chatcmpl-stub-" + requests.get())
+            .put("object", "chat.completion")
+            .put("created", 0)
+            .put("model", request.path("model").asText("stub"));
+        ObjectNode choice = response.putArray("choices").addObject().put("index", 0);
+        ObjectNode message = choice.putObject("message").put("role", "assistant");
+        if (call == null) {
+            message.put("content", "I can only answer questions about users, courses and scores.");
+            choice.put("finish_reason", "stop");
+        } else {
+            message.putNull("content");
+            message.putObject("function_call")
+                .put("name", call.name())
+                .put("arguments", mapper.writeValueAsString(call.arguments()));
+            choice.put("finish_reason", "function_call");
+        }
+        response.putObject("usage").put("prompt_tokens", 0).put("completion_tokens", 0).put("total_tokens", 0);
+        return mapper.writeValueAsString(response);
+    }
+
+    private JsonNode read(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return mapper.readTree(in);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) {
+        byte[] bytes = (status == 200 ? body : "{\"error\":{\"message\":\"stub failure\",\"type\":\"server_error\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            // the client gave up (timeout); nothing left to answer
+            exchange.close();
+        }
+    }
+
+    /** Usage: StubLlmServer [port] [latency-ms] */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        Duration latency = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 300);
+        StubLlmServer stub = new StubLlmServer(port, n -> latency, n -> 200);
+        System.out.println("Stub LLM listening on " + stub.baseUrl() + " with " + latency.toMillis() + "ms latency");
+        Thread.currentThread().join();
+    }
+}